@@ -68,6 +68,12 @@ android {
     buildFeatures {
         buildConfig = true
     }
+    testOptions {
+        // Unit test chạy trên JVM: Log/SystemClock trả giá trị mặc định thay vì throw
+        unitTests.isReturnDefaultValues = true
+        // RootDetectorTest cài SecurityManager để bắt exec (JDK 18+ phải cho phép tường minh)
+        unitTests.all { it.jvmArgs("-Djava.security.manager=allow") }
+    }
 }
 
 rust {
@@ -80,6 +86,8 @@ dependencies {
     implementation("androidx.activity:activity-ktx:1.10.1")
     implementation("com.google.android.material:material:1.12.0")
     testImplementation("junit:junit:4.13.2")
+    // org.json trong android.jar chỉ là stub
+    testImplementation("org.json:json:20240303")
     androidTestImplementation("androidx.test.ext:junit:1.1.4")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.0")
 }
@@ -2,10 +2,17 @@ package com.dell.timekeeping
 
 import android.os.Bundle
 import androidx.activity.enableEdgeToEdge
+import com.dell.timekeeping.anticheat.AntiCheatPlugin
 
 class MainActivity : TauriActivity() {
   override fun onCreate(savedInstanceState: Bundle?) {
     enableEdgeToEdge()
     super.onCreate(savedInstanceState)
   }
+
+  override fun onPause() {
+    super.onPause()
+    // Persist coalesced anti-cheat state before the process may be killed
+    AntiCheatPlugin.flushPendingState()
+  }
 }
@@ -0,0 +1,157 @@
+package com.dell.timekeeping.anticheat;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Kênh sự kiện đẩy từ Java sang Rust/JS (vị trí, provider, bất thường thời gian)
+ * Producer publish không bao giờ chặn; consumer (thread bên Rust) gọi poll() và chờ tới khi có sự kiện.
+ * Khi consumer chậm, sự kiện cùng key được gộp - chỉ giữ giá trị mới nhất;
+ * số key chờ bị giới hạn, đầy thì bỏ key cũ nhất.
+ */
+public class AntiCheatEventChannel {
+
+    public static final String TOPIC_LOCATION = "location";
+    public static final String TOPIC_PROVIDER = "provider";
+    public static final String TOPIC_TIME_ANOMALY = "timeAnomaly";
+
+    private static final int DEFAULT_MAX_PENDING = 32;
+
+    private static final class Event {
+        final String topic;
+        final long seq;
+        // LocationSample (JSON dựng lúc drain, có cache) hoặc Map
+        final Object payload;
+
+        Event(String topic, long seq, Object payload) {
+            this.topic = topic;
+            this.seq = seq;
+            this.payload = payload;
+        }
+    }
+
+    private final int maxPending;
+    // Key -> sự kiện mới nhất, giữ thứ tự lần đầu xuất hiện
+    private final LinkedHashMap<String, Event> pending = new LinkedHashMap<>();
+    private long nextSeq = 1;
+    private boolean closed = false;
+
+    // Metrics
+    private long publishedCount = 0;
+    private long coalescedCount = 0;
+    private long droppedCount = 0;
+    private long deliveredCount = 0;
+
+    public AntiCheatEventChannel() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    public AntiCheatEventChannel(int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be > 0");
+        }
+        this.maxPending = maxPending;
+    }
+
+    public void publishLocation(LocationSample sample) {
+        publish(TOPIC_LOCATION, TOPIC_LOCATION, sample);
+    }
+
+    public void publishProviderChange(String provider, boolean enabled) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("provider", provider);
+        payload.put("enabled", enabled);
+        // Mỗi provider một key để tắt GPS không bị đè bởi sự kiện của network
+        publish(TOPIC_PROVIDER, TOPIC_PROVIDER + ":" + provider, payload);
+    }
+
+    public void publishTimeAnomaly(Map<String, Object> details) {
+        publish(TOPIC_TIME_ANOMALY, TOPIC_TIME_ANOMALY, details);
+    }
+
+    private synchronized void publish(String topic, String key, Object payload) {
+        if (closed) {
+            return;
+        }
+        publishedCount++;
+        Event previous = pending.get(key);
+        if (previous != null) {
+            // Ghi đè giá trị, giữ nguyên vị trí trong hàng đợi
+            coalescedCount++;
+        } else if (pending.size() >= maxPending) {
+            Iterator<String> oldest = pending.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+            droppedCount++;
+        }
+        pending.put(key, new Event(topic, nextSeq++, payload));
+        notifyAll();
+    }
+
+    /**
+     * Lấy toàn bộ sự kiện đang chờ, chặn tối đa timeoutMs nếu chưa có
+     * @return JSON array [{topic, seq, payload}], hoặc null nếu hết hạn chờ / kênh đã đóng
+     */
+    public String poll(long timeoutMs) throws InterruptedException {
+        Event[] events;
+        synchronized (this) {
+            // nanoTime: chỉnh giờ hệ thống (chính là thứ đang bị theo dõi) không làm lệch hạn chờ
+            long deadline = System.nanoTime() + Math.max(0, timeoutMs) * 1000000L;
+            while (pending.isEmpty() && !closed) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                // Làm tròn lên để không wait(0) (= chờ vô hạn) khi còn dưới 1 ms
+                wait((remainingNanos + 999999L) / 1000000L);
+            }
+            if (pending.isEmpty()) {
+                return null;
+            }
+            events = pending.values().toArray(new Event[0]);
+            pending.clear();
+            deliveredCount += events.length;
+        }
+
+        // Serialize ngoài lock để producer không bị chặn; JSON của LocationSample đã được cache
+        StringBuilder json = new StringBuilder(events.length * 512);
+        json.append('[');
+        for (int i = 0; i < events.length; i++) {
+            Event event = events[i];
+            if (i > 0) json.append(',');
+            json.append("{\"topic\":").append(JSONObject.quote(event.topic))
+                .append(",\"seq\":").append(event.seq)
+                .append(",\"payload\":");
+            if (event.payload instanceof LocationSample) {
+                json.append(((LocationSample) event.payload).toJson());
+            } else {
+                json.append(new JSONObject((Map<?, ?>) event.payload).toString());
+            }
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("publishedCount", publishedCount);
+        stats.put("coalescedCount", coalescedCount);
+        stats.put("droppedCount", droppedCount);
+        stats.put("deliveredCount", deliveredCount);
+        return stats;
+    }
+}
@@ -0,0 +1,117 @@
+package com.dell.timekeeping.anticheat;
+
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Số đo độ trễ theo từng thao tác của plugin và nhịp fix vị trí (không khoá)
+ * Mỗi thao tác có một LatencyHistogram + bộ đếm lỗi; fix vị trí có tuổi lúc nhận,
+ * khoảng cách giữa các fix (EWMA) và tuổi fix gần nhất. Kèm model máy để so sánh
+ * p50/p99 giữa các dòng máy phía server.
+ */
+public final class AntiCheatMetrics {
+
+    public static final int OP_INITIALIZE = 0;
+    public static final int OP_CHECK_ROOT_STATUS = 1;
+    public static final int OP_CHECK_TIME_RELIABILITY = 2;
+    public static final int OP_GET_SECURE_LOCATION = 3;
+    public static final int OP_GET_SECURITY_SNAPSHOT = 4;
+    // onLocationChanged trên pipeline thread
+    public static final int OP_PROCESS_FIX = 5;
+
+    private static final String[] OP_NAMES = {
+        "initialize", "checkRootStatus", "checkTimeReliability", "getSecureLocation",
+        "getSecuritySnapshot", "processFix"
+    };
+
+    // Hệ số EWMA của khoảng cách giữa hai fix: interval mới chiếm 1/8
+    private static final int INTERVAL_EWMA_SHIFT = 3;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OP_NAMES.length];
+    private final AtomicLongArray errorCounts = new AtomicLongArray(OP_NAMES.length);
+
+    private final LatencyHistogram fixAge = new LatencyHistogram();
+    private final AtomicLong fixCount = new AtomicLong();
+    private final AtomicLong lastFixReceivedNanos = new AtomicLong();
+    private final AtomicLong fixIntervalEwmaNanos = new AtomicLong();
+
+    public AntiCheatMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param startNanos System.nanoTime() lúc bắt đầu thao tác
+     * @param success false nếu thao tác ném exception
+     */
+    public void record(int op, long startNanos, boolean success) {
+        latencies[op].recordNanos(System.nanoTime() - startNanos);
+        if (!success) {
+            errorCounts.incrementAndGet(op);
+        }
+    }
+
+    public void recordDuration(int op, long durationNanos) {
+        latencies[op].recordNanos(durationNanos);
+    }
+
+    /**
+     * Một fix vừa tới từ provider
+     * @param fixElapsedNanos Location.getElapsedRealtimeNanos() của fix, <= 0 nếu không có
+     * @param receivedElapsedNanos SystemClock.elapsedRealtimeNanos() lúc nhận
+     */
+    public void recordFix(long fixElapsedNanos, long receivedElapsedNanos) {
+        fixCount.incrementAndGet();
+        if (fixElapsedNanos > 0 && receivedElapsedNanos >= fixElapsedNanos) {
+            fixAge.recordNanos(receivedElapsedNanos - fixElapsedNanos);
+        }
+        long previous = lastFixReceivedNanos.getAndSet(receivedElapsedNanos);
+        if (previous <= 0 || receivedElapsedNanos <= previous) {
+            return;
+        }
+        long interval = receivedElapsedNanos - previous;
+        long ewma;
+        long updated;
+        do {
+            ewma = fixIntervalEwmaNanos.get();
+            updated = ewma == 0 ? interval : ewma + ((interval - ewma) >> INTERVAL_EWMA_SHIFT);
+        } while (!fixIntervalEwmaNanos.compareAndSet(ewma, updated));
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> operations = new HashMap<>();
+        for (int i = 0; i < OP_NAMES.length; i++) {
+            Map<String, Object> op = latencies[i].toMap();
+            op.put("errorCount", errorCounts.get(i));
+            operations.put(OP_NAMES[i], op);
+        }
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        long lastFix = lastFixReceivedNanos.get();
+        long interval = fixIntervalEwmaNanos.get();
+        Map<String, Object> location = new HashMap<>();
+        location.put("fixCount", fixCount.get());
+        location.put("fixIntervalMs", interval / 1_000_000L);
+        location.put("fixesPerMinute", interval > 0 ? 60e9 / interval : 0.0);
+        location.put("lastFixAgeMs", lastFix > 0 ? (now - lastFix) / 1_000_000L : -1);
+        location.put("fixAge", fixAge.toMap());
+
+        Map<String, Object> device = new HashMap<>();
+        device.put("model", Build.MODEL);
+        device.put("manufacturer", Build.MANUFACTURER);
+        device.put("sdkVersion", Build.VERSION.SDK_INT);
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("operations", operations);
+        metrics.put("location", location);
+        metrics.put("device", device);
+        metrics.put("elapsedRealtime", now / 1_000_000L);
+        return metrics;
+    }
+}
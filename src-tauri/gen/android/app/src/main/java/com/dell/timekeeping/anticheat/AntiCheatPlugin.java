@@ -6,12 +6,19 @@ import android.os.Build;
 import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -22,141 +29,490 @@ public class AntiCheatPlugin {
     
     private Context context;
     
-    // Lưu trạng thái Mock Location
-    private static boolean isMockLocation = false;
+    /**
+     * Cờ phát hiện dùng chung cho cả process (immutable).
+     * Ghi từ main looper, đọc từ các JNI thread của Rust: mỗi lần đổi là một snapshot mới
+     * publish qua AtomicReference, nên reader luôn thấy trọn một bộ giá trị nhất quán.
+     */
+    static final class DetectionFlags {
+        final boolean mockLocation;
+        final boolean remoteConfigEnabled;
+        final boolean locationCheckBypassed;
+        
+        DetectionFlags(boolean mockLocation, boolean remoteConfigEnabled, boolean locationCheckBypassed) {
+            this.mockLocation = mockLocation;
+            this.remoteConfigEnabled = remoteConfigEnabled;
+            this.locationCheckBypassed = locationCheckBypassed;
+        }
+    }
+    
+    private static final AtomicReference<DetectionFlags> FLAGS =
+        new AtomicReference<>(new DetectionFlags(false, true, false));
     
     public static void setMockLocationDetected(boolean detected) {
-        isMockLocation = detected;
+        DetectionFlags current;
+        do {
+            current = FLAGS.get();
+            if (current.mockLocation == detected) {
+                return;
+            }
+        } while (!FLAGS.compareAndSet(current,
+            new DetectionFlags(detected, current.remoteConfigEnabled, current.locationCheckBypassed)));
+    }
+    
+    /**
+     * Các thành phần tạo lại mỗi lần initialize() (immutable).
+     * Reader lấy một snapshot rồi dùng tiếp, không bị initialize() thay giữa chừng
+     * giữa lúc kiểm tra null và lúc gọi.
+     */
+    private static final class Components {
+        final SecureLocationClient locationClient;
+        final TimeReliabilityManager timeReliabilityManager;
+        
+        Components(SecureLocationClient locationClient, TimeReliabilityManager timeReliabilityManager) {
+            this.locationClient = locationClient;
+            this.timeReliabilityManager = timeReliabilityManager;
+        }
     }
     
-    // Remote config flag
-    private static boolean remoteConfigEnabled = true;
+    private final AtomicReference<Components> components =
+        new AtomicReference<>(new Components(null, null));
+    private final RootDetector rootDetector;
+    private volatile SecureLocationClient.LocationUpdateListener locationListener;
     
-    // Kiểm tra kết hợp các điều kiện
-    private static boolean isLocationCheckBypassed = false;
+    // Buffer sống cùng singleton để địa chỉ native bên Rust luôn hợp lệ
+    private static final int LOCATION_STREAM_CAPACITY = 64;
+    private final LocationStreamBuffer locationStream = new LocationStreamBuffer(LOCATION_STREAM_CAPACITY);
     
-    private SecureLocationClient locationClient;
-    private TimeReliabilityManager timeReliabilityManager;
-    private SecureLocationClient.LocationUpdateListener locationListener;
+    private volatile GeofenceIndex geofenceIndex = GeofenceIndex.EMPTY;
+    
+    // Kênh đẩy sự kiện sang Rust/JS, sống cùng singleton
+    private final AntiCheatEventChannel eventChannel = new AntiCheatEventChannel();
+    
+    // Rule gian lận giờ đã ghi vào AuditJournal gần nhất, null khi giờ đang hợp lệ:
+    // UI poll checkTimeReliability liên tục, chỉ ghi khi trạng thái/lý do đổi
+    private final AtomicReference<String> journaledCheatReason = new AtomicReference<>();
+    
+    // Độ trễ từng thao tác + nhịp fix, sống cùng singleton (qua nhiều lần initialize)
+    private final AntiCheatMetrics metrics = new AntiCheatMetrics();
+    
+    // Listener nội bộ: đẩy vào kênh sự kiện rồi chuyển tiếp cho listener bên ngoài (nếu có)
+    private final SecureLocationClient.LocationUpdateListener channelListener =
+        new SecureLocationClient.LocationUpdateListener() {
+            @Override
+            public void onLocationUpdate(LocationSample sample) {
+                eventChannel.publishLocation(sample);
+                SecureLocationClient.LocationUpdateListener external = locationListener;
+                if (external != null) {
+                    external.onLocationUpdate(sample);
+                }
+            }
+            
+            @Override
+            public void onProviderChanged(String provider, boolean enabled) {
+                eventChannel.publishProviderChange(provider, enabled);
+                SecureLocationClient.LocationUpdateListener external = locationListener;
+                if (external != null) {
+                    external.onProviderChanged(provider, enabled);
+                }
+            }
+        };
+
+    // SNTP chạy trên thread riêng: có DNS + chờ UDP tới vài giây
+    private final ExecutorService sntpExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "AntiCheat-Sntp");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static volatile AntiCheatPlugin instance;
 
-    private static AntiCheatPlugin instance;
+    // Field mask cho getSecuritySnapshot - chỉ tính những phần được yêu cầu
+    public static final int SNAPSHOT_LOCATION = 1;
+    public static final int SNAPSHOT_TIME = 1 << 1;
+    public static final int SNAPSHOT_DEVICE = 1 << 2;
+    public static final int SNAPSHOT_TELEMETRY = 1 << 3;
+    public static final int SNAPSHOT_ALL = SNAPSHOT_LOCATION | SNAPSHOT_TIME | SNAPSHOT_DEVICE | SNAPSHOT_TELEMETRY;
 
-    public static synchronized AntiCheatPlugin getInstance(Context context) {
-        if (instance == null) {
-            instance = new AntiCheatPlugin(context.getApplicationContext());
+    /**
+     * Fast path không khoá: mỗi command từ Rust gọi hàm này
+     */
+    public static AntiCheatPlugin getInstance(Context context) {
+        AntiCheatPlugin plugin = instance;
+        if (plugin == null) {
+            synchronized (AntiCheatPlugin.class) {
+                plugin = instance;
+                if (plugin == null) {
+                    plugin = new AntiCheatPlugin(context.getApplicationContext());
+                    instance = plugin;
+                }
+            }
         }
-        return instance;
+        return plugin;
     }
 
     public AntiCheatPlugin(Context context) {
         this.context = context;
+        this.rootDetector = new RootDetector(context);
     }
     
+    // Bật/tắt giờ tự động được báo ngay dưới dạng sự kiện bất thường thời gian
+    private final TimeSettingsMonitor.Listener timeSettingsListener = new TimeSettingsMonitor.Listener() {
+        @Override
+        public void onTimeSettingChanged(String key, int oldValue, int newValue) {
+            Map<String, Object> details = new HashMap<>();
+            details.put("source", "settings");
+            details.put("setting", key);
+            details.put("oldValue", oldValue);
+            details.put("newValue", newValue);
+            details.put("detectedAt", System.currentTimeMillis());
+            eventChannel.publishTimeAnomaly(details);
+            AuditJournal.getInstance(context).append(AuditJournal.TYPE_TIME_ANOMALY, newValue, oldValue,
+                "setting " + key);
+        }
+    };
+    
     public void setLocationListener(SecureLocationClient.LocationUpdateListener listener) {
         this.locationListener = listener;
     }
 
     public void initialize() {
-        locationClient = new SecureLocationClient(context, locationListener);
-        timeReliabilityManager = new TimeReliabilityManager(context);
-        timeReliabilityManager.initializeAndCheck();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            SecureLocationClient locationClient = new SecureLocationClient(context, channelListener);
+            locationClient.setLocationStream(locationStream);
+            locationClient.setGeofenceIndex(geofenceIndex);
+            locationClient.setMetrics(metrics);
+            TimeReliabilityManager timeReliabilityManager = new TimeReliabilityManager(context);
+            TimeSettingsMonitor.getInstance(context).setListener(timeSettingsListener);
+            timeReliabilityManager.initializeAndCheck();
+            
+            Components previous = components.getAndSet(new Components(locationClient, timeReliabilityManager));
+            if (previous.locationClient != null) {
+                previous.locationClient.shutdown();
+            }
+            // loadGeofences() chạy song song có thể đã ghi vào client cũ
+            locationClient.setGeofenceIndex(geofenceIndex);
+            rootDetector.refreshAsync();
+            syncNetworkTimeAsync();
+            PunchQueue.getInstance(context).start();
+            success = true;
+        } finally {
+            metrics.record(AntiCheatMetrics.OP_INITIALIZE, startNanos, success);
+        }
+    }
+    
+    /**
+     * Gọi ở lifecycle edge (Activity onPause): ghi ngay trạng thái thời gian đang chờ
+     */
+    public static void flushPendingState() {
+        TimeStateStore.flushIfCreated();
+        AuditJournal.forceIfCreated();
     }
     
     public void startLocationUpdates() {
-        if (locationClient != null) {
-            locationClient.startLocationUpdates();
+        Components current = components.get();
+        if (current.locationClient != null) {
+            current.locationClient.startLocationUpdates();
         }
     }
     
     public void stopLocationUpdates() {
-        if (locationClient != null) {
-            locationClient.stopLocationUpdates();
+        Components current = components.get();
+        if (current.locationClient != null) {
+            current.locationClient.stopLocationUpdates();
         }
     }
     
+    /**
+     * Direct ByteBuffer chứa ring record vị trí, xem LocationStreamBuffer cho layout.
+     */
+    public ByteBuffer getLocationStreamBuffer() {
+        return locationStream.getBuffer();
+    }
+    
+    public void setRootCheckTtlMs(long ttlMs) {
+        rootDetector.setTtlMs(ttlMs);
+    }
+    
+    public void setRootCheckDeadlineMs(long deadlineMs) {
+        rootDetector.setDeadlineMs(deadlineMs);
+    }
+    
+    /**
+     * Nạp lại toàn bộ danh sách geofence (JSON array), xem GeofenceIndex.fromJson
+     * @return số site đã nạp
+     */
+    public int loadGeofences(String sitesJson) throws JSONException {
+        return installGeofences(sitesJson).size();
+    }
+    
+    private GeofenceIndex installGeofences(String sitesJson) throws JSONException {
+        GeofenceIndex index = GeofenceIndex.fromJson(sitesJson);
+        geofenceIndex = index;
+        Components current = components.get();
+        if (current.locationClient != null) {
+            current.locationClient.setGeofenceIndex(index);
+        }
+        Log.d("AntiCheat", "Geofences loaded: " + index.size() + ", rejected: " + index.rejectedCount());
+        return index;
+    }
+    
+    /**
+     * Tăng tần suất GPS trong lúc chấm công, tự về profile bình thường sau durationMs
+     * @return true nếu location client đang chạy
+     */
+    public boolean requestLocationBurst(long durationMs) {
+        Components current = components.get();
+        if (current.locationClient == null) {
+            return false;
+        }
+        long duration = durationMs > 0 ? durationMs : SecureLocationClient.DEFAULT_BURST_DURATION_MS;
+        current.locationClient.requestBurst(duration);
+        return true;
+    }
+    
     public boolean isMockLocationEnabled() {
-        return isMockLocation;
+        return FLAGS.get().mockLocation;
+    }
+    
+    /**
+     * Nạp bộ luật chấm điểm vị trí/thời gian từ config server, xem TrustRuleEngine.load
+     * Có hiệu lực ngay cho fix/lần kiểm tra kế tiếp, không cần initialize lại
+     * @return số luật đã nạp
+     */
+    public int loadTrustRules(String rulesJson) throws JSONException {
+        return TrustRuleEngine.load(rulesJson);
     }
     
     public void setRemoteConfigEnabled(boolean enabled) {
-        remoteConfigEnabled = enabled;
+        // Tắt remote config thì luật chấm điểm quay về mặc định
+        TrustRuleEngine.setRemoteEnabled(enabled);
+        DetectionFlags current;
+        do {
+            current = FLAGS.get();
+            if (current.remoteConfigEnabled == enabled) {
+                return;
+            }
+        } while (!FLAGS.compareAndSet(current,
+            new DetectionFlags(current.mockLocation, enabled, current.locationCheckBypassed)));
     }
     
     public static boolean isLocationCheckActive() {
-        return remoteConfigEnabled && !isLocationCheckBypassed;
+        DetectionFlags flags = FLAGS.get();
+        return flags.remoteConfigEnabled && !flags.locationCheckBypassed;
     }
     
     public Map<String, Object> getSecureLocation() {
-        if (locationClient != null) {
-            return locationClient.getLastKnownLocation();
+        LocationSample sample = getSecureLocationSample();
+        return sample != null ? sample.toMap() : null;
+    }
+    
+    public LocationSample getSecureLocationSample() {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Components current = components.get();
+            LocationSample sample = current.locationClient != null
+                ? current.locationClient.getLastKnownLocation() : null;
+            success = true;
+            return sample;
+        } finally {
+            metrics.record(AntiCheatMetrics.OP_GET_SECURE_LOCATION, startNanos, success);
         }
-        return null;
+    }
+    
+    /**
+     * Lịch sử vị trí: tối đa maxSamples sample mới nhất có gpsTime >= sinceTime
+     */
+    public List<Map<String, Object>> getLocationHistory(int maxSamples, long sinceTime) {
+        Components current = components.get();
+        if (current.locationClient != null) {
+            return current.locationClient.getHistory().toList(maxSamples, sinceTime);
+        }
+        return new ArrayList<>();
     }
     
     public Map<String, Object> updateWithRealTime(long realTime, String source) {
-         if (timeReliabilityManager != null) {
-            return timeReliabilityManager.updateWithRealTime(realTime, source);
+        Components current = components.get();
+         if (current.timeReliabilityManager != null) {
+            return current.timeReliabilityManager.updateWithRealTime(realTime, source);
          }
          return new HashMap<>();
     }
     
+    public String updateWithRealTimeJson(long realTime, long uncertaintyMs, String source) {
+        Components current = components.get();
+        Map<String, Object> result = new HashMap<>();
+        if (current.timeReliabilityManager != null) {
+            // Giờ do frontend đưa vào không có round-trip đo được: không cho khai sai số nhỏ hơn mặc định,
+            // nếu không một anchor 0ms sẽ chặn mọi anchor SNTP sau đó (SNTP đi qua syncNetworkTime)
+            long floored = Math.max(uncertaintyMs, TrustedClock.DEFAULT_SYNC_UNCERTAINTY_MS);
+            result = current.timeReliabilityManager.updateWithRealTime(realTime, floored, source);
+        }
+        return new JSONObject(result).toString();
+    }
+    
+    /**
+     * Đồng bộ giờ mạng bằng SNTP rồi neo TrustedClock qua updateWithRealTime.
+     * Chặn tới SntpClient.DEFAULT_TIMEOUT_MS - không gọi trên main thread.
+     * @param servers null hoặc rỗng để dùng SntpClient.DEFAULT_SERVERS
+     */
+    public Map<String, Object> syncNetworkTime(String[] servers) {
+        Map<String, Object> result = new HashMap<>();
+        SntpClient client = servers != null && servers.length > 0
+            ? new SntpClient(servers, SntpClient.NTP_PORT, SntpClient.DEFAULT_SAMPLES_PER_SERVER,
+                SntpClient.DEFAULT_TIMEOUT_MS)
+            : new SntpClient();
+        SntpClient.Result sntp = client.query();
+        if (sntp == null) {
+            result.put("success", false);
+            result.put("error", "No valid SNTP response");
+            return result;
+        }
+        Log.d("AntiCheat", "SNTP " + sntp.server + ": offset=" + sntp.offsetMs + "ms, delay=" + sntp.delayMs + "ms");
+        result.put("success", true);
+        result.put("sntp", sntp.toMap());
+        // Lấy snapshot sau khi query xong: initialize() có thể đã chạy trong lúc chờ mạng
+        Components current = components.get();
+        if (current.timeReliabilityManager != null) {
+            result.put("reliability", current.timeReliabilityManager.updateWithRealTime(
+                sntp.networkTimeNow(), sntp.uncertaintyMs, "sntp:" + sntp.server));
+        }
+        return result;
+    }
+    
+    /**
+     * @param serversCsv danh sách server phân cách bằng dấu phẩy, null/rỗng để dùng mặc định
+     */
+    public String syncNetworkTimeJson(String serversCsv) {
+        String[] servers = null;
+        if (serversCsv != null && !serversCsv.trim().isEmpty()) {
+            List<String> list = new ArrayList<>();
+            for (String server : serversCsv.split(",")) {
+                if (!server.trim().isEmpty()) {
+                    list.add(server.trim());
+                }
+            }
+            servers = list.toArray(new String[0]);
+        }
+        return new JSONObject(syncNetworkTime(servers)).toString();
+    }
+    
+    public void syncNetworkTimeAsync() {
+        sntpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    syncNetworkTime(null);
+                } catch (Exception e) {
+                    Log.w("AntiCheat", "SNTP sync failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Giờ tin cậy để đóng dấu chấm công - không gọi mạng, không phụ thuộc giờ hệ thống
+     */
+    public Map<String, Object> getTrustedTime() {
+        Components current = components.get();
+        if (current.timeReliabilityManager != null) {
+            return current.timeReliabilityManager.getTrustedClock().now().toMap();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("anchored", false);
+        result.put("trustedTime", System.currentTimeMillis());
+        result.put("lostReason", TrustedClock.LOST_NEVER_SYNCED);
+        return result;
+    }
+    
+    public String getTrustedTimeJson() {
+        return new JSONObject(getTrustedTime()).toString();
+    }
+    
     public Map<String, Object> getTelemetryData() {
-        if (timeReliabilityManager != null) {
-            return timeReliabilityManager.getTelemetryData();
+        Components current = components.get();
+        if (current.timeReliabilityManager != null) {
+            Map<String, Object> data = current.timeReliabilityManager.getTelemetryData();
+            if (current.locationClient != null) {
+                data.put("locationPipeline", current.locationClient.getPipelineStats());
+                data.put("locationScheduler", current.locationClient.getSchedulerStats());
+            }
+            data.put("eventChannel", eventChannel.getStats());
+            data.put("auditJournal", AuditJournal.getInstance(context).getStats());
+            data.put("punchQueue", PunchQueue.getInstance(context).getStats());
+            data.put("metrics", metrics.toMap());
+            data.put("trustRules", TrustRuleEngine.getStats());
+            return data;
         }
         return new HashMap<>();
     }
 
     public Map<String, Object> checkTimeReliability() {
-        if (timeReliabilityManager != null) {
-            return timeReliabilityManager.checkTimeCheating();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Components current = components.get();
+            Map<String, Object> result = new HashMap<>();
+            if (current.timeReliabilityManager != null) {
+                result = current.timeReliabilityManager.checkTimeCheating();
+                if (Boolean.TRUE.equals(result.get("isCheatingTime"))) {
+                    eventChannel.publishTimeAnomaly(result);
+                    // cheatingReason chứa độ lệch hiện tại nên đổi mỗi lần; so theo rule quyết định
+                    String rule = String.valueOf(result.get("trustRule"));
+                    if (!rule.equals(journaledCheatReason.getAndSet(rule))) {
+                        Object skew = result.get("timeSkew");
+                        AuditJournal.getInstance(context).append(AuditJournal.TYPE_TIME_CHEATING,
+                            current.timeReliabilityManager.getReliabilityValue(),
+                            skew instanceof Long ? (Long) skew : 0,
+                            String.valueOf(result.get("cheatingReason")));
+                    }
+                } else {
+                    journaledCheatReason.set(null);
+                }
+            }
+            success = true;
+            return result;
+        } finally {
+            metrics.record(AntiCheatMetrics.OP_CHECK_TIME_RELIABILITY, startNanos, success);
         }
-        return new HashMap<>();
     }
 
     /**
      * LAYER 1: Kiểm tra thiết bị đã Root chưa
+     * Đọc verdict đã cache (tính ở background lúc initialize)
      */
     public Map<String, Object> checkRootStatus() {
-        Map<String, Object> resultMap = new HashMap<>();
-        
-        boolean isRooted = false;
-        String rootMethod = "";
-        
-        // Kiểm tra file su tồn tại
-        File suBin = new File("/system/bin/su");
-        File suXbin = new File("/system/xbin/su");
-        
-        if (suBin.exists() && hasExecutePermission("/system/bin/su")) {
-            isRooted = true;
-            rootMethod = "/system/bin/su";
-        } else if (suXbin.exists() && hasExecutePermission("/system/xbin/su")) {
-            isRooted = true;
-            rootMethod = "/system/xbin/su";
+        return checkRootStatus(false);
+    }
+    
+    public Map<String, Object> checkRootStatus(boolean forceRefresh) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<String, Object> resultMap = buildRootStatus(forceRefresh);
+            success = true;
+            return resultMap;
+        } finally {
+            metrics.record(AntiCheatMetrics.OP_CHECK_ROOT_STATUS, startNanos, success);
         }
+    }
+    
+    private Map<String, Object> buildRootStatus(boolean forceRefresh) {
+        Map<String, Object> resultMap = new HashMap<>();
         
-        // Kiểm tra thêm các đường dẫn phổ biến khác
-        String[] rootPaths = {
-            "/sbin/su",
-            "/system/sd/xbin/su",
-            "/system/bin/failsafe/su",
-            "/data/local/xbin/su",
-            "/data/local/bin/su",
-            "/data/local/su"
-        };
-        
-        if (!isRooted) {
-        for (String path : rootPaths) {
-            if (new File(path).exists()) {
-                isRooted = true;
-                rootMethod = path;
-                break;
-                }
-            }
-        }
+        RootDetector.Verdict verdict = forceRefresh ? rootDetector.refresh() : rootDetector.getVerdict();
         
-        resultMap.put("isRooted", isRooted);
-        resultMap.put("rootMethod", rootMethod);
+        resultMap.put("isRooted", verdict.isRooted);
+        resultMap.put("rootMethod", verdict.rootMethod);
+        resultMap.put("rootCheckedAt", verdict.computedAtElapsed);
+        // Từng probe (paths/mounts/props/selinux) kèm lý do; complete=false nếu có probe quá deadline
+        resultMap.put("integrity", verdict.report.toMap());
         
         resultMap.put("deviceModel", Build.MODEL);
         resultMap.put("manufacturer", Build.MANUFACTURER);
@@ -170,6 +526,53 @@ public class AntiCheatPlugin {
         return resultMap;
     }
     
+    /**
+     * Gom location, time reliability, root/device status và telemetry vào một snapshot
+     * để check-in chỉ cần một lần gọi qua JNI.
+     *
+     * @param fieldMask tổ hợp các cờ SNAPSHOT_*; giá trị <= 0 được hiểu là SNAPSHOT_ALL
+     */
+    public Map<String, Object> getSecuritySnapshot(int fieldMask) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<String, Object> snapshot = buildSecuritySnapshot(fieldMask);
+            success = true;
+            return snapshot;
+        } finally {
+            metrics.record(AntiCheatMetrics.OP_GET_SECURITY_SNAPSHOT, startNanos, success);
+        }
+    }
+    
+    private Map<String, Object> buildSecuritySnapshot(int fieldMask) {
+        if (fieldMask <= 0) {
+            fieldMask = SNAPSHOT_ALL;
+        }
+        
+        Map<String, Object> snapshot = new HashMap<>();
+        // Mốc thời gian chung cho toàn bộ snapshot
+        snapshot.put("systemTime", System.currentTimeMillis());
+        snapshot.put("elapsedRealtime", SystemClock.elapsedRealtime());
+        snapshot.put("fieldMask", fieldMask);
+        
+        if ((fieldMask & SNAPSHOT_LOCATION) != 0) {
+            Map<String, Object> location = getSecureLocation();
+            snapshot.put("location", location != null ? location : new HashMap<String, Object>());
+            snapshot.put("isMockLocation", FLAGS.get().mockLocation);
+        }
+        if ((fieldMask & SNAPSHOT_TIME) != 0) {
+            snapshot.put("time", checkTimeReliability());
+        }
+        if ((fieldMask & SNAPSHOT_DEVICE) != 0) {
+            snapshot.put("device", checkRootStatus());
+        }
+        if ((fieldMask & SNAPSHOT_TELEMETRY) != 0) {
+            snapshot.put("telemetry", getTelemetryData());
+        }
+        
+        return snapshot;
+    }
+    
     public Map<String, Object> getTimezoneInfo() {
         Map<String, Object> info = new HashMap<>();
         
@@ -190,26 +593,31 @@ public class AntiCheatPlugin {
             "Time anomaly detected - Local: " + localTime + 
             ", System: " + systemTime + 
             ", Source: " + source);
+        Map<String, Object> details = new HashMap<>();
+        details.put("localTime", localTime);
+        details.put("systemTime", systemTime);
+        details.put("source", source);
+        details.put("detectedAt", System.currentTimeMillis());
+        eventChannel.publishTimeAnomaly(details);
+        AuditJournal.getInstance(context).append(AuditJournal.TYPE_TIME_ANOMALY, 0, 0,
+            source + " local=" + localTime + " system=" + systemTime);
     }
     
-    private boolean hasExecutePermission(String path) {
+    /**
+     * Chặn tối đa timeoutMs chờ sự kiện (gọi từ thread pump bên Rust, không gọi trên UI thread)
+     * @return JSON array các sự kiện đã gộp, hoặc null nếu không có
+     */
+    public String pollEventsJson(long timeoutMs) {
         try {
-            Process process = Runtime.getRuntime().exec("ls -l " + path);
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream())
-            );
-            String line = reader.readLine();
-            reader.close();
-            process.destroy();
-            
-            if (line != null && line.length() >= 4) {
-                char permission = line.charAt(3);
-                return permission == 's' || permission == 'x';
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return eventChannel.poll(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return false;
+    }
+    
+    public AntiCheatEventChannel getEventChannel() {
+        return eventChannel;
     }
     
     public Map<String, Object> checkMockLocationFromCoords(double lat, double lng) {
@@ -222,7 +630,7 @@ public class AntiCheatPlugin {
         
         resultMap.put("gpsEnabled", gpsEnabled);
         resultMap.put("networkEnabled", networkEnabled);
-        resultMap.put("isMockLocation", isMockLocation);
+        resultMap.put("isMockLocation", FLAGS.get().mockLocation);
         resultMap.put("latitude", lat);
         resultMap.put("longitude", lng);
         
@@ -231,9 +639,9 @@ public class AntiCheatPlugin {
     
     // JSON Helpers for JNI
     public String getSecureLocationJson() {
-        Map<String, Object> map = getSecureLocation();
-        if (map == null) return "{}";
-        return new JSONObject(map).toString();
+        LocationSample sample = getSecureLocationSample();
+        if (sample == null) return "{}";
+        return sample.toJson();
     }
 
     public String checkTimeReliabilityJson() {
@@ -250,6 +658,146 @@ public class AntiCheatPlugin {
         Map<String, Object> map = checkRootStatus();
         return new JSONObject(map).toString();
     }
+    
+    public String refreshRootStatusJson() {
+        Map<String, Object> map = checkRootStatus(true);
+        return new JSONObject(map).toString();
+    }
+    
+    public String getLocationHistoryJson(int maxSamples, long sinceTime) {
+        return new JSONArray(getLocationHistory(maxSamples, sinceTime)).toString();
+    }
+    
+    public String loadGeofencesJson(String sitesJson) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            GeofenceIndex index = installGeofences(sitesJson);
+            result.put("loaded", index.size());
+            // Site quá lớn để lập chỉ mục, không bao giờ khớp
+            result.put("rejected", index.rejectedCount());
+        } catch (JSONException e) {
+            result.put("loaded", 0);
+            result.put("error", e.getMessage());
+        }
+        return new JSONObject(result).toString();
+    }
+    
+    public String loadTrustRulesJson(String rulesJson) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("loaded", loadTrustRules(rulesJson));
+        } catch (JSONException e) {
+            result.put("loaded", 0);
+            result.put("error", e.getMessage());
+        }
+        result.put("rules", TrustRuleEngine.getStats());
+        return new JSONObject(result).toString();
+    }
+    
+    /**
+     * Đọc nhật ký kiểm toán để gửi kèm lần chấm công kế tiếp
+     * @return {records:[...], lastSeq, headHash, brokenAtSeq}
+     */
+    public String readAuditLogJson(long afterSeq, int maxRecords) {
+        AuditJournal journal = AuditJournal.getInstance(context);
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (AuditJournal.Entry entry : journal.read(afterSeq, maxRecords)) {
+            records.add(entry.toMap());
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", records);
+        result.put("lastSeq", journal.getLastSeq());
+        result.put("headHash", journal.getHeadHash());
+        result.put("brokenAtSeq", journal.verify());
+        return new JSONObject(result).toString();
+    }
+    
+    /**
+     * Server đã nhận tới seq - cho phép dọn segment cũ
+     */
+    public String ackAuditLogJson(long seq) {
+        AuditJournal journal = AuditJournal.getInstance(context);
+        journal.markUploaded(seq);
+        return new JSONObject(journal.getStats()).toString();
+    }
+    
+    /**
+     * Chấm công vào hàng đợi native: chụp snapshot location/time/device ngay lúc bấm,
+     * ghi bền xuống đĩa rồi upload khi có mạng (xem PunchQueue)
+     * @param payloadJson JSON object gửi kèm (vd: photoId), có thể null
+     */
+    public Map<String, Object> enqueuePunch(String type, String payloadJson) throws IOException {
+        Components current = components.get();
+        Map<String, Object> snapshot = getSecuritySnapshot(SNAPSHOT_LOCATION | SNAPSHOT_TIME | SNAPSHOT_DEVICE);
+        TrustedClock.Reading now = current.timeReliabilityManager != null
+            ? current.timeReliabilityManager.getTrustedClock().now() : null;
+        boolean trusted = now != null && now.anchored;
+        long capturedAt = trusted ? now.timeMs : System.currentTimeMillis();
+        
+        PunchQueue queue = PunchQueue.getInstance(context);
+        PunchQueue.Punch punch = queue.enqueue(type, capturedAt, trusted, payloadJson,
+            new JSONObject(snapshot).toString());
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("idempotencyKey", punch.idempotencyKey);
+        result.put("capturedAt", punch.capturedAt);
+        result.put("trustedTime", punch.trusted);
+        result.put("pendingCount", queue.getPendingCount());
+        return result;
+    }
+    
+    public String enqueuePunchJson(String type, String payloadJson) {
+        Map<String, Object> result;
+        try {
+            result = enqueuePunch(type, payloadJson);
+            result.put("success", true);
+        } catch (Exception e) {
+            result = new HashMap<>();
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return new JSONObject(result).toString();
+    }
+    
+    /**
+     * Endpoint + token cho upload batch; gọi lại sau mỗi lần đăng nhập/refresh token
+     */
+    public String configurePunchUploadJson(String url, String token) {
+        PunchQueue queue = PunchQueue.getInstance(context);
+        queue.configure(url, token);
+        return new JSONObject(queue.getStats()).toString();
+    }
+    
+    /**
+     * Upload hàng đợi ngay trên thread của PunchQueue, trả về ngay với stats hiện tại
+     */
+    public String flushPunchQueueJson() {
+        PunchQueue queue = PunchQueue.getInstance(context);
+        queue.requestFlush();
+        return new JSONObject(queue.getStats()).toString();
+    }
+    
+    public String requestLocationBurstJson(long durationMs) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("accepted", requestLocationBurst(durationMs));
+        return new JSONObject(result).toString();
+    }
+    
+    public String getSecuritySnapshotJson(int fieldMask) {
+        Map<String, Object> map = getSecuritySnapshot(fieldMask);
+        return new JSONObject(map).toString();
+    }
+    
+    public Map<String, Object> getMetrics() {
+        return metrics.toMap();
+    }
+    
+    /**
+     * Độ trễ (p50/p90/p99, bucket thô) từng thao tác và nhịp fix vị trí, kèm model máy
+     */
+    public String getMetricsJson() {
+        return new JSONObject(getMetrics()).toString();
+    }
 
     public Map<String, Object> getDeviceSecurityInfo() {
         Map<String, Object> info = new HashMap<>();
@@ -257,38 +805,12 @@ public class AntiCheatPlugin {
         info.put("deviceModel", Build.MODEL);
         info.put("manufacturer", Build.MANUFACTURER);
         info.put("sdkVersion", Build.VERSION.SDK_INT);
-        info.put("bootId", getBootId());
-        info.put("bootCount", getBootCount());
+        BootSession bootSession = BootSession.get(context);
+        info.put("bootId", bootSession.bootId);
+        info.put("bootCount", bootSession.bootCount);
         info.put("elapsedRealtime", SystemClock.elapsedRealtime());
         info.put("systemTime", System.currentTimeMillis());
         
         return info;
     }
-    
-    private String getBootId() {
-        try {
-            BufferedReader reader = new BufferedReader(
-                new java.io.FileReader("/proc/sys/kernel/random/boot_id")
-            );
-            String bootId = reader.readLine();
-            reader.close();
-            return bootId != null ? bootId.trim() : "";
-        } catch (Exception e) {
-            return "";
-        }
-    }
-    
-    private int getBootCount() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            try {
-                return android.provider.Settings.Global.getInt(
-                    context.getContentResolver(),
-                    android.provider.Settings.Global.BOOT_COUNT
-                );
-            } catch (Exception e) {
-                return -1;
-            }
-        }
-        return -1;
-    }
 }
@@ -0,0 +1,544 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Nhật ký kiểm toán append-only cho các sự kiện độ tin cậy (trừ điểm, phục hồi, bất thường thời gian)
+ * - Mỗi segment là một file map vào bộ nhớ (mmap), record cố định RECORD_SIZE byte: append chỉ là ghi vào RAM
+ * - Mỗi record chứa SHA-256(hash record trước || nội dung record) -> sửa/xoá giữa chuỗi sẽ bị phát hiện
+ * - Segment đầy thì mở segment mới (header mang hash cuối của segment trước);
+ *   giữ tối đa MAX_SEGMENTS, segment đã upload có thể xoá sớm qua markUploaded()
+ * - Reader đọc tuần tự theo seq, nhảy thẳng tới record bằng firstSeq của segment
+ */
+public final class AuditJournal {
+
+    private static final String TAG = "AuditJournal";
+
+    // Loại sự kiện
+    public static final int TYPE_REBOOT_PENALTY = 1;
+    public static final int TYPE_CLEAR_PENALTY = 2;
+    public static final int TYPE_RELIABILITY_RECOVERY = 3;
+    public static final int TYPE_TIME_ANOMALY = 4;
+    public static final int TYPE_TIME_CHEATING = 5;
+
+    private static final String DIR_NAME = "audit";
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // Layout header segment
+    private static final int MAGIC = 0x41554431; // "AUD1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_CAPACITY = 12;
+    private static final int H_FIRST_SEQ = 16;
+    private static final int H_PREV_HASH = 24;   // 32 byte
+
+    // Layout record
+    static final int RECORD_SIZE = 128;
+    private static final int R_SEQ = 0;
+    private static final int R_WALL_TIME = 8;
+    private static final int R_ELAPSED = 16;
+    private static final int R_TYPE = 24;
+    private static final int R_VALUE = 28;
+    private static final int R_ARG = 32;
+    private static final int R_DETAIL_LEN = 40;
+    private static final int R_DETAIL = 41;
+    private static final int MAX_DETAIL_BYTES = 55;
+    private static final int R_HASH = 96;         // 32 byte, phủ [0, R_HASH)
+    private static final int HASH_SIZE = 32;
+
+    private static final int SEGMENT_CAPACITY = 512;  // ~64 KB mỗi segment
+    private static final int MAX_SEGMENTS = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Một record đã đọc (immutable)
+     */
+    public static final class Entry {
+        public final long seq;
+        public final long wallTime;
+        public final long elapsedRealtime;
+        public final int type;
+        public final int value;
+        public final long arg;
+        public final String detail;
+        public final String hashHex;
+
+        Entry(long seq, long wallTime, long elapsedRealtime, int type, int value, long arg,
+              String detail, String hashHex) {
+            this.seq = seq;
+            this.wallTime = wallTime;
+            this.elapsedRealtime = elapsedRealtime;
+            this.type = type;
+            this.value = value;
+            this.arg = arg;
+            this.detail = detail;
+            this.hashHex = hashHex;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("seq", seq);
+            map.put("wallTime", wallTime);
+            map.put("elapsedRealtime", elapsedRealtime);
+            map.put("type", type);
+            map.put("value", value);
+            map.put("arg", arg);
+            map.put("detail", detail);
+            map.put("hash", hashHex);
+            return map;
+        }
+    }
+
+    private static final class Segment {
+        final int index;
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buffer;
+        final long firstSeq;
+        int count;
+
+        Segment(int index, File file, RandomAccessFile raf, MappedByteBuffer buffer, long firstSeq) {
+            this.index = index;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.firstSeq = firstSeq;
+        }
+
+        long lastSeq() {
+            return firstSeq + count - 1;
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static AuditJournal instance;
+
+    public static synchronized AuditJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new AuditJournal(new File(context.getNoBackupFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Ghi xuống đĩa nếu journal đã được tạo (lifecycle edge)
+     */
+    public static void forceIfCreated() {
+        AuditJournal journal;
+        synchronized (AuditJournal.class) {
+            journal = instance;
+        }
+        if (journal != null) {
+            journal.force();
+        }
+    }
+
+    private final File dir;
+    private final MessageDigest digest;
+    // Segment cũ -> mới, phần tử cuối là segment đang ghi
+    private final List<Segment> segments = new ArrayList<>();
+    private final byte[] recordScratch = new byte[RECORD_SIZE];
+    private final ByteBuffer recordView = ByteBuffer.wrap(recordScratch).order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] lastHash = new byte[HASH_SIZE];
+    private long nextSeq = 1;
+    private boolean broken = false;
+
+    // Metrics
+    private long appendCount = 0;
+    private long droppedCount = 0;
+    private long truncatedTailCount = 0;
+
+    AuditJournal(File dir) {
+        this.dir = dir;
+        MessageDigest md = null;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(TAG, "SHA-256 not available");
+        }
+        this.digest = md;
+        try {
+            open();
+        } catch (IOException e) {
+            Log.w(TAG, "Audit journal unavailable: " + e.getMessage());
+            broken = true;
+        }
+    }
+
+    private void open() throws IOException {
+        if (digest == null) {
+            throw new IOException("no digest");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        File[] files = dir.listFiles();
+        List<Integer> indexes = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                int index = parseSegmentIndex(file.getName());
+                if (index >= 0) {
+                    indexes.add(index);
+                }
+            }
+        }
+        Collections.sort(indexes);
+
+        for (int n = 0; n < indexes.size(); n++) {
+            Segment segment = mapSegment(indexes.get(n), -1, null);
+            if (segment == null) {
+                continue;
+            }
+            // Đếm record đã commit; record đứt/hỏng ở cuối bị bỏ (ghi dở khi crash)
+            int valid = 0;
+            for (int i = 0; i < SEGMENT_CAPACITY; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                if (segment.buffer.getLong(base + R_SEQ) != segment.firstSeq + i) {
+                    break;
+                }
+                valid++;
+            }
+            if (n == indexes.size() - 1) {
+                // mmap không đảm bảo thứ tự page xuống đĩa: seq có thể đã ghi mà payload thì chưa,
+                // nên segment đang ghi còn phải khớp hash từng record
+                valid = verifiedPrefix(segment, valid);
+            }
+            segment.count = valid;
+            clearTail(segment);
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(mapSegment(0, 1, new byte[HASH_SIZE]));
+        }
+        Segment tail = segments.get(segments.size() - 1);
+        nextSeq = tail.firstSeq + tail.count;
+        lastHash = tail.count > 0 ? readHash(tail, tail.count - 1) : readPrevHash(tail);
+    }
+
+    // Số record đầu segment có hash khớp chuỗi (tính từ prev hash trong header)
+    private int verifiedPrefix(Segment segment, int count) {
+        byte[] prev = readPrevHash(segment);
+        byte[] rec = new byte[R_HASH];
+        for (int i = 0; i < count; i++) {
+            int base = HEADER_SIZE + i * RECORD_SIZE;
+            for (int k = 0; k < R_HASH; k++) {
+                rec[k] = segment.buffer.get(base + k);
+            }
+            digest.reset();
+            digest.update(prev);
+            digest.update(rec);
+            byte[] stored = readHash(segment, i);
+            if (!Arrays.equals(digest.digest(), stored)) {
+                Log.w(TAG, "Hash mismatch at seq " + (segment.firstSeq + i) + ", truncating");
+                return i;
+            }
+            prev = stored;
+        }
+        return count;
+    }
+
+    // Xoá phần record sau tail để reader không thấy dữ liệu cũ
+    private void clearTail(Segment segment) {
+        int base = HEADER_SIZE + segment.count * RECORD_SIZE;
+        if (segment.count < SEGMENT_CAPACITY && segment.buffer.getLong(base + R_SEQ) != 0) {
+            truncatedTailCount++;
+            for (int i = segment.count; i < SEGMENT_CAPACITY; i++) {
+                segment.buffer.putLong(HEADER_SIZE + i * RECORD_SIZE + R_SEQ, 0);
+            }
+        }
+    }
+
+    private static int parseSegmentIndex(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private File segmentFile(int index) {
+        return new File(dir, String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Map segment có sẵn (firstSeq < 0) hoặc tạo mới với header cho trước
+     */
+    private Segment mapSegment(int index, long firstSeq, byte[] prevHash) throws IOException {
+        File file = segmentFile(index);
+        long size = HEADER_SIZE + (long) SEGMENT_CAPACITY * RECORD_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean created = firstSeq >= 0;
+        if (created) {
+            raf.setLength(size);
+        } else if (raf.length() != size) {
+            raf.close();
+            Log.w(TAG, "Skipping malformed segment " + file.getName());
+            return null;
+        }
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (created) {
+            buffer.putInt(H_MAGIC, MAGIC);
+            buffer.putInt(H_VERSION, VERSION);
+            buffer.putInt(H_RECORD_SIZE, RECORD_SIZE);
+            buffer.putInt(H_CAPACITY, SEGMENT_CAPACITY);
+            buffer.putLong(H_FIRST_SEQ, firstSeq);
+            for (int i = 0; i < HASH_SIZE; i++) {
+                buffer.put(H_PREV_HASH + i, prevHash[i]);
+            }
+            buffer.force();
+        } else if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_VERSION) != VERSION
+                || buffer.getInt(H_RECORD_SIZE) != RECORD_SIZE || buffer.getInt(H_CAPACITY) != SEGMENT_CAPACITY) {
+            raf.close();
+            Log.w(TAG, "Skipping segment with bad header " + file.getName());
+            return null;
+        }
+        return new Segment(index, file, raf, buffer, buffer.getLong(H_FIRST_SEQ));
+    }
+
+    /**
+     * Ghi một sự kiện. Chỉ ghi vào vùng nhớ đã map - không syscall trên đường nóng.
+     * @return seq của record, -1 nếu journal không khả dụng
+     */
+    public synchronized long append(int type, int value, long arg, String detail) {
+        if (broken) {
+            droppedCount++;
+            return -1;
+        }
+        Segment tail = segments.get(segments.size() - 1);
+        if (tail.count >= SEGMENT_CAPACITY) {
+            try {
+                tail.buffer.force();
+                tail = mapSegment(tail.index + 1, nextSeq, lastHash);
+                segments.add(tail);
+                enforceRetention();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot roll segment: " + e.getMessage());
+                droppedCount++;
+                return -1;
+            }
+        }
+
+        long seq = nextSeq;
+        byte[] rec = recordScratch;
+        Arrays.fill(rec, (byte) 0);
+        ByteBuffer view = recordView;
+        view.putLong(R_SEQ, seq);
+        view.putLong(R_WALL_TIME, System.currentTimeMillis());
+        view.putLong(R_ELAPSED, SystemClock.elapsedRealtime());
+        view.putInt(R_TYPE, type);
+        view.putInt(R_VALUE, value);
+        view.putLong(R_ARG, arg);
+        if (detail != null && !detail.isEmpty()) {
+            byte[] bytes = detail.getBytes(UTF8);
+            int len = Math.min(bytes.length, MAX_DETAIL_BYTES);
+            rec[R_DETAIL_LEN] = (byte) len;
+            System.arraycopy(bytes, 0, rec, R_DETAIL, len);
+        }
+
+        digest.reset();
+        digest.update(lastHash);
+        digest.update(rec, 0, R_HASH);
+        byte[] hash = digest.digest();
+        System.arraycopy(hash, 0, rec, R_HASH, HASH_SIZE);
+
+        // Ghi payload trước, seq (đánh dấu commit) sau cùng
+        int base = HEADER_SIZE + tail.count * RECORD_SIZE;
+        ByteBuffer dst = tail.buffer.duplicate();
+        dst.position(base + R_SEQ + 8);
+        dst.put(rec, R_SEQ + 8, RECORD_SIZE - 8);
+        tail.buffer.putLong(base + R_SEQ, seq);
+
+        tail.count++;
+        lastHash = hash;
+        nextSeq = seq + 1;
+        appendCount++;
+        return seq;
+    }
+
+    private void enforceRetention() {
+        while (segments.size() > MAX_SEGMENTS) {
+            deleteOldest();
+        }
+    }
+
+    private void deleteOldest() {
+        Segment oldest = segments.remove(0);
+        oldest.close();
+        if (!oldest.file.delete()) {
+            Log.w(TAG, "Cannot delete " + oldest.file.getName());
+        }
+    }
+
+    /**
+     * Bên upload xác nhận đã gửi tới seq: xoá các segment đã đầy và nằm trọn trong phần đã gửi
+     */
+    public synchronized void markUploaded(long seq) {
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            if (oldest.count < SEGMENT_CAPACITY || oldest.lastSeq() > seq) {
+                break;
+            }
+            deleteOldest();
+        }
+    }
+
+    /**
+     * Đọc tuần tự tối đa max record có seq > afterSeq
+     */
+    public synchronized List<Entry> read(long afterSeq, int max) {
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(max, 64)));
+        for (Segment segment : segments) {
+            if (entries.size() >= max) break;
+            if (segment.count == 0 || segment.lastSeq() <= afterSeq) continue;
+            int start = (int) Math.max(0, afterSeq + 1 - segment.firstSeq);
+            for (int i = start; i < segment.count && entries.size() < max; i++) {
+                entries.add(readEntry(segment, i));
+            }
+        }
+        return entries;
+    }
+
+    private Entry readEntry(Segment segment, int i) {
+        MappedByteBuffer b = segment.buffer;
+        int base = HEADER_SIZE + i * RECORD_SIZE;
+        int len = Math.min(b.get(base + R_DETAIL_LEN) & 0xff, MAX_DETAIL_BYTES);
+        byte[] detail = new byte[len];
+        for (int k = 0; k < len; k++) {
+            detail[k] = b.get(base + R_DETAIL + k);
+        }
+        return new Entry(
+            b.getLong(base + R_SEQ),
+            b.getLong(base + R_WALL_TIME),
+            b.getLong(base + R_ELAPSED),
+            b.getInt(base + R_TYPE),
+            b.getInt(base + R_VALUE),
+            b.getLong(base + R_ARG),
+            new String(detail, UTF8),
+            toHex(readHash(segment, i))
+        );
+    }
+
+    private static byte[] readHash(Segment segment, int i) {
+        byte[] hash = new byte[HASH_SIZE];
+        int base = HEADER_SIZE + i * RECORD_SIZE + R_HASH;
+        for (int k = 0; k < HASH_SIZE; k++) {
+            hash[k] = segment.buffer.get(base + k);
+        }
+        return hash;
+    }
+
+    private static byte[] readPrevHash(Segment segment) {
+        byte[] hash = new byte[HASH_SIZE];
+        for (int k = 0; k < HASH_SIZE; k++) {
+            hash[k] = segment.buffer.get(H_PREV_HASH + k);
+        }
+        return hash;
+    }
+
+    /**
+     * Kiểm tra lại toàn bộ chuỗi hash của các segment còn giữ
+     * @return seq đầu tiên bị sai, -1 nếu chuỗi nguyên vẹn
+     */
+    public synchronized long verify() {
+        if (broken || segments.isEmpty()) {
+            return -1;
+        }
+        byte[] prev = readPrevHash(segments.get(0));
+        byte[] rec = new byte[R_HASH];
+        for (Segment segment : segments) {
+            if (!Arrays.equals(prev, readPrevHash(segment))) {
+                return segment.firstSeq;
+            }
+            for (int i = 0; i < segment.count; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                for (int k = 0; k < R_HASH; k++) {
+                    rec[k] = segment.buffer.get(base + k);
+                }
+                digest.reset();
+                digest.update(prev);
+                digest.update(rec);
+                byte[] expected = digest.digest();
+                byte[] stored = readHash(segment, i);
+                if (!Arrays.equals(expected, stored)) {
+                    return segment.firstSeq + i;
+                }
+                prev = stored;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized void force() {
+        if (!broken && !segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+    }
+
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    public synchronized String getHeadHash() {
+        return toHex(lastHash);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("available", !broken);
+        stats.put("lastSeq", nextSeq - 1);
+        stats.put("firstSeq", segments.isEmpty() ? 0 : segments.get(0).firstSeq);
+        stats.put("segments", segments.size());
+        stats.put("appendCount", appendCount);
+        stats.put("droppedCount", droppedCount);
+        stats.put("truncatedTailCount", truncatedTailCount);
+        stats.put("headHash", toHex(lastHash));
+        return stats;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        final char[] digits = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            out[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+}
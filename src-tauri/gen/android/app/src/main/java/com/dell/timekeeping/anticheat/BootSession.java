@@ -0,0 +1,80 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+/**
+ * Thông tin phiên boot hiện tại, đọc một lần cho cả process
+ * boot_id và BOOT_COUNT không thể đổi khi process còn sống, nên không cần đọc lại
+ * /proc hay hỏi ContentResolver ở mỗi lần gọi telemetry / kiểm tra thời gian.
+ * bootStartTime được chốt lúc resolve: nếu sau đó giờ hệ thống bị chỉnh,
+ * systemTime - (bootStartTime + elapsedRealtime) sẽ cho ra độ lệch.
+ */
+public final class BootSession {
+
+    private static final String BOOT_ID_PATH = "/proc/sys/kernel/random/boot_id";
+
+    private static volatile BootSession instance;
+
+    public final String bootId;
+    public final int bootCount;
+    // Thời điểm boot theo giờ hệ thống tại lúc resolve (ms)
+    public final long bootStartTime;
+
+    private BootSession(String bootId, int bootCount, long bootStartTime) {
+        this.bootId = bootId;
+        this.bootCount = bootCount;
+        this.bootStartTime = bootStartTime;
+    }
+
+    public static BootSession get(Context context) {
+        BootSession session = instance;
+        if (session == null) {
+            synchronized (BootSession.class) {
+                session = instance;
+                if (session == null) {
+                    session = resolve(context);
+                    instance = session;
+                }
+            }
+        }
+        return session;
+    }
+
+    private static BootSession resolve(Context context) {
+        long bootStartTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        return new BootSession(readBootId(), readBootCount(context), bootStartTime);
+    }
+
+    private static String readBootId() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(BOOT_ID_PATH));
+            try {
+                String bootId = reader.readLine();
+                return bootId != null ? bootId.trim() : "";
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static int readBootCount(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                return android.provider.Settings.Global.getInt(
+                    context.getContentResolver(),
+                    android.provider.Settings.Global.BOOT_COUNT
+                );
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,241 @@
+package com.dell.timekeeping.anticheat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mô hình trôi giờ hệ thống so với giờ mạng: offset = a + b * t
+ * Mỗi lần sync là một quan sát (t = giờ mạng, offset = giờ hệ thống - giờ mạng).
+ * Hồi quy tuyến tính có trọng số giảm dần (forgetting factor) cập nhật tăng dần
+ * bằng 6 tổng tích luỹ: O(1) mỗi quan sát, trạng thái lưu cố định ~70 byte và
+ * giữ qua reboot (trôi của RTC là đặc tính phần cứng, không theo phiên boot).
+ * Quan sát lệch hẳn khỏi đường hồi quy được coi là bước nhảy (chỉnh giờ tay) -
+ * mô hình học lại từ đầu thay vì học theo giờ đã bị chỉnh.
+ */
+public final class ClockDriftModel {
+
+    // Trọng số quan sát cũ nhân với hệ số này ở mỗi quan sát mới (~20 quan sát hiệu dụng)
+    private static final double FORGETTING = 0.95;
+    // Các lần sync quá sát nhau gần như không thêm thông tin về độ dốc
+    private static final long MIN_OBSERVATION_SPACING_MS = 5 * 60 * 1000L;
+    private static final int MIN_OBSERVATIONS = 3;
+    // Quan sát lệch > max(STEP_MIN_MS, STEP_SIGMAS * sai số dự đoán) là bước nhảy
+    private static final long STEP_MIN_MS = 30000;
+    private static final double STEP_SIGMAS = 6;
+    private static final double MS_PER_HOUR = 3600000.0;
+    // Thạch anh RTC trôi cỡ vài chục ppm; độ dốc học được vượt mức này coi như không tin được
+    static final double MAX_PLAUSIBLE_DRIFT_PPM = 200;
+
+    // Kết quả observe()
+    public static final int OBSERVE_SKIPPED = 0;
+    public static final int OBSERVE_ACCEPTED = 1;
+    public static final int OBSERVE_RESET = 2;
+
+    /**
+     * Trạng thái cần lưu (immutable)
+     */
+    public static final class Snapshot {
+        // Quan sát đầu tiên làm gốc cho cả hai trục (tránh mất chính xác khi offset lớn)
+        public final long originTime;
+        public final long originOffset;
+        public final long lastObservationTime;
+        public final int count;
+        public final double sumW;
+        public final double sumX;
+        public final double sumY;
+        public final double sumXX;
+        public final double sumXY;
+        public final double sumYY;
+
+        public Snapshot(long originTime, long originOffset, long lastObservationTime, int count, double sumW,
+                        double sumX, double sumY, double sumXX, double sumXY, double sumYY) {
+            this.originTime = originTime;
+            this.originOffset = originOffset;
+            this.lastObservationTime = lastObservationTime;
+            this.count = count;
+            this.sumW = sumW;
+            this.sumX = sumX;
+            this.sumY = sumY;
+            this.sumXX = sumXX;
+            this.sumXY = sumXY;
+            this.sumYY = sumYY;
+        }
+    }
+
+    /**
+     * Dự đoán offset tại một thời điểm
+     */
+    public static final class Prediction {
+        public final boolean ready;
+        public final long expectedOffsetMs;
+        // Độ lệch chuẩn của khoảng dự đoán (ms), -1 nếu chưa đủ quan sát
+        public final long errorMs;
+        public final double driftPpm;
+
+        Prediction(boolean ready, long expectedOffsetMs, long errorMs, double driftPpm) {
+            this.ready = ready;
+            this.expectedOffsetMs = expectedOffsetMs;
+            this.errorMs = errorMs;
+            this.driftPpm = driftPpm;
+        }
+
+        /**
+         * Trôi dự kiến (ms) sau elapsedMs kể từ lần neo giờ tin cậy - chỉ theo độ dốc, kẹp ở
+         * MAX_PLAUSIBLE_DRIFT_PPM. Không dùng offset tuyệt đối: offset học được có thể là giờ đã bị chỉnh.
+         */
+        public long driftOverMs(long elapsedMs) {
+            if (!ready || elapsedMs <= 0) {
+                return 0;
+            }
+            double ppm = Math.max(-MAX_PLAUSIBLE_DRIFT_PPM, Math.min(MAX_PLAUSIBLE_DRIFT_PPM, driftPpm));
+            return Math.round(ppm * 1e-6 * elapsedMs);
+        }
+    }
+
+    private static final Prediction NOT_READY = new Prediction(false, 0, -1, 0);
+
+    private long originTime;
+    private long originOffset;
+    private long lastObservationTime;
+    private int count;
+    private double sumW;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+    private double sumYY;
+
+    // Metrics (không lưu)
+    private long skippedCount = 0;
+    private long stepResetCount = 0;
+
+    public synchronized void restore(Snapshot saved) {
+        if (saved == null) {
+            reset();
+            return;
+        }
+        originTime = saved.originTime;
+        originOffset = saved.originOffset;
+        lastObservationTime = saved.lastObservationTime;
+        count = saved.count;
+        sumW = saved.sumW;
+        sumX = saved.sumX;
+        sumY = saved.sumY;
+        sumXX = saved.sumXX;
+        sumXY = saved.sumXY;
+        sumYY = saved.sumYY;
+    }
+
+    /**
+     * @return null nếu chưa có quan sát nào
+     */
+    public synchronized Snapshot snapshot() {
+        if (count == 0) {
+            return null;
+        }
+        return new Snapshot(originTime, originOffset, lastObservationTime, count,
+            sumW, sumX, sumY, sumXX, sumXY, sumYY);
+    }
+
+    /**
+     * Thêm một quan sát
+     * @param networkTime giờ mạng tại lúc quan sát (ms)
+     * @param offsetMs giờ hệ thống - giờ mạng tại cùng thời điểm
+     * @return OBSERVE_SKIPPED (mô hình không đổi), OBSERVE_ACCEPTED (đã học),
+     *         OBSERVE_RESET (phát hiện bước nhảy, mô hình đã bị xoá - snapshot cũ không còn đúng)
+     */
+    public synchronized int observe(long networkTime, long offsetMs) {
+        if (count > 0 && Math.abs(networkTime - lastObservationTime) < MIN_OBSERVATION_SPACING_MS) {
+            skippedCount++;
+            return OBSERVE_SKIPPED;
+        }
+        if (count > 0 && networkTime < lastObservationTime) {
+            // Giờ mạng lùi lại: nguồn không nhất quán, bỏ qua
+            skippedCount++;
+            return OBSERVE_SKIPPED;
+        }
+        if (count >= MIN_OBSERVATIONS) {
+            Prediction p = predict(networkTime);
+            double limit = Math.max(STEP_MIN_MS, STEP_SIGMAS * p.errorMs);
+            if (Math.abs(offsetMs - p.expectedOffsetMs) > limit) {
+                // Không học offset sau bước nhảy: nếu là giờ bị chỉnh tay thì đó chính là giờ gian lận
+                stepResetCount++;
+                reset();
+                return OBSERVE_RESET;
+            }
+        }
+        if (count == 0) {
+            originTime = networkTime;
+            originOffset = offsetMs;
+        }
+        double x = (networkTime - originTime) / MS_PER_HOUR;
+        double y = offsetMs - originOffset;
+        sumW = sumW * FORGETTING + 1;
+        sumX = sumX * FORGETTING + x;
+        sumY = sumY * FORGETTING + y;
+        sumXX = sumXX * FORGETTING + x * x;
+        sumXY = sumXY * FORGETTING + x * y;
+        sumYY = sumYY * FORGETTING + y * y;
+        count++;
+        lastObservationTime = networkTime;
+        return OBSERVE_ACCEPTED;
+    }
+
+    /**
+     * Offset dự kiến tại time và sai số dự đoán (tăng khi ngoại suy xa quan sát cuối)
+     */
+    public synchronized Prediction predict(long time) {
+        if (count < MIN_OBSERVATIONS) {
+            return NOT_READY;
+        }
+        double meanX = sumX / sumW;
+        double meanY = sumY / sumW;
+        double sxx = sumXX - sumX * meanX;
+        double sxy = sumXY - sumX * meanY;
+        double syy = sumYY - sumY * meanY;
+        if (sxx <= 1e-9) {
+            return NOT_READY;
+        }
+        double slope = sxy / sxx;
+        double intercept = meanY - slope * meanX;
+        // Phương sai phần dư, bậc tự do hiệu dụng = tổng trọng số - 2
+        double dof = Math.max(1.0, sumW - 2);
+        double residual = Math.max(0.0, syy - slope * sxy) / dof;
+
+        double x = (time - originTime) / MS_PER_HOUR;
+        double dx = x - meanX;
+        double variance = residual * (1 + 1 / sumW + dx * dx / sxx);
+        // slope là ms mỗi giờ
+        double driftPpm = slope / MS_PER_HOUR * 1e6;
+        return new Prediction(true, originOffset + Math.round(intercept + slope * x),
+            Math.round(Math.sqrt(variance)), driftPpm);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Prediction p = predict(System.currentTimeMillis());
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("observationCount", count);
+        stats.put("effectiveWeight", sumW);
+        stats.put("ready", p.ready);
+        stats.put("expectedOffsetMs", p.expectedOffsetMs);
+        stats.put("predictionErrorMs", p.errorMs);
+        stats.put("driftPpm", p.driftPpm);
+        stats.put("lastObservationTime", lastObservationTime);
+        stats.put("skippedCount", skippedCount);
+        stats.put("stepResetCount", stepResetCount);
+        return stats;
+    }
+
+    private void reset() {
+        originTime = 0;
+        originOffset = 0;
+        lastObservationTime = 0;
+        count = 0;
+        sumW = 0;
+        sumX = 0;
+        sumY = 0;
+        sumXX = 0;
+        sumXY = 0;
+        sumYY = 0;
+    }
+}
@@ -0,0 +1,315 @@
+package com.dell.timekeeping.anticheat;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chỉ mục không gian cho các điểm chấm công (geofence) của tenant
+ * Site (hình tròn hoặc đa giác) được chia vào các ô lưới cố định theo lat/lng;
+ * mỗi fix chỉ kiểm tra các site trong ô chứa nó nên chi phí không tăng theo số site.
+ * Index là immutable; reload dựng index mới rồi hoán đổi nguyên khối.
+ */
+public class GeofenceIndex {
+
+    private static final String TAG = "GeofenceIndex";
+
+    private static final double CELL_DEG = 0.01;          // ~1.1 km
+    private static final double METERS_PER_DEG = 111320.0;
+    // Trả về cả site ở gần (ngoài biên trong phạm vi này)
+    public static final double NEAR_MARGIN_M = 200.0;
+    // Giới hạn số ô cho một site quá lớn
+    private static final int MAX_CELLS_PER_SITE = 40000;
+
+    public static final GeofenceIndex EMPTY = new GeofenceIndex(new Site[0], new HashMap<Long, int[]>(), 0);
+
+    public static final Match[] NO_MATCHES = new Match[0];
+
+    static final class Site {
+        final String id;
+        final String name;
+        final boolean isCircle;
+        final double lat;
+        final double lng;
+        final double radius;
+        final double[] polyLat;
+        final double[] polyLng;
+
+        Site(String id, String name, double lat, double lng, double radius) {
+            this.id = id;
+            this.name = name;
+            this.isCircle = true;
+            this.lat = lat;
+            this.lng = lng;
+            this.radius = radius;
+            this.polyLat = null;
+            this.polyLng = null;
+        }
+
+        Site(String id, String name, double[] polyLat, double[] polyLng) {
+            this.id = id;
+            this.name = name;
+            this.isCircle = false;
+            this.polyLat = polyLat;
+            this.polyLng = polyLng;
+            double sumLat = 0, sumLng = 0;
+            for (int i = 0; i < polyLat.length; i++) {
+                sumLat += polyLat[i];
+                sumLng += polyLng[i];
+            }
+            this.lat = sumLat / polyLat.length;
+            this.lng = sumLng / polyLng.length;
+            this.radius = 0;
+        }
+    }
+
+    /**
+     * Kết quả khớp một site (immutable)
+     */
+    public static final class Match {
+        public final String siteId;
+        public final String name;
+        public final boolean inside;
+        // Khoảng cách tới biên site, 0 nếu ở trong
+        public final double distanceMeters;
+
+        Match(String siteId, String name, boolean inside, double distanceMeters) {
+            this.siteId = siteId;
+            this.name = name;
+            this.inside = inside;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("siteId", siteId);
+            map.put("name", name);
+            map.put("inside", inside);
+            map.put("distance", distanceMeters);
+            return map;
+        }
+    }
+
+    private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>() {
+        @Override
+        public int compare(Match a, Match b) {
+            return Double.compare(a.distanceMeters, b.distanceMeters);
+        }
+    };
+
+    private final Site[] sites;
+    private final Map<Long, int[]> buckets;
+    // Site vượt MAX_CELLS_PER_SITE, không được đưa vào ô nào
+    private final int rejected;
+
+    private GeofenceIndex(Site[] sites, Map<Long, int[]> buckets, int rejected) {
+        this.sites = sites;
+        this.buckets = buckets;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Số site đã vào index (không tính site bị từ chối)
+     */
+    public int size() {
+        return sites.length - rejected;
+    }
+
+    public int rejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Dựng index từ JSON:
+     * [{"id","name","type":"circle","latitude","longitude","radius"},
+     *  {"id","name","type":"polygon","points":[[lat,lng],...]}]
+     */
+    public static GeofenceIndex fromJson(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        List<Site> sites = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.optJSONObject(i);
+            if (item == null) continue;
+            String id = item.optString("id");
+            String name = item.optString("name", id);
+            if ("polygon".equals(item.optString("type"))) {
+                JSONArray points = item.optJSONArray("points");
+                if (points == null || points.length() < 3) continue;
+                double[] polyLat = new double[points.length()];
+                double[] polyLng = new double[points.length()];
+                for (int p = 0; p < points.length(); p++) {
+                    JSONArray point = points.optJSONArray(p);
+                    if (point == null) throw new JSONException("Invalid polygon point in site " + id);
+                    polyLat[p] = point.optDouble(0, 0);
+                    polyLng[p] = point.optDouble(1, 0);
+                }
+                sites.add(new Site(id, name, polyLat, polyLng));
+            } else {
+                double radius = item.optDouble("radius", 0);
+                if (radius <= 0) continue;
+                sites.add(new Site(id, name, item.optDouble("latitude", 0), item.optDouble("longitude", 0), radius));
+            }
+        }
+        return build(sites.toArray(new Site[0]));
+    }
+
+    static GeofenceIndex build(Site[] sites) {
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        int rejected = 0;
+        for (int i = 0; i < sites.length; i++) {
+            Site site = sites[i];
+            double minLat, maxLat, minLng, maxLng;
+            if (site.isCircle) {
+                double dLat = (site.radius + NEAR_MARGIN_M) / METERS_PER_DEG;
+                double dLng = dLat / Math.max(0.01, Math.cos(Math.toRadians(site.lat)));
+                minLat = site.lat - dLat;
+                maxLat = site.lat + dLat;
+                minLng = site.lng - dLng;
+                maxLng = site.lng + dLng;
+            } else {
+                minLat = maxLat = site.polyLat[0];
+                minLng = maxLng = site.polyLng[0];
+                for (int p = 1; p < site.polyLat.length; p++) {
+                    minLat = Math.min(minLat, site.polyLat[p]);
+                    maxLat = Math.max(maxLat, site.polyLat[p]);
+                    minLng = Math.min(minLng, site.polyLng[p]);
+                    maxLng = Math.max(maxLng, site.polyLng[p]);
+                }
+                double dLat = NEAR_MARGIN_M / METERS_PER_DEG;
+                double dLng = dLat / Math.max(0.01, Math.cos(Math.toRadians(site.lat)));
+                minLat -= dLat;
+                maxLat += dLat;
+                minLng -= dLng;
+                maxLng += dLng;
+            }
+
+            long latFrom = cellIndex(minLat), latTo = cellIndex(maxLat);
+            long lngFrom = cellIndex(minLng), lngTo = cellIndex(maxLng);
+            long cellCount = (latTo - latFrom + 1) * (lngTo - lngFrom + 1);
+            if (cellCount > MAX_CELLS_PER_SITE) {
+                Log.w(TAG, "Site " + site.id + " spans " + cellCount + " cells (max "
+                    + MAX_CELLS_PER_SITE + "), not indexed");
+                rejected++;
+                continue;
+            }
+            for (long la = latFrom; la <= latTo; la++) {
+                for (long ln = lngFrom; ln <= lngTo; ln++) {
+                    Long key = cellKey(la, ln);
+                    List<Integer> bucket = cells.get(key);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>(2);
+                        cells.put(key, bucket);
+                    }
+                    bucket.add(i);
+                }
+            }
+        }
+
+        Map<Long, int[]> buckets = new HashMap<>(cells.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ids = new int[list.size()];
+            for (int k = 0; k < ids.length; k++) {
+                ids[k] = list.get(k);
+            }
+            buckets.put(entry.getKey(), ids);
+        }
+        return new GeofenceIndex(sites, buckets, rejected);
+    }
+
+    /**
+     * Các site chứa điểm hoặc nằm trong NEAR_MARGIN_M, sắp xếp theo khoảng cách
+     */
+    public Match[] query(double lat, double lng) {
+        if (sites.length == 0) {
+            return NO_MATCHES;
+        }
+        int[] candidates = buckets.get(cellKey(cellIndex(lat), cellIndex(lng)));
+        if (candidates == null) {
+            return NO_MATCHES;
+        }
+
+        Match[] matches = new Match[candidates.length];
+        int count = 0;
+        for (int idx : candidates) {
+            Site site = sites[idx];
+            double distance;
+            boolean inside;
+            if (site.isCircle) {
+                double toCenter = TrajectoryEngine.distanceMeters(lat, lng, site.lat, site.lng);
+                inside = toCenter <= site.radius;
+                distance = Math.max(0, toCenter - site.radius);
+            } else {
+                inside = containsPolygon(site, lat, lng);
+                distance = inside ? 0 : distanceToPolygon(site, lat, lng);
+            }
+            if (inside || distance <= NEAR_MARGIN_M) {
+                matches[count++] = new Match(site.id, site.name, inside, distance);
+            }
+        }
+        if (count == 0) {
+            return NO_MATCHES;
+        }
+        Match[] result = count == matches.length ? matches : Arrays.copyOf(matches, count);
+        Arrays.sort(result, BY_DISTANCE);
+        return result;
+    }
+
+    public static List<Map<String, Object>> toList(Match[] matches) {
+        List<Map<String, Object>> list = new ArrayList<>(matches.length);
+        for (Match match : matches) {
+            list.add(match.toMap());
+        }
+        return list;
+    }
+
+    private static long cellIndex(double deg) {
+        return (long) Math.floor(deg / CELL_DEG);
+    }
+
+    private static Long cellKey(long latIndex, long lngIndex) {
+        return (latIndex << 32) ^ (lngIndex & 0xffffffffL);
+    }
+
+    // Ray casting trên toạ độ độ (site nhỏ nên sai số chiếu không đáng kể)
+    private static boolean containsPolygon(Site site, double lat, double lng) {
+        boolean inside = false;
+        double[] ys = site.polyLat;
+        double[] xs = site.polyLng;
+        for (int i = 0, j = ys.length - 1; i < ys.length; j = i++) {
+            if ((ys[i] > lat) != (ys[j] > lat)
+                    && lng < (xs[j] - xs[i]) * (lat - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    // Khoảng cách tới cạnh gần nhất, chiếu phẳng quanh điểm truy vấn
+    private static double distanceToPolygon(Site site, double lat, double lng) {
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double best = Double.MAX_VALUE;
+        int n = site.polyLat.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double ax = (site.polyLng[j] - lng) * cosLat * METERS_PER_DEG;
+            double ay = (site.polyLat[j] - lat) * METERS_PER_DEG;
+            double bx = (site.polyLng[i] - lng) * cosLat * METERS_PER_DEG;
+            double by = (site.polyLat[i] - lat) * METERS_PER_DEG;
+            double dx = bx - ax, dy = by - ay;
+            double lenSq = dx * dx + dy * dy;
+            double t = lenSq > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lenSq)) : 0;
+            double px = ax + t * dx, py = ay + t * dy;
+            best = Math.min(best, Math.sqrt(px * px + py * py));
+        }
+        return best;
+    }
+}
@@ -0,0 +1,563 @@
+package com.dell.timekeeping.anticheat;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Quét toàn vẹn thiết bị: các probe độc lập chạy song song trên pool nhỏ
+ *  - paths:   su / Magisk / KernelSU / Superuser trên filesystem
+ *  - mounts:  /proc/self/mounts (mount của Magisk, /system bị mount rw)
+ *  - props:   Build.TAGS, ro.debuggable, ro.secure, verified boot state
+ *  - selinux: /sys/fs/selinux/enforce (bị chặn đọc nghĩa là đang enforcing)
+ * Cả lượt quét có deadline chung: probe chưa xong bị huỷ và báo "timeout", phần còn lại
+ * vẫn được trả về. Kết quả đầy đủ (hoặc đã phát hiện root) được nhớ theo boot_id và lưu
+ * xuống đĩa - root kiểu Magisk chỉ đổi sau reboot, nên các lần mở app trong cùng phiên boot
+ * không phải quét lại. Không fork/exec process.
+ */
+public final class IntegrityScanner {
+
+    private static final String TAG = "IntegrityScanner";
+
+    public static final long DEFAULT_DEADLINE_MS = 800;
+
+    public static final String STATUS_CLEAN = "clean";
+    public static final String STATUS_DETECTED = "detected";
+    public static final String STATUS_UNAVAILABLE = "unavailable";
+    public static final String STATUS_TIMEOUT = "timeout";
+    public static final String STATUS_ERROR = "error";
+
+    private static final String MEMO_FILE = "integrity_verdict.json";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // su có bit execute/setuid mới tính là root
+    private static final String[] EXEC_CHECKED_PATHS = {
+        "/system/bin/su",
+        "/system/xbin/su"
+    };
+
+    // Chỉ cần tồn tại là đủ nghi ngờ
+    private static final String[] EXISTENCE_PATHS = {
+        "/sbin/su",
+        "/system/sd/xbin/su",
+        "/system/bin/failsafe/su",
+        "/data/local/xbin/su",
+        "/data/local/bin/su",
+        "/data/local/su",
+        "/sbin/.magisk",
+        "/cache/.disable_magisk",
+        "/dev/.magisk.unblock",
+        "/data/adb/magisk",
+        "/data/adb/ksu",
+        "/system/app/Superuser.apk",
+        "/system/etc/init.d/99SuperSUDaemon"
+    };
+
+    private static final String[] MOUNT_KEYWORDS = {"magisk", "kernelsu", "zygisk", "supersu"};
+    // Các phân vùng này luôn phải read-only trên máy thật
+    private static final String[] READ_ONLY_TARGETS = {"/", "/system", "/vendor", "/product"};
+
+    private static final String MOUNTS_PATH = "/proc/self/mounts";
+    private static final String SELINUX_ENFORCE_PATH = "/sys/fs/selinux/enforce";
+
+    /**
+     * Kết quả một probe (immutable)
+     */
+    public static final class ProbeResult {
+        public final String name;
+        public final String status;
+        public final String reason;
+        public final long durationUs;
+
+        ProbeResult(String name, String status, String reason, long durationUs) {
+            this.name = name;
+            this.status = status;
+            this.reason = reason;
+            this.durationUs = durationUs;
+        }
+
+        public boolean isDetected() {
+            return STATUS_DETECTED.equals(status);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("name", name);
+            map.put("status", status);
+            map.put("reason", reason);
+            map.put("durationUs", durationUs);
+            return map;
+        }
+
+        static ProbeResult fromJson(JSONObject json) {
+            return new ProbeResult(json.optString("name"), json.optString("status", STATUS_ERROR),
+                json.optString("reason"), json.optLong("durationUs"));
+        }
+    }
+
+    /**
+     * Verdict tổng hợp của một lượt quét (immutable)
+     */
+    public static final class Report {
+        public final String bootId;
+        public final boolean isRooted;
+        // Lý do của probe phát hiện đầu tiên, rỗng nếu sạch
+        public final String rootMethod;
+        // false nếu có probe timeout/lỗi - verdict chỉ là một phần
+        public final boolean complete;
+        public final ProbeResult[] probes;
+        // Thời điểm quét (giờ hệ thống) và tổng thời gian quét
+        public final long scannedAt;
+        public final long durationMs;
+        // true nếu lấy lại từ lượt quét trước trong cùng phiên boot
+        public final boolean memoized;
+
+        Report(String bootId, boolean isRooted, String rootMethod, boolean complete, ProbeResult[] probes,
+               long scannedAt, long durationMs, boolean memoized) {
+            this.bootId = bootId;
+            this.isRooted = isRooted;
+            this.rootMethod = rootMethod;
+            this.complete = complete;
+            this.probes = probes;
+            this.scannedAt = scannedAt;
+            this.durationMs = durationMs;
+            this.memoized = memoized;
+        }
+
+        Report asMemoized() {
+            return memoized ? this
+                : new Report(bootId, isRooted, rootMethod, complete, probes, scannedAt, durationMs, true);
+        }
+
+        public Map<String, Object> toMap() {
+            List<Map<String, Object>> list = new ArrayList<>(probes.length);
+            for (ProbeResult probe : probes) {
+                list.add(probe.toMap());
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("bootId", bootId);
+            map.put("isRooted", isRooted);
+            map.put("rootMethod", rootMethod);
+            map.put("complete", complete);
+            map.put("probes", list);
+            map.put("scannedAt", scannedAt);
+            map.put("durationMs", durationMs);
+            map.put("memoized", memoized);
+            return map;
+        }
+
+        static Report fromJson(JSONObject json) throws JSONException {
+            JSONArray array = json.getJSONArray("probes");
+            ProbeResult[] probes = new ProbeResult[array.length()];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = ProbeResult.fromJson(array.getJSONObject(i));
+            }
+            return new Report(json.getString("bootId"), json.getBoolean("isRooted"), json.optString("rootMethod"),
+                json.getBoolean("complete"), probes, json.optLong("scannedAt"), json.optLong("durationMs"), true);
+        }
+    }
+
+    private final String bootId;
+    private final File memoFile;
+    private final ThreadPoolExecutor executor;
+    private volatile long deadlineMs = DEFAULT_DEADLINE_MS;
+
+    // Verdict đã nhớ của phiên boot này; memoLoaded = đã thử đọc file chưa
+    private Report memo;
+    private boolean memoLoaded;
+    private final Object memoLock = new Object();
+
+    /**
+     * @param bootId boot_id của phiên hiện tại; rỗng thì chỉ nhớ trong bộ nhớ
+     * @param dir thư mục lưu verdict đã nhớ
+     */
+    public IntegrityScanner(String bootId, File dir) {
+        this.bootId = bootId != null ? bootId : "";
+        this.memoFile = new File(dir, MEMO_FILE);
+        final AtomicInteger threadCount = new AtomicInteger();
+        // Mỗi probe một thread; thread rảnh tự thoát, không giữ tài nguyên giữa các lượt quét
+        this.executor = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "AntiCheat-Integrity-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setDeadlineMs(long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Verdict của phiên boot hiện tại: dùng lại kết quả đã nhớ nếu có, không thì quét
+     * @param force bỏ qua kết quả đã nhớ và quét lại
+     */
+    public Report getReport(boolean force) {
+        if (!force) {
+            Report memoized = getMemo();
+            if (memoized != null) {
+                return memoized;
+            }
+        }
+        Report report = scan();
+        // Kết quả một phần chưa đủ để nhớ, trừ khi đã phát hiện (phát hiện là chắc chắn)
+        if (report.complete || report.isRooted) {
+            synchronized (memoLock) {
+                memo = report.asMemoized();
+                memoLoaded = true;
+            }
+            persist(report);
+        }
+        return report;
+    }
+
+    private Report getMemo() {
+        synchronized (memoLock) {
+            if (!memoLoaded) {
+                memoLoaded = true;
+                memo = loadMemo();
+            }
+            return memo;
+        }
+    }
+
+    /**
+     * Chạy tất cả probe song song, chờ tối đa deadlineMs
+     */
+    public Report scan() {
+        long startNanos = System.nanoTime();
+        long scannedAt = System.currentTimeMillis();
+        String[] names = {"paths", "mounts", "props", "selinux"};
+        List<Callable<ProbeResult>> tasks = Arrays.asList(
+            new Probe(names[0]) {
+                @Override
+                ProbeResult check() {
+                    return probePaths(name);
+                }
+            },
+            new Probe(names[1]) {
+                @Override
+                ProbeResult check() throws IOException {
+                    return probeMounts(name);
+                }
+            },
+            new Probe(names[2]) {
+                @Override
+                ProbeResult check() {
+                    return probeProps(name);
+                }
+            },
+            new Probe(names[3]) {
+                @Override
+                ProbeResult check() {
+                    return probeSelinux(name);
+                }
+            });
+
+        ProbeResult[] probes = new ProbeResult[tasks.size()];
+        long deadline = deadlineMs;
+        try {
+            List<Future<ProbeResult>> futures = executor.invokeAll(tasks, deadline, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = collect(names[i], futures.get(i), deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = new ProbeResult(names[i], STATUS_TIMEOUT, "scan interrupted", 0);
+            }
+        }
+
+        boolean isRooted = false;
+        boolean complete = true;
+        String rootMethod = "";
+        for (ProbeResult probe : probes) {
+            if (probe.isDetected() && !isRooted) {
+                isRooted = true;
+                rootMethod = probe.reason;
+            }
+            if (STATUS_TIMEOUT.equals(probe.status) || STATUS_ERROR.equals(probe.status)) {
+                complete = false;
+            }
+        }
+        long durationMs = (System.nanoTime() - startNanos) / 1_000_000L;
+        Log.d(TAG, "Integrity scan: rooted=" + isRooted + ", method=" + rootMethod
+            + ", complete=" + complete + ", took=" + durationMs + "ms");
+        return new Report(bootId, isRooted, rootMethod, complete, probes, scannedAt, durationMs, false);
+    }
+
+    private static ProbeResult collect(String name, Future<ProbeResult> future, long deadlineMs) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return new ProbeResult(name, STATUS_TIMEOUT, "not finished within " + deadlineMs + "ms", deadlineMs * 1000);
+        } catch (ExecutionException e) {
+            return new ProbeResult(name, STATUS_ERROR, String.valueOf(e.getCause()), 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ProbeResult(name, STATUS_TIMEOUT, "scan interrupted", 0);
+        }
+    }
+
+    /**
+     * Probe có đo thời gian; exception thành kết quả "error" thay vì làm hỏng cả lượt quét
+     */
+    private abstract static class Probe implements Callable<ProbeResult> {
+        final String name;
+
+        Probe(String name) {
+            this.name = name;
+        }
+
+        abstract ProbeResult check() throws Exception;
+
+        @Override
+        public ProbeResult call() {
+            long start = System.nanoTime();
+            ProbeResult result;
+            try {
+                result = check();
+            } catch (Exception e) {
+                result = new ProbeResult(name, STATUS_ERROR, e.toString(), 0);
+            }
+            return new ProbeResult(result.name, result.status, result.reason, (System.nanoTime() - start) / 1000L);
+        }
+    }
+
+    // =============== PROBES ===============
+
+    private static ProbeResult probePaths(String name) {
+        for (String path : EXEC_CHECKED_PATHS) {
+            if (new File(path).exists() && isExecutable(path)) {
+                return new ProbeResult(name, STATUS_DETECTED, path, 0);
+            }
+        }
+        for (String path : EXISTENCE_PATHS) {
+            if (new File(path).exists()) {
+                return new ProbeResult(name, STATUS_DETECTED, path, 0);
+            }
+        }
+        return new ProbeResult(name, STATUS_CLEAN,
+            (EXEC_CHECKED_PATHS.length + EXISTENCE_PATHS.length) + " paths absent", 0);
+    }
+
+    /**
+     * Thay cho "ls -l": đọc mode qua stat(), owner execute hoặc setuid
+     */
+    private static boolean isExecutable(String path) {
+        try {
+            StructStat st = Os.stat(path);
+            return (st.st_mode & (OsConstants.S_IXUSR | OsConstants.S_ISUID)) != 0;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    // Dòng mounts: <nguồn> <điểm mount> <fs> <tuỳ chọn> 0 0
+    private static ProbeResult probeMounts(String name) throws IOException {
+        File file = new File(MOUNTS_PATH);
+        if (!file.canRead()) {
+            return new ProbeResult(name, STATUS_UNAVAILABLE, MOUNTS_PATH + " not readable", 0);
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String lower = line.toLowerCase(Locale.US);
+                for (String keyword : MOUNT_KEYWORDS) {
+                    if (lower.contains(keyword)) {
+                        return new ProbeResult(name, STATUS_DETECTED, "mount: " + line, 0);
+                    }
+                }
+                String[] fields = line.split(" ");
+                if (fields.length < 4) {
+                    continue;
+                }
+                for (String target : READ_ONLY_TARGETS) {
+                    if (target.equals(fields[1]) && isReadWrite(fields[3]) && !isVirtualFs(fields[2])) {
+                        return new ProbeResult(name, STATUS_DETECTED, target + " mounted rw (" + fields[2] + ")", 0);
+                    }
+                }
+            }
+            return new ProbeResult(name, STATUS_CLEAN, lines + " mounts checked", 0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    // rootfs (máy cũ không system-as-root) và tmpfs không phải phân vùng hệ thống thật
+    private static boolean isVirtualFs(String type) {
+        return "rootfs".equals(type) || "tmpfs".equals(type);
+    }
+
+    private static boolean isReadWrite(String options) {
+        return options.equals("rw") || options.startsWith("rw,");
+    }
+
+    private static ProbeResult probeProps(String name) {
+        String tags = Build.TAGS;
+        if (tags != null && tags.contains("test-keys")) {
+            return new ProbeResult(name, STATUS_DETECTED, "build tags " + tags, 0);
+        }
+        if (!SystemProps.available()) {
+            return new ProbeResult(name, STATUS_UNAVAILABLE, "build tags " + tags + ", system properties unavailable", 0);
+        }
+        if ("1".equals(SystemProps.get("ro.debuggable"))) {
+            return new ProbeResult(name, STATUS_DETECTED, "ro.debuggable=1", 0);
+        }
+        if ("0".equals(SystemProps.get("ro.secure"))) {
+            return new ProbeResult(name, STATUS_DETECTED, "ro.secure=0", 0);
+        }
+        String bootState = SystemProps.get("ro.boot.verifiedbootstate");
+        if ("orange".equals(bootState)) {
+            return new ProbeResult(name, STATUS_DETECTED, "bootloader unlocked (verifiedbootstate=orange)", 0);
+        }
+        return new ProbeResult(name, STATUS_CLEAN, "build tags " + tags + ", verifiedbootstate=" + bootState, 0);
+    }
+
+    private static ProbeResult probeSelinux(String name) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(SELINUX_ENFORCE_PATH));
+            try {
+                String value = reader.readLine();
+                if ("0".equals(value != null ? value.trim() : null)) {
+                    return new ProbeResult(name, STATUS_DETECTED, "SELinux permissive", 0);
+                }
+                return new ProbeResult(name, STATUS_CLEAN, "SELinux enforce=" + value, 0);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // App thường bị policy chặn đọc file này; chế độ permissive thì không chặn
+            String prop = SystemProps.get("ro.boot.selinux");
+            if ("permissive".equals(prop)) {
+                return new ProbeResult(name, STATUS_DETECTED, "ro.boot.selinux=permissive", 0);
+            }
+            if (new File("/sys/fs/selinux").exists()) {
+                return new ProbeResult(name, STATUS_CLEAN, "enforce not readable (denied by policy)", 0);
+            }
+            return new ProbeResult(name, STATUS_UNAVAILABLE, "selinuxfs not mounted", 0);
+        }
+    }
+
+    /**
+     * android.os.SystemProperties qua reflection (API ẩn), resolve một lần
+     */
+    private static final class SystemProps {
+        private static final Method GET = resolve();
+
+        private static Method resolve() {
+            try {
+                return Class.forName("android.os.SystemProperties").getMethod("get", String.class, String.class);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        static boolean available() {
+            return GET != null;
+        }
+
+        static String get(String key) {
+            if (GET == null) {
+                return "";
+            }
+            try {
+                return (String) GET.invoke(null, key, "");
+            } catch (Exception e) {
+                return "";
+            }
+        }
+    }
+
+    // =============== NHỚ THEO PHIÊN BOOT ===============
+
+    private Report loadMemo() {
+        if (bootId.isEmpty() || !memoFile.exists()) {
+            return null;
+        }
+        try {
+            byte[] data = new byte[(int) memoFile.length()];
+            FileInputStream fis = new FileInputStream(memoFile);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = fis.read(data, read, data.length - read);
+                    if (n < 0) break;
+                    read += n;
+                }
+            } finally {
+                fis.close();
+            }
+            Report report = Report.fromJson(new JSONObject(new String(data, UTF_8)));
+            // Phiên boot khác: bỏ verdict cũ
+            return bootId.equals(report.bootId) ? report : null;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Integrity memo unreadable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Ghi file tạm + rename để không bao giờ đọc phải file ghi dở
+    private void persist(Report report) {
+        if (bootId.isEmpty()) {
+            return;
+        }
+        File dir = memoFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File tmp = new File(memoFile.getPath() + ".tmp");
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                fos.write(new JSONObject(report.toMap()).toString().getBytes(UTF_8));
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(memoFile)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Integrity memo not saved: " + e.getMessage());
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.dell.timekeeping.anticheat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram độ trễ với bucket cố định, ghi không khoá
+ * Bucket log-linear theo micro giây: mỗi luỹ thừa 2 chia thành SUB_BUCKETS khoảng đều nhau
+ * nên percentile sai lệch tối đa 1/SUB_BUCKETS (12.5%), phủ từ 1 µs tới ~71 phút
+ * trong 240 bucket (~2 KB). record() chỉ là vài phép atomic, gọi được từ mọi thread.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Giá trị lớn nhất phân biệt được: 2^MAX_EXPONENT - 1 µs
+    private static final int MAX_EXPONENT = 32;
+    private static final long MAX_VALUE_US = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000L);
+    }
+
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE_US));
+        counts.incrementAndGet(bucketIndex(value));
+        totalMicros.addAndGet(value);
+        long max;
+        do {
+            max = maxMicros.get();
+            if (value <= max) {
+                break;
+            }
+        } while (!maxMicros.compareAndSet(max, value));
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Cận dưới (µs) của bucket
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int group = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (group - 1);
+    }
+
+    // Cận trên (µs, không gồm) của bucket
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int group = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (group - 1);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Ảnh chụp gần đúng (các bucket đọc lần lượt, không đồng thời), đủ cho telemetry
+     * @return count, meanUs, maxUs, p50Us/p90Us/p99Us và các bucket khác 0 dạng [cận dưới µs, số lần]
+     */
+    public Map<String, Object> toMap() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long max = maxMicros.get();
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("count", total);
+        map.put("meanUs", total > 0 ? totalMicros.get() / total : 0);
+        map.put("maxUs", max);
+        map.put("p50Us", percentile(snapshot, total, 0.50, max));
+        map.put("p90Us", percentile(snapshot, total, 0.90, max));
+        map.put("p99Us", percentile(snapshot, total, 0.99, max));
+
+        // Bucket thô để server gộp histogram theo dòng máy
+        List<long[]> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (snapshot[i] > 0) {
+                buckets.add(new long[]{bucketLowerBound(i), snapshot[i]});
+            }
+        }
+        map.put("buckets", buckets);
+        return map;
+    }
+
+    // Cận trên của bucket chứa percentile, không vượt quá max đã ghi
+    private static long percentile(long[] snapshot, long total, double quantile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i) - 1, max);
+            }
+        }
+        return max;
+    }
+}
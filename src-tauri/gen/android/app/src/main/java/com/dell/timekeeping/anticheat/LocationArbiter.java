@@ -0,0 +1,169 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+
+/**
+ * Chọn và hợp nhất fix cuối cùng từ nhiều provider (GPS, fused, network, passive)
+ * Mỗi fix được chấm điểm theo độ mới, độ chính xác và độ tin cậy của provider;
+ * các fix tương thích (gần nhau về thời gian và chồng lấn vùng sai số) được gộp
+ * theo trọng số nghịch đảo phương sai thành một ước lượng duy nhất.
+ * Không giữ trạng thái - cache kết quả nằm ở SecureLocationClient.
+ */
+public class LocationArbiter {
+
+    // Thứ tự cố định để chữ ký (signature) của tập fix ổn định
+    static final String[] PROVIDERS = {
+        LocationManager.GPS_PROVIDER,
+        LocationManager.FUSED_PROVIDER,
+        LocationManager.NETWORK_PROVIDER,
+        LocationManager.PASSIVE_PROVIDER
+    };
+
+    // Fix cũ hơn ngưỡng này chỉ dùng khi không còn lựa chọn nào khác
+    private static final long MAX_AGE_MS = 10 * 60 * 1000;
+    // Thời gian để điểm độ mới giảm còn một nửa
+    private static final double AGE_HALF_SCORE_MS = 60 * 1000;
+    // Hai fix cách nhau quá lâu thì không gộp
+    private static final long MAX_FUSION_GAP_MS = 30 * 1000;
+    private static final float MIN_ACCURACY_M = 1f;
+    private static final float UNKNOWN_ACCURACY_M = 500f;
+
+    private LocationArbiter() {
+    }
+
+    static double providerTrust(String provider) {
+        if (LocationManager.GPS_PROVIDER.equals(provider)) return 1.0;
+        if (LocationManager.FUSED_PROVIDER.equals(provider)) return 0.9;
+        if (LocationManager.PASSIVE_PROVIDER.equals(provider)) return 0.7;
+        if (LocationManager.NETWORK_PROVIDER.equals(provider)) return 0.6;
+        return 0.5;
+    }
+
+    /**
+     * Tuổi của fix theo elapsedRealtime (không bị ảnh hưởng khi đổi giờ hệ thống)
+     */
+    static long ageMs(Location location, long nowElapsedNanos) {
+        long fixNanos = location.getElapsedRealtimeNanos();
+        if (fixNanos > 0) {
+            return Math.max(0, (nowElapsedNanos - fixNanos) / 1_000_000L);
+        }
+        return Math.max(0, System.currentTimeMillis() - location.getTime());
+    }
+
+    static float accuracyOf(Location location) {
+        return location.hasAccuracy() ? Math.max(MIN_ACCURACY_M, location.getAccuracy()) : UNKNOWN_ACCURACY_M;
+    }
+
+    static double score(Location location, long nowElapsedNanos) {
+        double ageFactor = 1.0 / (1.0 + ageMs(location, nowElapsedNanos) / AGE_HALF_SCORE_MS);
+        return providerTrust(location.getProvider()) * ageFactor / accuracyOf(location);
+    }
+
+    /**
+     * Chữ ký của tập fix ứng viên - đổi khi có provider trả về fix mới.
+     * Mảng candidates theo thứ tự PROVIDERS, phần tử null nếu provider không có fix.
+     */
+    static long signature(Location[] candidates) {
+        long hash = 1125899906842597L;
+        for (Location location : candidates) {
+            long stamp = 0;
+            if (location != null) {
+                stamp = location.getElapsedRealtimeNanos();
+                if (stamp == 0) stamp = location.getTime();
+                stamp ^= Double.doubleToLongBits(location.getLatitude()) * 31
+                        + Double.doubleToLongBits(location.getLongitude());
+            }
+            hash = 31 * hash + stamp;
+        }
+        return hash;
+    }
+
+    /**
+     * Chọn fix tốt nhất và gộp các fix tương thích với nó
+     * @return Location mới (bản sao, giữ extras và cờ mock của fix tốt nhất), hoặc null
+     */
+    static Location arbitrate(Location[] candidates) {
+        long now = SystemClock.elapsedRealtimeNanos();
+
+        Location best = null;
+        double bestScore = -1;
+        boolean bestFresh = false;
+        for (Location location : candidates) {
+            if (location == null) continue;
+            boolean fresh = ageMs(location, now) <= MAX_AGE_MS;
+            // Fix giả gần đây luôn được ưu tiên để bước kiểm tra mock không bị che bởi fix thật
+            if (fresh && location.isFromMockProvider()) {
+                return location;
+            }
+            double s = score(location, now);
+            if (best == null || (fresh && !bestFresh) || (fresh == bestFresh && s > bestScore)) {
+                best = location;
+                bestScore = s;
+                bestFresh = fresh;
+            }
+        }
+        if (best == null || !bestFresh) {
+            return best;
+        }
+
+        // Gộp theo trọng số nghịch đảo phương sai, có tính độ tin cậy và độ mới
+        float bestAcc = accuracyOf(best);
+        long bestAge = ageMs(best, now);
+        double sumWeight = 0, sumLat = 0, sumLng = 0, sumInvVar = 0;
+        int used = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            Location location = candidates[i];
+            if (location == null || location.isFromMockProvider()) continue;
+            // PASSIVE/FUSED hay trả lại bản sao fix của GPS/NETWORK: chỉ tính một lần
+            if (hasEarlierCopy(candidates, i)) continue;
+            float acc = accuracyOf(location);
+            if (!isSameFix(location, best)) {
+                long age = ageMs(location, now);
+                if (Math.abs(age - bestAge) > MAX_FUSION_GAP_MS) continue;
+                double distance = TrajectoryEngine.distanceMeters(best.getLatitude(), best.getLongitude(),
+                        location.getLatitude(), location.getLongitude());
+                if (distance > bestAcc + acc) continue;
+            }
+            double invVar = 1.0 / ((double) acc * acc);
+            double weight = invVar * providerTrust(location.getProvider())
+                    / (1.0 + ageMs(location, now) / AGE_HALF_SCORE_MS);
+            sumWeight += weight;
+            sumLat += weight * location.getLatitude();
+            sumLng += weight * location.getLongitude();
+            sumInvVar += invVar;
+            used++;
+        }
+        if (used < 2) {
+            return best;
+        }
+
+        Location fused = new Location(best);
+        fused.setLatitude(sumLat / sumWeight);
+        fused.setLongitude(sumLng / sumWeight);
+        fused.setAccuracy((float) Math.max(MIN_ACCURACY_M, Math.sqrt(1.0 / sumInvVar)));
+        return fused;
+    }
+
+    private static boolean hasEarlierCopy(Location[] candidates, int index) {
+        for (int j = 0; j < index; j++) {
+            Location other = candidates[j];
+            if (other != null && !other.isFromMockProvider() && isSameFix(other, candidates[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Cùng một lần đo: cùng mốc thời gian và cùng toạ độ (khác object, khác provider vẫn tính là một)
+    static boolean isSameFix(Location a, Location b) {
+        if (a == b) {
+            return true;
+        }
+        long nanosA = a.getElapsedRealtimeNanos();
+        long nanosB = b.getElapsedRealtimeNanos();
+        boolean sameTime = nanosA != 0 && nanosB != 0 ? nanosA == nanosB : a.getTime() == b.getTime();
+        return sameTime && a.getLatitude() == b.getLatitude() && a.getLongitude() == b.getLongitude();
+    }
+}
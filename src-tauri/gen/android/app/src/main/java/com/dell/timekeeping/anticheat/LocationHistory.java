@@ -0,0 +1,139 @@
+package com.dell.timekeeping.anticheat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lịch sử vị trí gần nhất, bộ nhớ cố định
+ * Ring buffer trên các mảng primitive song song: append O(1), không cấp phát object cho mỗi sample.
+ * Index 0 luôn là sample mới nhất.
+ */
+public class LocationHistory {
+
+    private final int capacity;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final float[] speeds;
+    private final long[] times;
+    private final int[] trustScores;
+    private final int[] statuses;
+
+    private int head = -1; // slot của sample mới nhất
+    private int size = 0;
+
+    public LocationHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.capacity = capacity;
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.accuracies = new float[capacity];
+        this.speeds = new float[capacity];
+        this.times = new long[capacity];
+        this.trustScores = new int[capacity];
+        this.statuses = new int[capacity];
+    }
+
+    public synchronized void append(LocationSample sample) {
+        head = (head + 1) % capacity;
+        latitudes[head] = sample.latitude;
+        longitudes[head] = sample.longitude;
+        accuracies[head] = sample.accuracy;
+        speeds[head] = sample.speedMps;
+        times[head] = sample.gpsTime;
+        trustScores[head] = sample.trustScore;
+        statuses[head] = sample.status;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        head = -1;
+        size = 0;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        int slot = head - index;
+        return slot < 0 ? slot + capacity : slot;
+    }
+
+    // Truy cập theo index (0 = mới nhất)
+    public synchronized double latitudeAt(int index) { return latitudes[slot(index)]; }
+    public synchronized double longitudeAt(int index) { return longitudes[slot(index)]; }
+    public synchronized float accuracyAt(int index) { return accuracies[slot(index)]; }
+    public synchronized float speedAt(int index) { return speeds[slot(index)]; }
+    public synchronized long timeAt(int index) { return times[slot(index)]; }
+    public synchronized int trustScoreAt(int index) { return trustScores[slot(index)]; }
+    public synchronized int statusAt(int index) { return statuses[slot(index)]; }
+
+    /**
+     * Số sample có thời gian >= sinceTime (sample được append theo thứ tự thời gian)
+     */
+    public synchronized int countSince(long sinceTime) {
+        int count = 0;
+        while (count < size && times[slot(count)] >= sinceTime) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Duyệt tối đa maxSamples sample mới nhất, từ mới tới cũ, không cấp phát.
+     * Visitor trả về false để dừng sớm.
+     */
+    public synchronized int forEachRecent(int maxSamples, Visitor visitor) {
+        int limit = Math.min(maxSamples, size);
+        int visited = 0;
+        for (int i = 0; i < limit; i++) {
+            int s = slot(i);
+            visited++;
+            if (!visitor.visit(latitudes[s], longitudes[s], accuracies[s], speeds[s],
+                    times[s], trustScores[s], statuses[s])) {
+                break;
+            }
+        }
+        return visited;
+    }
+
+    public interface Visitor {
+        boolean visit(double latitude, double longitude, float accuracy, float speedMps,
+                      long time, int trustScore, int status);
+    }
+
+    /**
+     * Xuất ra danh sách Map cho JSON (chỉ dùng ở đường chậm)
+     */
+    public synchronized List<Map<String, Object>> toList(int maxSamples, long sinceTime) {
+        int limit = Math.max(0, Math.min(maxSamples, countSince(sinceTime)));
+        List<Map<String, Object>> list = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            int s = slot(i);
+            Map<String, Object> item = new HashMap<>();
+            item.put("latitude", latitudes[s]);
+            item.put("longitude", longitudes[s]);
+            item.put("accuracy", accuracies[s]);
+            item.put("speedMps", speeds[s]);
+            item.put("gpsTime", times[s]);
+            item.put("trustScore", Math.max(0, trustScores[s]));
+            item.put("status", statuses[s]);
+            list.add(item);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,266 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.Location;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Một fix vị trí đã được đánh giá (immutable, chỉ field primitive)
+ * Thay cho HashMap ~30 entry mỗi fix; Map/JSON chỉ được dựng khi có người đọc.
+ */
+public final class LocationSample {
+
+    // Cờ cảnh báo (thay cho chuỗi warnings nối bằng StringBuilder)
+    public static final int WARN_MOCK_PROVIDER = 1;
+    public static final int WARN_GPS_NO_SATELLITES = 1 << 1;
+    public static final int WARN_LOW_SATELLITES = 1 << 2;
+    public static final int WARN_NO_ALTITUDE = 1 << 3;
+    // Cờ từ TrajectoryEngine
+    public static final int WARN_TELEPORT = 1 << 4;
+    public static final int WARN_IMPOSSIBLE_SPEED = 1 << 5;
+    public static final int WARN_IMPOSSIBLE_ACCELERATION = 1 << 6;
+    public static final int WARN_SPEED_MISMATCH = 1 << 7;
+    public static final int WARN_PROVIDER_JUMP = 1 << 8;
+
+    // Điểm tối thiểu để isTrusted, chỉ xét khi verdict là STATUS_VALID
+    static final int TRUSTED_SCORE = 80;
+
+    public final double latitude;
+    public final double longitude;
+    public final double altitude;
+    public final boolean hasAltitude;
+    public final float speedMps;
+    public final boolean hasSpeed;
+    public final float accuracy;
+    public final float bearing;
+    public final boolean hasBearing;
+    public final String provider;
+    public final String clientName;
+    public final int source;
+    public final long gpsTime;
+    public final long systemTime;
+
+    public final int satellites;
+    public final boolean isFromMockProvider;
+    // Tốc độ suy ra từ quỹ đạo, NaN nếu chưa có fix trước để so sánh
+    public final float impliedSpeedMps;
+    public final int trustScore;
+    public final int warningFlags;
+    public final int status;
+    public final int refreshType;
+    // Các site geofence chứa/ở gần fix, sắp xếp theo khoảng cách
+    public final GeofenceIndex.Match[] geofences;
+
+    // Khác null nếu fix bị loại ngay từ đầu (vd: toạ độ 0,0)
+    public final String error;
+
+    private String jsonView;
+
+    private LocationSample(double latitude, double longitude, double altitude, boolean hasAltitude,
+                           float speedMps, boolean hasSpeed, float accuracy, float bearing, boolean hasBearing,
+                           String provider, String clientName, int source, long gpsTime, long systemTime,
+                           int satellites, boolean isFromMockProvider, float impliedSpeedMps,
+                           int trustScore, int warningFlags, int status, int refreshType,
+                           GeofenceIndex.Match[] geofences, String error) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.altitude = altitude;
+        this.hasAltitude = hasAltitude;
+        this.speedMps = speedMps;
+        this.hasSpeed = hasSpeed;
+        this.accuracy = accuracy;
+        this.bearing = bearing;
+        this.hasBearing = hasBearing;
+        this.provider = provider;
+        this.clientName = clientName;
+        this.source = source;
+        this.gpsTime = gpsTime;
+        this.systemTime = systemTime;
+        this.satellites = satellites;
+        this.isFromMockProvider = isFromMockProvider;
+        this.impliedSpeedMps = impliedSpeedMps;
+        this.trustScore = trustScore;
+        this.warningFlags = warningFlags;
+        this.status = status;
+        this.refreshType = refreshType;
+        this.geofences = geofences;
+        this.error = error;
+    }
+
+    static LocationSample fromLocation(Location location, String clientName, int source,
+                                       int satellites, boolean isFromMockProvider, float impliedSpeedMps,
+                                       int trustScore, int warningFlags, int status, int refreshType,
+                                       GeofenceIndex.Match[] geofences) {
+        return new LocationSample(
+            location.getLatitude(),
+            location.getLongitude(),
+            location.hasAltitude() ? location.getAltitude() : Double.MIN_VALUE,
+            location.hasAltitude(),
+            location.hasSpeed() ? location.getSpeed() : 0f,
+            location.hasSpeed(),
+            location.getAccuracy(),
+            location.hasBearing() ? location.getBearing() : 0f,
+            location.hasBearing(),
+            location.getProvider(),
+            clientName,
+            source,
+            location.getTime(),
+            System.currentTimeMillis(),
+            satellites,
+            isFromMockProvider,
+            impliedSpeedMps,
+            trustScore,
+            warningFlags,
+            status,
+            refreshType,
+            geofences,
+            null
+        );
+    }
+
+    static LocationSample invalid(String error) {
+        return new LocationSample(0, 0, Double.MIN_VALUE, false, 0f, false, 0f, 0f, false,
+            null, null, 0, 0, System.currentTimeMillis(), 0, false, Float.NaN, 0, 0,
+            SecureLocationClient.STATUS_NO_LOCATION, SecureLocationClient.REFRESH_TYPE_NORMAL,
+            GeofenceIndex.NO_MATCHES, error);
+    }
+
+    /**
+     * Bản sao với source/refreshType khác (vd: đánh dấu lấy từ cache)
+     */
+    LocationSample withSource(int source, int refreshType) {
+        return new LocationSample(latitude, longitude, altitude, hasAltitude, speedMps, hasSpeed,
+            accuracy, bearing, hasBearing, provider, clientName, source, gpsTime, systemTime,
+            satellites, isFromMockProvider, impliedSpeedMps, trustScore, warningFlags, status, refreshType,
+            geofences, error);
+    }
+
+    public boolean isEvaluated() {
+        return error == null;
+    }
+
+    // Các cờ dưới đây suy ra từ status (verdict của RuleSet đang dùng lúc đánh giá),
+    // không so lại với ngưỡng cố định: rule tải từ server có thể đổi ngưỡng
+
+    public boolean isValid() {
+        return error == null && status != SecureLocationClient.STATUS_FAKE;
+    }
+
+    public boolean isTrusted() {
+        return error == null && status == SecureLocationClient.STATUS_VALID && trustScore >= TRUSTED_SCORE;
+    }
+
+    public boolean isSuspicious() {
+        return status == SecureLocationClient.STATUS_SUSPICIOUS || status == SecureLocationClient.STATUS_FAKE;
+    }
+
+    public boolean isFake() {
+        return status == SecureLocationClient.STATUS_FAKE || isFromMockProvider;
+    }
+
+    public boolean hasValidCoords() {
+        return latitude != Double.MIN_VALUE && longitude != Double.MIN_VALUE;
+    }
+
+    public static String describeWarnings(int flags) {
+        if (flags == 0) {
+            return "";
+        }
+        StringBuilder warnings = new StringBuilder();
+        if ((flags & WARN_MOCK_PROVIDER) != 0) {
+            warnings.append("CRITICAL: Mock location provider detected. ");
+        }
+        if ((flags & WARN_GPS_NO_SATELLITES) != 0) {
+            warnings.append("WARNING: GPS provider but no satellites. ");
+        }
+        if ((flags & WARN_LOW_SATELLITES) != 0) {
+            warnings.append("WARNING: Low satellite count. ");
+        }
+        if ((flags & WARN_NO_ALTITUDE) != 0) {
+            warnings.append("NOTICE: No altitude data. ");
+        }
+        if ((flags & WARN_TELEPORT) != 0) {
+            warnings.append("CRITICAL: Position jumped faster than any vehicle. ");
+        }
+        if ((flags & WARN_IMPOSSIBLE_SPEED) != 0) {
+            warnings.append("WARNING: Implied speed is not plausible. ");
+        }
+        if ((flags & WARN_IMPOSSIBLE_ACCELERATION) != 0) {
+            warnings.append("WARNING: Implied acceleration is not plausible. ");
+        }
+        if ((flags & WARN_SPEED_MISMATCH) != 0) {
+            warnings.append("WARNING: Reported speed does not match movement. ");
+        }
+        if ((flags & WARN_PROVIDER_JUMP) != 0) {
+            warnings.append("WARNING: GPS and network positions disagree. ");
+        }
+        return warnings.toString();
+    }
+
+    /**
+     * View dạng Map cho caller cũ (dựng mới mỗi lần, caller được phép sửa)
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+
+        if (error != null) {
+            result.put("isValid", false);
+            result.put("error", error);
+            return result;
+        }
+
+        result.put("isFromMockProvider", isFromMockProvider);
+        result.put("satellites", satellites);
+
+        result.put("latitude", latitude);
+        result.put("longitude", longitude);
+        result.put("altitude", altitude);
+        result.put("hasAltitude", hasAltitude);
+        result.put("speed", hasSpeed ? speedMps * 3.6 : 0.0);
+        result.put("speedMps", hasSpeed ? speedMps : 0.0);
+        result.put("accuracy", accuracy);
+        result.put("impliedSpeedMps", Float.isNaN(impliedSpeedMps) ? 0.0 : impliedSpeedMps);
+        result.put("bearing", bearing);
+        result.put("hasBearing", hasBearing);
+
+        result.put("provider", provider);
+        result.put("type", provider);
+        result.put("locationClientName", clientName);
+        result.put("source", source);
+
+        result.put("gpsTime", gpsTime);
+        result.put("createTime", gpsTime);
+        result.put("systemTime", systemTime);
+
+        result.put("trustScore", Math.max(0, trustScore));
+        result.put("warningFlags", warningFlags);
+        result.put("warnings", describeWarnings(warningFlags));
+        result.put("isValid", isValid());
+        result.put("isTrusted", isTrusted());
+        result.put("isSuspicious", isSuspicious());
+        result.put("isFake", isFake());
+        result.put("status", status);
+        result.put("refreshType", refreshType);
+        result.put("hasValidCoords", hasValidCoords());
+        
+        result.put("geofences", GeofenceIndex.toList(geofences));
+        result.put("insideGeofence", geofences.length > 0 && geofences[0].inside);
+
+        return result;
+    }
+
+    /**
+     * View JSON, dựng một lần rồi cache (sample là immutable)
+     */
+    public String toJson() {
+        String json = jsonView;
+        if (json == null) {
+            json = new JSONObject(toMap()).toString();
+            jsonView = json;
+        }
+        return json;
+    }
+}
@@ -0,0 +1,135 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.LocationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Ring buffer nhị phân cho luồng vị trí liên tục.
+ * Mỗi fix được ghi thành một record 64 byte cố định vào direct ByteBuffer,
+ * phía Rust đọc trực tiếp qua GetDirectBufferAddress - không JSON, không copy qua JNI.
+ *
+ * Header (64 byte):
+ *   0  int  MAGIC
+ *   4  int  VERSION
+ *   8  int  capacity (số record)
+ *   12 int  RECORD_SIZE
+ *   16 long writeSeq (seq của record mới nhất, 0 = chưa có)
+ *
+ * Record (64 byte), slot = (seq - 1) % capacity:
+ *   0  long seq (âm trong lúc đang ghi, dương khi đã commit)
+ *   8  double latitude
+ *   16 double longitude
+ *   24 float accuracy
+ *   28 float speedMps
+ *   32 int satellites
+ *   36 int trustScore
+ *   40 int status
+ *   44 int flags (FLAG_*)
+ *   48 long gpsTime
+ *   56 long systemTime
+ *
+ * Reader: đọc seq, copy record, đọc lại seq; nếu khác nhau hoặc <= 0 thì record đang bị ghi đè.
+ */
+public class LocationStreamBuffer {
+
+    public static final int MAGIC = 0x4C4F4331; // "LOC1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 64;
+
+    private static final int OFF_WRITE_SEQ = 16;
+
+    public static final int FLAG_MOCK = 1;
+    public static final int FLAG_HAS_ALTITUDE = 1 << 1;
+    public static final int FLAG_HAS_SPEED = 1 << 2;
+    public static final int FLAG_HAS_BEARING = 1 << 3;
+    public static final int FLAG_PROVIDER_GPS = 1 << 4;
+    public static final int FLAG_PROVIDER_NETWORK = 1 << 5;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long nextSeq = 1;
+
+    // Volatile write + read tạo barrier giữa các lần ghi vào vùng nhớ native
+    private volatile long fence;
+
+    public LocationStreamBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(HEADER_SIZE + capacity * RECORD_SIZE)
+                .order(ByteOrder.nativeOrder());
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, RECORD_SIZE);
+        buffer.putLong(OFF_WRITE_SEQ, 0);
+        storeFence();
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getWriteSeq() {
+        return nextSeq - 1;
+    }
+
+    public void append(LocationSample sample) {
+        int flags = 0;
+        if (sample.isFromMockProvider) flags |= FLAG_MOCK;
+        if (sample.hasAltitude) flags |= FLAG_HAS_ALTITUDE;
+        if (sample.hasSpeed) flags |= FLAG_HAS_SPEED;
+        if (sample.hasBearing) flags |= FLAG_HAS_BEARING;
+        if (LocationManager.GPS_PROVIDER.equals(sample.provider)) flags |= FLAG_PROVIDER_GPS;
+        else if (LocationManager.NETWORK_PROVIDER.equals(sample.provider)) flags |= FLAG_PROVIDER_NETWORK;
+
+        append(sample.latitude, sample.longitude, sample.accuracy, sample.speedMps,
+                sample.satellites, Math.max(0, sample.trustScore), sample.status, flags,
+                sample.gpsTime, sample.systemTime);
+    }
+
+    public synchronized long append(double latitude, double longitude, float accuracy, float speedMps,
+                                    int satellites, int trustScore, int status, int flags,
+                                    long gpsTime, long systemTime) {
+        long seq = nextSeq;
+        int base = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+
+        // Đánh dấu slot đang ghi
+        buffer.putLong(base, -seq);
+        storeFence();
+
+        buffer.putDouble(base + 8, latitude);
+        buffer.putDouble(base + 16, longitude);
+        buffer.putFloat(base + 24, accuracy);
+        buffer.putFloat(base + 28, speedMps);
+        buffer.putInt(base + 32, satellites);
+        buffer.putInt(base + 36, trustScore);
+        buffer.putInt(base + 40, status);
+        buffer.putInt(base + 44, flags);
+        buffer.putLong(base + 48, gpsTime);
+        buffer.putLong(base + 56, systemTime);
+        storeFence();
+
+        // Commit record rồi mới công bố writeSeq
+        buffer.putLong(base, seq);
+        storeFence();
+        buffer.putLong(OFF_WRITE_SEQ, seq);
+        storeFence();
+
+        nextSeq = seq + 1;
+        return seq;
+    }
+
+    private void storeFence() {
+        fence = nextSeq;
+        long ignored = fence;
+    }
+}
@@ -0,0 +1,862 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Hàng đợi chấm công offline, lưu bền trên đĩa
+ * - queue.log: header (magic, version, generation) + các record [length][crc32][payload nhị phân],
+ *   append + fsync mỗi lần chấm công; record cuối bị ghi dở được cắt bỏ khi mở lại
+ * - queue.ack: (generation, offset) đã upload xong, ghi qua file tạm + rename.
+ *   Generation đổi mỗi lần compact nên ack cũ không bao giờ trỏ nhầm vào file mới
+ * - Upload theo batch JSON nén gzip trên thread riêng, mỗi punch có idempotencyKey (UUID)
+ *   để server bỏ bản trùng khi batch bị gửi lại; lỗi mạng/5xx thì backoff luỹ thừa có jitter.
+ *   Chỉ bỏ một punch khi server chỉ rõ nó (422 kèm idempotencyKey); 4xx khác cho cả batch
+ *   (sai URL, lỗi API) là lỗi cấu hình: giữ nguyên hàng đợi và backoff
+ * - Có mạng trở lại (NetworkCallback) thì upload ngay
+ * Dùng chung một instance cho cả process (mỗi file chỉ một writer).
+ */
+public final class PunchQueue {
+
+    private static final String TAG = "PunchQueue";
+
+    private static final String DIR_NAME = "punch_queue";
+    private static final String LOG_FILE = "queue.log";
+    private static final String ACK_FILE = "queue.ack";
+
+    private static final int MAGIC = 0x504E5131; // "PNQ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_VERSION = 1;
+    private static final int MAX_RECORD_SIZE = 256 * 1024;
+
+    // Batch upload
+    private static final int MAX_BATCH_RECORDS = 200;
+    private static final int MAX_BATCH_BYTES = 512 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_ERROR_BODY_BYTES = 64 * 1024;
+
+    // Backoff: BASE * 2^n, tối đa MAX, jitter +-20%
+    private static final long BACKOFF_BASE_MS = 5000;
+    private static final long BACKOFF_MAX_MS = 15 * 60 * 1000L;
+
+    // Compact khi phần đã upload lớn hơn ngưỡng này
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Một lần chấm công đã xếp hàng (immutable)
+     */
+    public static final class Punch {
+        public final String idempotencyKey;
+        public final String type;
+        // Giờ chấm công: giờ tin cậy nếu trusted, ngược lại là giờ hệ thống
+        public final long capturedAt;
+        public final long systemTime;
+        public final boolean trusted;
+        public final String payloadJson;
+        public final String snapshotJson;
+
+        Punch(String idempotencyKey, String type, long capturedAt, long systemTime, boolean trusted,
+              String payloadJson, String snapshotJson) {
+            this.idempotencyKey = idempotencyKey;
+            this.type = type;
+            this.capturedAt = capturedAt;
+            this.systemTime = systemTime;
+            this.trusted = trusted;
+            this.payloadJson = payloadJson;
+            this.snapshotJson = snapshotJson;
+        }
+
+        // payload/snapshot đã được kiểm tra là JSON object lúc enqueue nên nối thẳng, không parse lại
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"idempotencyKey\":").append(JSONObject.quote(idempotencyKey))
+                .append(",\"type\":").append(JSONObject.quote(type))
+                .append(",\"capturedAt\":").append(capturedAt)
+                .append(",\"systemTime\":").append(systemTime)
+                .append(",\"trustedTime\":").append(trusted)
+                .append(",\"payload\":").append(payloadJson)
+                .append(",\"snapshot\":").append(snapshotJson)
+                .append('}');
+        }
+    }
+
+    private static PunchQueue instance;
+
+    public static synchronized PunchQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new PunchQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final File logFile;
+    private final File ackFile;
+    private final ScheduledExecutorService executor;
+    private final Random random = new Random();
+
+    // Trạng thái file (chỉ đổi dưới lock this)
+    private RandomAccessFile log;
+    private long generation;
+    private long ackOffset;
+    private long pendingCount;
+    private boolean writable = false;
+
+    // Cấu hình upload, chỉ giữ trong bộ nhớ (token không ghi xuống đĩa)
+    private volatile String uploadUrl;
+    private volatile String authToken;
+    private volatile boolean authPaused = false;
+
+    private ScheduledFuture<?> pendingDrain;
+    private boolean callbackRegistered = false;
+    private int consecutiveFailures = 0;
+    private int batchLimit = MAX_BATCH_RECORDS;
+    private long nextAttemptAt = 0;
+
+    // Metrics
+    private long enqueuedCount = 0;
+    private long uploadedCount = 0;
+    private long rejectedCount = 0;
+    private long uploadFailureCount = 0;
+    private long batchCount = 0;
+    private long rawBytesSent = 0;
+    private long gzipBytesSent = 0;
+    private long truncatedTailBytes = 0;
+    private int lastHttpStatus = 0;
+    private volatile String lastError = "";
+
+    private PunchQueue(Context context) {
+        this(context, new File(context.getNoBackupFilesDir(), DIR_NAME));
+    }
+
+    // Cho unit test: hàng đợi trên thư mục tạm, không qua singleton
+    PunchQueue(Context context, File dir) {
+        this.context = context;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create " + dir);
+        }
+        this.logFile = new File(dir, LOG_FILE);
+        this.ackFile = new File(dir, ACK_FILE);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AntiCheat-PunchQueue");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        synchronized (this) {
+            try {
+                open();
+                writable = true;
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot open punch queue: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Đăng ký theo dõi mạng; có mạng thì upload ngay
+     */
+    public synchronized void start() {
+        if (!callbackRegistered) {
+            try {
+                ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+                cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(Network network) {
+                        requestFlush();
+                    }
+                });
+                callbackRegistered = true;
+            } catch (Exception e) {
+                Log.w(TAG, "Cannot register network callback: " + e.getMessage());
+            }
+        }
+        if (pendingCount > 0) {
+            scheduleDrainLocked(0);
+        }
+    }
+
+    /**
+     * Cấu hình endpoint nhận batch. Gọi lại sau khi đăng nhập/refresh token.
+     * @param url null để tắt upload (hàng đợi vẫn nhận punch)
+     */
+    public synchronized void configure(String url, String token) {
+        uploadUrl = url != null && !url.isEmpty() ? url : null;
+        authToken = token != null && !token.isEmpty() ? token : null;
+        authPaused = false;
+        consecutiveFailures = 0;
+        nextAttemptAt = 0;
+        if (uploadUrl != null && pendingCount > 0) {
+            scheduleDrainLocked(0);
+        }
+    }
+
+    /**
+     * Ghi bền một lần chấm công (fsync trước khi trả về) rồi hẹn upload
+     * @param payloadJson JSON object do client gửi kèm (vd: photoId), null = {}
+     * @param snapshotJson JSON object snapshot location/time/device lúc chấm công
+     */
+    public Punch enqueue(String type, long capturedAt, boolean trusted, String payloadJson,
+                         String snapshotJson) throws IOException {
+        Punch punch = new Punch(UUID.randomUUID().toString(), type != null ? type : "",
+            capturedAt, System.currentTimeMillis(), trusted,
+            normalizeJson(payloadJson), normalizeJson(snapshotJson));
+        byte[] record = encode(punch);
+        synchronized (this) {
+            if (!writable) {
+                throw new IOException("Punch queue is not writable");
+            }
+            long end = log.length();
+            try {
+                log.seek(end);
+                log.write(record);
+                log.getFD().sync();
+            } catch (IOException e) {
+                // Bỏ phần record ghi dở (vd: ENOSPC), nếu không punch sau sẽ nằm sau byte rác
+                // và bị lượt quét tail lúc mở lại cắt mất
+                try {
+                    log.setLength(end);
+                } catch (IOException truncateError) {
+                    writable = false;
+                    Log.e(TAG, "Cannot truncate torn record: " + truncateError.getMessage());
+                }
+                throw e;
+            }
+            pendingCount++;
+            enqueuedCount++;
+            if (uploadUrl != null && !authPaused) {
+                // Đang backoff thì giữ lịch cũ, lần thử kế tiếp sẽ mang theo punch này
+                scheduleDrainLocked(Math.max(0, nextAttemptAt - SystemClock.elapsedRealtime()));
+            }
+        }
+        return punch;
+    }
+
+    /**
+     * Upload ngay, bỏ qua backoff đang chờ (vd: người dùng bấm "đồng bộ")
+     */
+    public synchronized void requestFlush() {
+        nextAttemptAt = 0;
+        if (uploadUrl != null && pendingCount > 0) {
+            scheduleDrainLocked(0);
+        }
+    }
+
+    public synchronized long getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingCount", pendingCount);
+        stats.put("enqueuedCount", enqueuedCount);
+        stats.put("uploadedCount", uploadedCount);
+        stats.put("rejectedCount", rejectedCount);
+        stats.put("uploadFailureCount", uploadFailureCount);
+        stats.put("batchCount", batchCount);
+        stats.put("rawBytesSent", rawBytesSent);
+        stats.put("gzipBytesSent", gzipBytesSent);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("retryInMs", Math.max(0, nextAttemptAt - SystemClock.elapsedRealtime()));
+        stats.put("configured", uploadUrl != null);
+        stats.put("authPaused", authPaused);
+        stats.put("writable", writable);
+        stats.put("truncatedTailBytes", truncatedTailBytes);
+        stats.put("lastHttpStatus", lastHttpStatus);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    // ===== Lập lịch =====
+
+    private void scheduleDrainLocked(long delayMs) {
+        if (pendingDrain != null && !pendingDrain.isDone()
+                && pendingDrain.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+            return;
+        }
+        if (pendingDrain != null) {
+            pendingDrain.cancel(false);
+        }
+        pendingDrain = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Upload lần lượt từng batch tới khi hết hàng đợi hoặc gặp lỗi (chạy trên executor)
+     */
+    private void drain() {
+        synchronized (this) {
+            // Lần chạy này đã bắt đầu; lịch mới (retry, punch mới) phải được tạo lại
+            pendingDrain = null;
+        }
+        while (true) {
+            String url = uploadUrl;
+            if (url == null || authPaused) {
+                return;
+            }
+            List<Punch> batch;
+            long batchEnd;
+            synchronized (this) {
+                long[] endOut = new long[1];
+                try {
+                    batch = readBatchLocked(batchLimit, endOut);
+                } catch (IOException e) {
+                    lastError = "read: " + e.getMessage();
+                    Log.w(TAG, "Cannot read punch queue: " + e.getMessage());
+                    return;
+                }
+                batchEnd = endOut[0];
+                if (batch.isEmpty()) {
+                    compactLocked();
+                    return;
+                }
+            }
+
+            UploadResult result;
+            try {
+                result = post(url, authToken, batch);
+            } catch (IOException e) {
+                result = new UploadResult(-1, "");
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+            int status = result.status;
+
+            synchronized (this) {
+                lastHttpStatus = status;
+                if ((status >= 200 && status < 300) || (status == 409 && batch.size() == 1)) {
+                    // 409 cho một record: server đã nhận idempotencyKey này từ lần gửi trước
+                    acknowledgeLocked(batchEnd, batch.size(), false);
+                    consecutiveFailures = 0;
+                    nextAttemptAt = 0;
+                    batchLimit = MAX_BATCH_RECORDS;
+                    continue;
+                }
+                if (status == 409 || status == 413) {
+                    // 409 cả batch có thể chỉ do một key trùng; 413 là batch quá lớn -
+                    // thu nhỏ batch và gửi lại ngay, không bỏ punch mới nào
+                    if (batch.size() > 1) {
+                        batchLimit = Math.max(1, batch.size() / 2);
+                        continue;
+                    }
+                }
+                uploadFailureCount++;
+                if (status == 401 || status == 403) {
+                    // Chờ configure() với token mới, không spam server
+                    authPaused = true;
+                    lastError = "HTTP " + status;
+                    return;
+                }
+                int rejected = rejectedIndex(status, result.body, batch);
+                if (rejected == 0 && batch.size() == 1) {
+                    // Server chỉ rõ record này bị từ chối: bỏ qua để không chặn cả hàng đợi
+                    Log.w(TAG, "Punch " + batch.get(0).idempotencyKey + " rejected with HTTP " + status);
+                    acknowledgeLocked(batchEnd, 1, true);
+                    batchLimit = MAX_BATCH_RECORDS;
+                    continue;
+                }
+                if (rejected >= 0) {
+                    // Gửi riêng phần trước record bị từ chối, hoặc riêng record đó nếu nó đứng đầu
+                    batchLimit = Math.max(1, rejected);
+                    continue;
+                }
+                // 400/404/405/422 không chỉ ra record nào...: lỗi cấu hình/API, giữ nguyên punch và backoff
+                if (status > 0) {
+                    lastError = "HTTP " + status;
+                }
+                long delay = backoffDelay(consecutiveFailures++);
+                nextAttemptAt = SystemClock.elapsedRealtime() + delay;
+                Log.d(TAG, "Upload failed (" + lastError + "), retry in " + delay + "ms");
+                scheduleDrainLocked(delay);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Record bị từ chối riêng lẻ: 422 kèm body có idempotencyKey của một punch trong batch
+     * (413 cho một record đơn lẻ cũng là lỗi của chính record đó)
+     * @return vị trí record trong batch, -1 nếu lỗi không gắn với record nào
+     */
+    private static int rejectedIndex(int status, String body, List<Punch> batch) {
+        if (status == 413 && batch.size() == 1) {
+            return 0;
+        }
+        if (status != 422 || body == null || body.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (body.contains(batch.get(i).idempotencyKey)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class UploadResult {
+        final int status;
+        // Body lỗi (>= 400), cắt ở MAX_ERROR_BODY_BYTES
+        final String body;
+
+        UploadResult(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private long backoffDelay(int attempt) {
+        long delay = BACKOFF_BASE_MS << Math.min(attempt, 20);
+        delay = Math.min(BACKOFF_MAX_MS, delay);
+        double jitter = 0.8 + random.nextDouble() * 0.4;
+        return (long) (delay * jitter);
+    }
+
+    // ===== HTTP =====
+
+    private UploadResult post(String url, String token, List<Punch> batch) throws IOException {
+        StringBuilder sb = new StringBuilder(batch.size() * 1024);
+        sb.append("{\"punches\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            batch.get(i).appendJson(sb);
+        }
+        sb.append("]}");
+        byte[] raw = sb.toString().getBytes(UTF8);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(raw);
+        gzip.close();
+        byte[] body = compressed.toByteArray();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            // Batch gửi lại từ cùng vị trí có cùng key đầu/cuối
+            connection.setRequestProperty("Idempotency-Key",
+                batch.get(0).idempotencyKey + ":" + batch.get(batch.size() - 1).idempotencyKey);
+            if (token != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            String errorBody = "";
+            if (status >= 400) {
+                errorBody = readQuietly(connection.getErrorStream());
+            } else {
+                drainQuietly(connection.getInputStream());
+            }
+            synchronized (this) {
+                batchCount++;
+                rawBytesSent += raw.length;
+                gzipBytesSent += body.length;
+            }
+            return new UploadResult(status, errorBody);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Đọc body lỗi (tối đa MAX_ERROR_BODY_BYTES) để tìm record bị từ chối
+    private static String readQuietly(InputStream in) {
+        if (in == null) {
+            return "";
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (out.size() < MAX_ERROR_BODY_BYTES) {
+                    out.write(buffer, 0, Math.min(n, MAX_ERROR_BODY_BYTES - out.size()));
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    private static void drainQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) >= 0) {
+                // bỏ qua body, chỉ để connection được tái sử dụng
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ===== File =====
+
+    private void open() throws IOException {
+        log = new RandomAccessFile(logFile, "rw");
+        if (log.length() < HEADER_SIZE || !readHeader()) {
+            if (log.length() > 0) {
+                Log.w(TAG, "Invalid punch queue header, starting a new queue");
+            }
+            resetLog(System.currentTimeMillis());
+            return;
+        }
+
+        long[] ack = readAck();
+        ackOffset = ack != null && ack[0] == generation ? ack[1] : HEADER_SIZE;
+        if (ackOffset < HEADER_SIZE || ackOffset > log.length()) {
+            ackOffset = HEADER_SIZE;
+        }
+
+        // Đếm record còn chờ và cắt phần đuôi ghi dở (crash giữa lúc append)
+        long offset = ackOffset;
+        long count = 0;
+        long length = log.length();
+        while (offset < length) {
+            int recordLength = readRecordLength(offset, length);
+            if (recordLength < 0) {
+                break;
+            }
+            offset += RECORD_HEADER_SIZE + recordLength;
+            count++;
+        }
+        if (offset < length) {
+            truncatedTailBytes = length - offset;
+            log.setLength(offset);
+            log.getFD().sync();
+            Log.w(TAG, "Truncated " + truncatedTailBytes + " bytes of torn punch record");
+        }
+        pendingCount = count;
+    }
+
+    private boolean readHeader() throws IOException {
+        log.seek(0);
+        if (log.readInt() != MAGIC || log.readInt() != VERSION) {
+            return false;
+        }
+        generation = log.readLong();
+        return true;
+    }
+
+    /**
+     * @return độ dài payload nếu record tại offset hợp lệ (đủ byte, CRC khớp), -1 nếu không
+     */
+    private int readRecordLength(long offset, long fileLength) throws IOException {
+        byte[] payload = readPayload(offset, fileLength);
+        return payload != null ? payload.length : -1;
+    }
+
+    /**
+     * Payload của record tại offset; null nếu độ dài ngoài giới hạn, thiếu byte hoặc sai CRC
+     * (độ dài được kiểm tra trước khi cấp phát)
+     */
+    private byte[] readPayload(long offset, long fileLength) throws IOException {
+        if (offset + RECORD_HEADER_SIZE > fileLength) {
+            return null;
+        }
+        log.seek(offset);
+        int length = log.readInt();
+        int crcValue = log.readInt();
+        if (length <= 0 || length > MAX_RECORD_SIZE || offset + RECORD_HEADER_SIZE + length > fileLength) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        log.readFully(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == crcValue ? payload : null;
+    }
+
+    private List<Punch> readBatchLocked(int maxRecords, long[] endOut) throws IOException {
+        List<Punch> batch = new ArrayList<>();
+        long offset = ackOffset;
+        long length = log.length();
+        int bytes = 0;
+        while (offset < length && batch.size() < maxRecords && bytes < MAX_BATCH_BYTES) {
+            byte[] payload = readPayload(offset, length);
+            if (payload == null) {
+                // Dừng hẳn tại record hỏng: gửi phần trước nó, không giải mã byte không tin được
+                if (batch.isEmpty()) {
+                    throw new IOException("corrupt record at offset " + offset);
+                }
+                break;
+            }
+            batch.add(decode(payload));
+            offset += RECORD_HEADER_SIZE + payload.length;
+            bytes += payload.length;
+        }
+        endOut[0] = offset;
+        return batch;
+    }
+
+    private void acknowledgeLocked(long newOffset, int count, boolean rejected) {
+        ackOffset = newOffset;
+        pendingCount = Math.max(0, pendingCount - count);
+        if (rejected) {
+            rejectedCount += count;
+        } else {
+            uploadedCount += count;
+        }
+        try {
+            writeAck(generation, ackOffset);
+        } catch (IOException e) {
+            // Lần mở sau sẽ gửi lại batch này, server bỏ trùng theo idempotencyKey
+            Log.w(TAG, "Cannot persist ack: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bỏ phần đã upload: file rỗng thì reset, còn lại thì chép phần chưa upload sang file mới
+     */
+    private void compactLocked() {
+        try {
+            long length = log.length();
+            long acked = ackOffset - HEADER_SIZE;
+            if (acked <= 0) {
+                return;
+            }
+            if (ackOffset >= length) {
+                resetLog(generation + 1);
+                return;
+            }
+            if (acked < COMPACT_THRESHOLD_BYTES) {
+                return;
+            }
+            long newGeneration = generation + 1;
+            File tmp = new File(logFile.getPath() + ".tmp");
+            RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+            try {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(newGeneration);
+                byte[] buffer = new byte[64 * 1024];
+                log.seek(ackOffset);
+                int n;
+                while ((n = log.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            log.close();
+            if (!tmp.renameTo(logFile)) {
+                throw new IOException("rename failed");
+            }
+            log = new RandomAccessFile(logFile, "rw");
+            generation = newGeneration;
+            ackOffset = HEADER_SIZE;
+            writeAck(generation, ackOffset);
+        } catch (IOException e) {
+            Log.w(TAG, "Compaction failed: " + e.getMessage());
+            try {
+                if (log == null || !log.getFD().valid()) {
+                    log = new RandomAccessFile(logFile, "rw");
+                }
+            } catch (IOException reopen) {
+                writable = false;
+            }
+        }
+    }
+
+    private void resetLog(long newGeneration) throws IOException {
+        log.setLength(0);
+        log.seek(0);
+        log.writeInt(MAGIC);
+        log.writeInt(VERSION);
+        log.writeLong(newGeneration);
+        log.getFD().sync();
+        generation = newGeneration;
+        ackOffset = HEADER_SIZE;
+        pendingCount = 0;
+        writeAck(generation, ackOffset);
+    }
+
+    private long[] readAck() {
+        if (!ackFile.exists() || ackFile.length() != 20) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(ackFile, "r");
+            try {
+                byte[] data = new byte[16];
+                raf.readFully(data);
+                int stored = raf.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != stored) {
+                    return null;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+                return new long[]{in.readLong(), in.readLong()};
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeAck(long ackGeneration, long offset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(20);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(ackGeneration);
+        out.writeLong(offset);
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        File tmp = new File(ackFile.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            fos.write(bytes.toByteArray());
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(ackFile)) {
+            throw new IOException("rename failed");
+        }
+    }
+
+    // ===== Mã hoá record =====
+
+    private static byte[] encode(Punch punch) throws IOException {
+        UUID key = UUID.fromString(punch.idempotencyKey);
+        byte[] payload = punch.payloadJson.getBytes(UTF8);
+        byte[] snapshot = punch.snapshotJson.getBytes(UTF8);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + payload.length + snapshot.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);   // length, điền sau
+        out.writeInt(0);   // crc, điền sau
+        out.writeByte(RECORD_VERSION);
+        out.writeLong(key.getMostSignificantBits());
+        out.writeLong(key.getLeastSignificantBits());
+        out.writeUTF(punch.type);
+        out.writeLong(punch.capturedAt);
+        out.writeLong(punch.systemTime);
+        out.writeBoolean(punch.trusted);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(snapshot.length);
+        out.write(snapshot);
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        int length = record.length - RECORD_HEADER_SIZE;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("Punch record too large: " + length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER_SIZE, length);
+        putInt(record, 0, length);
+        putInt(record, 4, (int) crc.getValue());
+        return record;
+    }
+
+    private static Punch decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readUnsignedByte();
+        if (version != RECORD_VERSION) {
+            throw new IOException("Unsupported punch record version " + version);
+        }
+        String key = new UUID(in.readLong(), in.readLong()).toString();
+        String type = in.readUTF();
+        long capturedAt = in.readLong();
+        long systemTime = in.readLong();
+        boolean trusted = in.readBoolean();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        byte[] snapshot = new byte[in.readInt()];
+        in.readFully(snapshot);
+        return new Punch(key, type, capturedAt, systemTime, trusted,
+            new String(payload, UTF8), new String(snapshot, UTF8));
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    // Chuẩn hoá về JSON object hợp lệ để lúc upload nối chuỗi trực tiếp được
+    private static String normalizeJson(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return "{}";
+        }
+        try {
+            return new JSONObject(json).toString();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Punch payload must be a JSON object");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Phát hiện Root có cache
+ * Kết quả được tính một lần trên background thread khi initialize(), đọc lại tức thì
+ * cho tới khi hết TTL. Việc quét do IntegrityScanner làm (song song, có deadline, nhớ theo
+ * phiên boot), nên làm mới khi hết TTL thường chỉ đọc lại verdict đã nhớ; chỉ lượt quét
+ * chưa đầy đủ (có probe timeout) mới thực sự quét lại.
+ */
+public class RootDetector {
+
+    public static final long DEFAULT_TTL_MS = 10 * 60 * 1000; // 10 phút
+
+    /**
+     * Kết quả kiểm tra root (immutable)
+     */
+    public static final class Verdict {
+        public final boolean isRooted;
+        public final String rootMethod;
+        public final long computedAtElapsed;
+        // Kết quả từng probe của lượt quét tạo ra verdict này
+        public final IntegrityScanner.Report report;
+
+        Verdict(boolean isRooted, String rootMethod, long computedAtElapsed, IntegrityScanner.Report report) {
+            this.isRooted = isRooted;
+            this.rootMethod = rootMethod;
+            this.computedAtElapsed = computedAtElapsed;
+            this.report = report;
+        }
+    }
+
+    private volatile long ttlMs;
+    private volatile Verdict cachedVerdict;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private final ExecutorService executor;
+    private final IntegrityScanner scanner;
+
+    public RootDetector(Context context) {
+        this(context, DEFAULT_TTL_MS);
+    }
+
+    public RootDetector(Context context, long ttlMs) {
+        this(new IntegrityScanner(BootSession.get(context).bootId, context.getNoBackupFilesDir()), ttlMs);
+    }
+
+    // Cho unit test: scanner trên thư mục tạm, không cần Context
+    RootDetector(IntegrityScanner scanner, long ttlMs) {
+        this.ttlMs = ttlMs;
+        this.scanner = scanner;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AntiCheat-RootDetector");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    // Deadline chung cho cả lượt quét; probe chưa xong thì báo timeout
+    public void setDeadlineMs(long deadlineMs) {
+        scanner.setDeadlineMs(deadlineMs);
+    }
+
+    /**
+     * Tính verdict trên background thread (gọi lúc initialize)
+     */
+    public void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cachedVerdict = compute(false);
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Bắt buộc quét lại ngay trên thread hiện tại (bỏ qua verdict đã nhớ), tối đa một deadline
+     */
+    public Verdict refresh() {
+        Verdict verdict = compute(true);
+        cachedVerdict = verdict;
+        return verdict;
+    }
+
+    /**
+     * Verdict đã cache (có thể null nếu background chưa chạy xong)
+     */
+    public Verdict getCachedVerdict() {
+        return cachedVerdict;
+    }
+
+    /**
+     * Trả về verdict trong cache nếu còn hạn. Hết hạn thì trả verdict cũ và làm mới ở background;
+     * chưa có verdict nào thì lấy đồng bộ (verdict đã nhớ của phiên boot, hoặc quét có deadline).
+     */
+    public Verdict getVerdict() {
+        Verdict verdict = cachedVerdict;
+        if (verdict == null) {
+            verdict = compute(false);
+            cachedVerdict = verdict;
+            return verdict;
+        }
+        if (SystemClock.elapsedRealtime() - verdict.computedAtElapsed > ttlMs) {
+            refreshAsync();
+        }
+        return verdict;
+    }
+
+    private Verdict compute(boolean force) {
+        IntegrityScanner.Report report = scanner.getReport(force);
+        return new Verdict(report.isRooted, report.rootMethod, SystemClock.elapsedRealtime(), report);
+    }
+}
@@ -6,12 +6,21 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Location Client với tính năng Anti-Fake GPS
@@ -21,7 +30,7 @@ public class SecureLocationClient implements LocationListener {
     private static final String TAG = "SecureLocationClient";
     
     public interface LocationUpdateListener {
-        void onLocationUpdate(Map<String, Object> locationData);
+        void onLocationUpdate(LocationSample sample);
         void onProviderChanged(String provider, boolean enabled);
     }
 
@@ -29,10 +38,28 @@ public class SecureLocationClient implements LocationListener {
     private LocationManager locationManager;
     private LocationUpdateListener listener;
     
-    // Cấu hình
+    // Cấu hình (profile NORMAL)
     private static final long MIN_TIME_MS = 5000; // 5 giây - interval
     private static final float MIN_DISTANCE_M = 10; // 10 mét - minUpdateDistanceMeters
     
+    // Profile lập lịch
+    public static final int SCHEDULE_PASSIVE = 0;   // chỉ nhận fix ké từ app khác
+    public static final int SCHEDULE_NORMAL = 1;
+    public static final int SCHEDULE_BURST = 2;     // chấm công: GPS 1 giây, tự hết hạn
+    
+    private static final long PASSIVE_MIN_TIME_MS = 30000;
+    private static final float PASSIVE_MIN_DISTANCE_M = 25;
+    private static final long BURST_MIN_TIME_MS = 1000;
+    private static final float BURST_MIN_DISTANCE_M = 0;
+    public static final long DEFAULT_BURST_DURATION_MS = 30000;
+    
+    private static final long STATIONARY_TIMEOUT_MS = 5 * 60 * 1000; // đứng yên 5 phút -> PASSIVE
+    private static final double STATIONARY_RADIUS_M = 50;
+    private static final float MOVING_SPEED_MPS = 1.5f;
+    private static final long STALE_FIX_MS = 2 * 60 * 1000;          // PASSIVE mà fix cũ quá -> NORMAL
+    private static final long SCHEDULE_CHECK_INTERVAL_MS = 30000;
+    public static final int DEFAULT_HISTORY_CAPACITY = 720; // ~1 giờ với interval 5 giây
+    
     // Location status codes
     public static final int STATUS_UNKNOWN = -1;
     public static final int STATUS_VALID = 0;
@@ -52,101 +79,425 @@ public class SecureLocationClient implements LocationListener {
     
     // Current client name
     private String clientName = SOURCE_NATIVE;
-    private Map<String, Object> cachedLocationData = null;
+    // Ghi trên pipeline thread, đọc từ JNI thread; LocationSample là immutable
+    private final AtomicReference<LocationSample> cachedLocationData = new AtomicReference<>();
+    
+    /**
+     * Kết quả gộp từ getLastKnownLocation kèm chữ ký tập fix (immutable).
+     * Hai giá trị publish cùng nhau để reader không bao giờ ghép chữ ký mới với sample cũ.
+     */
+    private static final class FusedCache {
+        final long signature;
+        final LocationSample sample;
+        
+        FusedCache(long signature, LocationSample sample) {
+            this.signature = signature;
+            this.sample = sample;
+        }
+    }
+    
+    private final AtomicReference<FusedCache> fusedLocationCache = new AtomicReference<>();
+    
+    /**
+     * Tín hiệu của một fix cho TrustRuleEngine, tái sử dụng theo thread
+     * (pipeline thread và các command thread gọi getLastKnownLocation) để chấm điểm không cấp phát
+     */
+    private static final class LocationSignals implements TrustRuleEngine.Signals {
+        boolean mock;
+        boolean gps;
+        int satellites;
+        boolean altitudeMissing;
+        float accuracy;
+        float impliedSpeedMps;
+        int trajectoryFlags;
+        
+        @Override
+        public double get(int signal) {
+            switch (signal) {
+                case TrustRuleEngine.LOC_MOCK_PROVIDER: return mock ? 1 : 0;
+                case TrustRuleEngine.LOC_GPS_PROVIDER: return gps ? 1 : 0;
+                case TrustRuleEngine.LOC_SATELLITES: return satellites;
+                case TrustRuleEngine.LOC_ALTITUDE_MISSING: return altitudeMissing ? 1 : 0;
+                case TrustRuleEngine.LOC_ACCURACY_M: return accuracy;
+                case TrustRuleEngine.LOC_IMPLIED_SPEED_MPS: return impliedSpeedMps;
+                case TrustRuleEngine.LOC_TELEPORT: return flag(LocationSample.WARN_TELEPORT);
+                case TrustRuleEngine.LOC_IMPOSSIBLE_SPEED: return flag(LocationSample.WARN_IMPOSSIBLE_SPEED);
+                case TrustRuleEngine.LOC_IMPOSSIBLE_ACCELERATION: return flag(LocationSample.WARN_IMPOSSIBLE_ACCELERATION);
+                case TrustRuleEngine.LOC_SPEED_MISMATCH: return flag(LocationSample.WARN_SPEED_MISMATCH);
+                case TrustRuleEngine.LOC_PROVIDER_JUMP: return flag(LocationSample.WARN_PROVIDER_JUMP);
+                default: return 0;
+            }
+        }
+        
+        private double flag(int bit) {
+            return (trajectoryFlags & bit) != 0 ? 1 : 0;
+        }
+    }
+    
+    private static final ThreadLocal<LocationSignals> SIGNALS = new ThreadLocal<LocationSignals>() {
+        @Override
+        protected LocationSignals initialValue() {
+            return new LocationSignals();
+        }
+    };
+    // Nhiều command thread cùng gọi getLastKnownLocation
+    private final AtomicLong fusedCacheHitCount = new AtomicLong();
+    private final AtomicLong fusedCacheMissCount = new AtomicLong();
+    
+    // Thread riêng xử lý location - không chạy trust scoring trên UI thread
+    private HandlerThread pipelineThread;
+    private Handler pipelineHandler;
+    
+    // Listener riêng cho từng provider để đổi profile mà không mất fix
+    private final ProviderListener gpsListener = new ProviderListener();
+    private final ProviderListener networkListener = new ProviderListener();
+    private final ProviderListener passiveListener = new ProviderListener();
+    
+    // Trạng thái lập lịch (chỉ thay đổi trên pipeline thread)
+    private volatile boolean updatesActive = false;
+    private volatile int scheduleMode = -1;
+    private long burstUntilElapsed = 0;
+    private long lastFixElapsed = 0;
+    private long lastMovementElapsed = 0;
+    private double anchorLat = Double.NaN;
+    private double anchorLng = Double.NaN;
+    
+    // Metrics lập lịch
+    private volatile long scheduleSwitchCount = 0;
+    private final AtomicLongArray modeEnterCounts = new AtomicLongArray(3);
+    private volatile String lastSwitchReason = "";
+    private volatile long modeSinceElapsed = 0;
+    
+    // Thống kê pipeline
+    private volatile long processedFixCount = 0;
+    private volatile long mainThreadFixCount = 0;
+    private volatile long totalProcessingNanos = 0;
+    private volatile long lastProcessingNanos = 0;
+    
+    // Đánh giá quỹ đạo, chỉ cập nhật từ pipeline thread
+    private final TrajectoryEngine trajectory = new TrajectoryEngine();
+    
+    // Lịch sử vị trí gần nhất (bộ nhớ cố định)
+    private final LocationHistory history;
+    
+    // Geofence của tenant, hoán đổi nguyên khối khi reload
+    private volatile GeofenceIndex geofenceIndex = GeofenceIndex.EMPTY;
+    
+    // Luồng nhị phân cho Rust đọc trực tiếp (có thể null)
+    private LocationStreamBuffer locationStream;
+    
+    // Độ trễ xử lý và nhịp fix (có thể null)
+    private volatile AntiCheatMetrics metrics;
     
     public SecureLocationClient(Context context, LocationUpdateListener listener) {
+        this(context, listener, DEFAULT_HISTORY_CAPACITY);
+    }
+    
+    public SecureLocationClient(Context context, LocationUpdateListener listener, int historyCapacity) {
         this.context = context;
         this.listener = listener;
         this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.history = new LocationHistory(historyCapacity);
+    }
+    
+    public LocationHistory getHistory() {
+        return history;
+    }
+    
+    public void setGeofenceIndex(GeofenceIndex geofenceIndex) {
+        this.geofenceIndex = geofenceIndex != null ? geofenceIndex : GeofenceIndex.EMPTY;
+        // Kết quả gộp cũ chứa geofence theo index cũ
+        fusedLocationCache.set(null);
+    }
+    
+    public void setLocationStream(LocationStreamBuffer locationStream) {
+        this.locationStream = locationStream;
+    }
+    
+    public void setMetrics(AntiCheatMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    private synchronized Handler getPipelineHandler() {
+        if (pipelineThread == null) {
+            pipelineThread = new HandlerThread("AntiCheat-Location", Process.THREAD_PRIORITY_BACKGROUND);
+            pipelineThread.start();
+            pipelineHandler = new Handler(pipelineThread.getLooper());
+        }
+        return pipelineHandler;
     }
     
     public void startLocationUpdates() {
-        try {
-            // Ưu tiên dùng GPS provider
-            if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
-                locationManager.requestLocationUpdates(
-                    LocationManager.GPS_PROVIDER,
-                    MIN_TIME_MS,
-                    MIN_DISTANCE_M,
-                    this,
-                    Looper.getMainLooper()
-                );
+        final Handler handler = getPipelineHandler();
+        updatesActive = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                lastMovementElapsed = SystemClock.elapsedRealtime();
+                applyScheduleMode(SCHEDULE_NORMAL, "start");
+            }
+        });
+        handler.removeCallbacks(scheduleCheck);
+        handler.postDelayed(scheduleCheck, SCHEDULE_CHECK_INTERVAL_MS);
+    }
+    
+    public void stopLocationUpdates() {
+        // Chặn các lượt applyScheduleMode chưa chạy; gỡ provider và reset mode trên pipeline thread
+        // (sau lượt đang chạy dở, nếu có) để không bị đăng ký lại sau khi đã dừng
+        updatesActive = false;
+        Handler handler = pipelineHandler;
+        if (handler == null) {
+            // Chưa start lần nào: không có provider nào để gỡ
+            return;
+        }
+        handler.removeCallbacks(scheduleCheck);
+        handler.removeCallbacks(burstExpiry);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleMode = -1;
+                if (locationManager != null) {
+                    locationManager.removeUpdates(gpsListener);
+                    locationManager.removeUpdates(networkListener);
+                    locationManager.removeUpdates(passiveListener);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Chuyển sang profile BURST khi người dùng chuẩn bị chấm công; tự quay về NORMAL sau durationMs
+     */
+    public void requestBurst(final long durationMs) {
+        final Handler handler = getPipelineHandler();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!updatesActive) return;
+                burstUntilElapsed = SystemClock.elapsedRealtime() + durationMs;
+                applyScheduleMode(SCHEDULE_BURST, "checkIn");
+                handler.removeCallbacks(burstExpiry);
+                handler.postDelayed(burstExpiry, durationMs);
+            }
+        });
+    }
+    
+    public int getScheduleMode() {
+        return scheduleMode;
+    }
+    
+    private final Runnable burstExpiry = new Runnable() {
+        @Override
+        public void run() {
+            if (scheduleMode == SCHEDULE_BURST && SystemClock.elapsedRealtime() >= burstUntilElapsed) {
+                lastMovementElapsed = SystemClock.elapsedRealtime();
+                applyScheduleMode(SCHEDULE_NORMAL, "burstExpired");
+            }
+        }
+    };
+    
+    // Kiểm tra định kỳ độ mới của fix khi ở PASSIVE
+    private final Runnable scheduleCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!updatesActive) return;
+            long now = SystemClock.elapsedRealtime();
+            if (scheduleMode == SCHEDULE_PASSIVE && now - lastFixElapsed > STALE_FIX_MS) {
+                lastMovementElapsed = now;
+                applyScheduleMode(SCHEDULE_NORMAL, "staleFix");
+            }
+            Handler handler = pipelineHandler;
+            if (handler != null) {
+                handler.postDelayed(this, SCHEDULE_CHECK_INTERVAL_MS);
             }
-            
-            // Thêm Network provider làm backup
-            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+        }
+    };
+    
+    /**
+     * Đăng ký provider theo profile. Đăng ký profile mới trước rồi mới gỡ provider thừa,
+     * requestLocationUpdates với cùng listener sẽ thay thế request cũ nên không bị hụt fix.
+     */
+    private void applyScheduleMode(int mode, String reason) {
+        if (!updatesActive || mode == scheduleMode) {
+            return;
+        }
+        Looper looper = pipelineHandler.getLooper();
+        boolean usePassive = mode == SCHEDULE_PASSIVE;
+        long minTime = mode == SCHEDULE_BURST ? BURST_MIN_TIME_MS
+                : mode == SCHEDULE_PASSIVE ? PASSIVE_MIN_TIME_MS : MIN_TIME_MS;
+        float minDistance = mode == SCHEDULE_BURST ? BURST_MIN_DISTANCE_M
+                : mode == SCHEDULE_PASSIVE ? PASSIVE_MIN_DISTANCE_M : MIN_DISTANCE_M;
+        try {
+            if (usePassive) {
                 locationManager.requestLocationUpdates(
-                    LocationManager.NETWORK_PROVIDER,
-                    MIN_TIME_MS,
-                    MIN_DISTANCE_M,
-                    this,
-                    Looper.getMainLooper()
-                );
+                    LocationManager.PASSIVE_PROVIDER, minTime, minDistance, passiveListener, looper);
+                locationManager.removeUpdates(gpsListener);
+                locationManager.removeUpdates(networkListener);
+            } else {
+                // Ưu tiên dùng GPS provider
+                if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+                    locationManager.requestLocationUpdates(
+                        LocationManager.GPS_PROVIDER, minTime, minDistance, gpsListener, looper);
+                }
+                // Thêm Network provider làm backup
+                if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                    locationManager.requestLocationUpdates(
+                        LocationManager.NETWORK_PROVIDER, minTime, minDistance, networkListener, looper);
+                }
+                locationManager.removeUpdates(passiveListener);
             }
         } catch (SecurityException e) {
             e.printStackTrace();
+            return;
+        }
+        
+        if (scheduleMode >= 0) {
+            scheduleSwitchCount++;
         }
+        modeEnterCounts.incrementAndGet(mode);
+        scheduleMode = mode;
+        lastSwitchReason = reason;
+        modeSinceElapsed = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Schedule mode -> " + mode + " (" + reason + ")");
     }
     
-    public void stopLocationUpdates() {
-        if (locationManager != null) {
-            locationManager.removeUpdates(this);
+    // Cập nhật trạng thái chuyển động sau mỗi fix (pipeline thread)
+    private void updateScheduleOnFix(LocationSample sample) {
+        long now = SystemClock.elapsedRealtime();
+        lastFixElapsed = now;
+        
+        boolean moved = Double.isNaN(anchorLat)
+                || TrajectoryEngine.distanceMeters(anchorLat, anchorLng, sample.latitude, sample.longitude) > STATIONARY_RADIUS_M
+                || (sample.hasSpeed && sample.speedMps > MOVING_SPEED_MPS);
+        if (moved) {
+            anchorLat = sample.latitude;
+            anchorLng = sample.longitude;
+            lastMovementElapsed = now;
+            if (scheduleMode == SCHEDULE_PASSIVE) {
+                applyScheduleMode(SCHEDULE_NORMAL, "movement");
+            }
+        } else if (scheduleMode == SCHEDULE_NORMAL && now - lastMovementElapsed > STATIONARY_TIMEOUT_MS) {
+            applyScheduleMode(SCHEDULE_PASSIVE, "stationary");
+        }
+    }
+    
+    public Map<String, Object> getSchedulerStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", scheduleMode);
+        stats.put("switchCount", scheduleSwitchCount);
+        stats.put("passiveEnterCount", modeEnterCounts.get(SCHEDULE_PASSIVE));
+        stats.put("normalEnterCount", modeEnterCounts.get(SCHEDULE_NORMAL));
+        stats.put("burstEnterCount", modeEnterCounts.get(SCHEDULE_BURST));
+        stats.put("lastSwitchReason", lastSwitchReason);
+        stats.put("modeDurationMs", modeSinceElapsed > 0 ? SystemClock.elapsedRealtime() - modeSinceElapsed : 0);
+        return stats;
+    }
+    
+    /**
+     * Dừng cập nhật và giải phóng pipeline thread
+     */
+    public synchronized void shutdown() {
+        stopLocationUpdates();
+        if (pipelineThread != null) {
+            pipelineThread.quitSafely();
+            pipelineThread = null;
+            pipelineHandler = null;
         }
     }
+    
+    public Map<String, Object> getPipelineStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = processedFixCount;
+        stats.put("processedFixCount", count);
+        stats.put("mainThreadFixCount", mainThreadFixCount);
+        stats.put("lastProcessingMicros", lastProcessingNanos / 1000);
+        stats.put("avgProcessingMicros", count > 0 ? totalProcessingNanos / count / 1000 : 0);
+        stats.put("fusedCacheHitCount", fusedCacheHitCount.get());
+        stats.put("fusedCacheMissCount", fusedCacheMissCount.get());
+        return stats;
+    }
 
-    public Map<String, Object> getLastKnownLocation() {
-        if (this.cachedLocationData != null) {
-            return this.cachedLocationData;
+    public LocationSample getLastKnownLocation() {
+        LocationSample latest = cachedLocationData.get();
+        if (latest != null) {
+            return latest;
         }
-        Location bestLocation = null;
-        try {
-            Location gpsLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-            Location networkLocation = locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
-            
-            // Logic chọn location tốt nhất (mới nhất)
-            if (gpsLocation != null && networkLocation != null) {
-                if (gpsLocation.getTime() > networkLocation.getTime()) {
-                    bestLocation = gpsLocation;
-                } else {
-                    bestLocation = networkLocation;
-                }
-            } else if (gpsLocation != null) {
-                bestLocation = gpsLocation;
-            } else if (networkLocation != null) {
-                bestLocation = networkLocation;
+        Location[] candidates = new Location[LocationArbiter.PROVIDERS.length];
+        for (int i = 0; i < candidates.length; i++) {
+            try {
+                candidates[i] = locationManager.getLastKnownLocation(LocationArbiter.PROVIDERS[i]);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            } catch (IllegalArgumentException e) {
+                // Provider không tồn tại trên máy này (vd: fused trước Android 12)
             }
-        } catch (SecurityException e) {
-            e.printStackTrace();
         }
         
+        // Không provider nào có fix mới -> dùng lại kết quả đã gộp
+        long signature = LocationArbiter.signature(candidates);
+        FusedCache cached = fusedLocationCache.get();
+        if (cached != null && signature == cached.signature) {
+            fusedCacheHitCount.incrementAndGet();
+            return cached.sample;
+        }
+        
+        Location bestLocation = LocationArbiter.arbitrate(candidates);
         if (bestLocation != null) {
-            Map<String, Object> result = processAndValidateLocation(bestLocation);
-            result.put("source", 0); // Mark as cached (SRC_EXIST)
-            result.put("refreshType", REFRESH_TYPE_CACHE);
-            return result;
+            // Mark as cached (SRC_EXIST)
+            LocationSample sample = processAndValidateLocation(bestLocation, false).withSource(0, REFRESH_TYPE_CACHE);
+            fusedLocationCache.set(new FusedCache(signature, sample));
+            fusedCacheMissCount.incrementAndGet();
+            return sample;
         }
         return null;
     }
     
     @Override
     public void onLocationChanged(@NonNull Location location) {
-        // Xử lý và kiểm tra vị trí
-        Map<String, Object> locationData = processAndValidateLocation(location);
-        this.cachedLocationData = locationData;
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        
+        // Xử lý và kiểm tra vị trí (trên pipeline thread)
+        LocationSample sample = processAndValidateLocation(location, true);
+        cachedLocationData.set(sample);
+        
+        // Lưu lịch sử và ghi record nhị phân (bỏ qua fix không hợp lệ)
+        if (sample.isEvaluated()) {
+            history.append(sample);
+            if (locationStream != null) {
+                locationStream.append(sample);
+            }
+        }
+        
+        if (sample.isEvaluated()) {
+            updateScheduleOnFix(sample);
+        }
         
         // Gửi về listener
         if (listener != null) {
-            listener.onLocationUpdate(locationData);
+            listener.onLocationUpdate(sample);
+        }
+        
+        long elapsed = SystemClock.elapsedRealtimeNanos() - startNanos;
+        AntiCheatMetrics m = metrics;
+        if (m != null) {
+            m.recordFix(location.getElapsedRealtimeNanos(), startNanos);
+            m.recordDuration(AntiCheatMetrics.OP_PROCESS_FIX, elapsed);
+        }
+        lastProcessingNanos = elapsed;
+        totalProcessingNanos += elapsed;
+        processedFixCount++;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mainThreadFixCount++;
         }
     }
     
-    private Map<String, Object> processAndValidateLocation(Location location) {
-        Map<String, Object> result = new HashMap<>();
-        
+    /**
+     * @param updateTrajectory true với fix mới từ provider; fix lấy từ cache không được đưa vào
+     *                         TrajectoryEngine (không đúng thứ tự thời gian, khác thread)
+     */
+    private LocationSample processAndValidateLocation(Location location, boolean updateTrajectory) {
         if (location.getLatitude() == 0.0 && location.getLongitude() == 0.0) {
-            result.put("isValid", false);
-            result.put("error", "Invalid coordinates (0,0)");
-            return result;
+            return LocationSample.invalid("Invalid coordinates (0,0)");
         }
         
         // =============== KIỂM TRA MOCK LOCATION ===============
@@ -156,7 +507,6 @@ public class SecureLocationClient implements LocationListener {
         }
         
         AntiCheatPlugin.setMockLocationDetected(isFromMock);
-        result.put("isFromMockProvider", isFromMock);
         
         // =============== LẤY SỐ VỆ TINH GPS ===============
         int satellites = 0;
@@ -164,91 +514,78 @@ public class SecureLocationClient implements LocationListener {
         if (extras != null) {
             satellites = extras.getInt("satellites", 0);
         }
-        result.put("satellites", satellites);
-        
-        // =============== LẤY THÔNG TIN ĐẦY ĐỦ ===============
-        result.put("latitude", location.getLatitude());
-        result.put("longitude", location.getLongitude());
-        
-        double altitude = location.hasAltitude() ? location.getAltitude() : Double.MIN_VALUE;
-        result.put("altitude", altitude);
-        result.put("hasAltitude", location.hasAltitude());
-        
-        result.put("speed", location.hasSpeed() ? location.getSpeed() * 3.6 : 0.0);
-        result.put("speedMps", location.hasSpeed() ? location.getSpeed() : 0.0);
-        
-        result.put("accuracy", location.getAccuracy());
-        
-        float bearing = location.hasBearing() ? location.getBearing() : 0.0f;
-        result.put("bearing", bearing);
-        result.put("hasBearing", location.hasBearing());
-        
-        result.put("provider", location.getProvider());
-        result.put("type", location.getProvider());
-        
-        result.put("locationClientName", clientName);
         
         int sourceCode = 0;
         if ("native".equals(clientName)) sourceCode = 2;
         else if ("google".equals(clientName)) sourceCode = 1;
-        result.put("source", sourceCode);
-        
-        result.put("gpsTime", location.getTime());
-        result.put("createTime", location.getTime());
-        result.put("systemTime", System.currentTimeMillis());
-        
-        // =============== ĐÁNH GIÁ ĐỘ TIN CẬY ===============
-        int trustScore = 100;
-        StringBuilder warnings = new StringBuilder();
-        
-        if (isFromMock) {
-            trustScore -= 100;
-            warnings.append("CRITICAL: Mock location provider detected. ");
-        }
         
-        if (LocationManager.GPS_PROVIDER.equals(location.getProvider()) && satellites == 0) {
-            trustScore -= 50;
-            warnings.append("WARNING: GPS provider but no satellites. ");
-        }
-        
-        if (satellites > 0 && satellites < 4) {
-            trustScore -= 20;
-            warnings.append("WARNING: Low satellite count. ");
+        // =============== ĐÁNH GIÁ QUỸ ĐẠO ===============
+        // Luôn chạy trước khi chấm điểm: bộ lọc có trạng thái, không được bỏ qua fix nào
+        boolean isGps = LocationManager.GPS_PROVIDER.equals(location.getProvider());
+        float impliedSpeedMps = Float.NaN;
+        int trajectoryFlags = 0;
+        if (updateTrajectory) {
+            long elapsedNanos = location.getElapsedRealtimeNanos();
+            if (elapsedNanos <= 0) {
+                elapsedNanos = SystemClock.elapsedRealtimeNanos();
+            }
+            trajectory.evaluate(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getAccuracy(),
+                location.hasSpeed(),
+                location.getSpeed(),
+                isGps,
+                elapsedNanos
+            );
+            trajectoryFlags = trajectory.getLastWarningFlags();
+            impliedSpeedMps = trajectory.getLastImpliedSpeedMps();
         }
         
-        if (!location.hasAltitude() || location.getAltitude() == 0) {
-            trustScore -= 5;
-            warnings.append("NOTICE: No altitude data. ");
-        }
+        // =============== ĐÁNH GIÁ ĐỘ TIN CẬY ===============
+        // Điểm trừ và ngưỡng lấy từ bộ luật đang dùng (mặc định hoặc config server)
+        LocationSignals signals = SIGNALS.get();
+        signals.mock = isFromMock;
+        signals.gps = isGps;
+        signals.satellites = satellites;
+        signals.altitudeMissing = !location.hasAltitude() || location.getAltitude() == 0;
+        signals.accuracy = location.getAccuracy();
+        signals.impliedSpeedMps = impliedSpeedMps;
+        signals.trajectoryFlags = trajectoryFlags;
+        long verdict = TrustRuleEngine.locationRules().evaluate(signals);
         
-        result.put("trustScore", Math.max(0, trustScore));
-        result.put("warnings", warnings.toString());
-        result.put("isValid", trustScore > 30);
-        result.put("isTrusted", trustScore >= 80);
-        result.put("isSuspicious", trustScore < 50);
-        result.put("isFake", trustScore <= 0 || isFromMock);
+        int trustScore = TrustRuleEngine.score(verdict);
+        // Cờ quỹ đạo là quan sát, giữ lại kể cả khi luật terminal dừng sớm
+        int warningFlags = TrustRuleEngine.flags(verdict) | trajectoryFlags;
         
         int status;
-        if (trustScore <= 0 || isFromMock) {
-            status = STATUS_FAKE;
-        } else if (trustScore < 50) {
-            status = STATUS_SUSPICIOUS;
-        } else {
-            status = STATUS_VALID;
-        }
-        result.put("status", status);
-        
-        result.put("refreshType", REFRESH_TYPE_NORMAL);
+        switch (TrustRuleEngine.verdict(verdict)) {
+            case TrustRuleEngine.VERDICT_REJECT:
+                status = STATUS_FAKE;
+                break;
+            case TrustRuleEngine.VERDICT_SUSPICIOUS:
+                status = STATUS_SUSPICIOUS;
+                break;
+            default:
+                status = STATUS_VALID;
+                break;
+        }
         
-        boolean hasValidCoords = location.getLatitude() != Double.MIN_VALUE 
-                && location.getLongitude() != Double.MIN_VALUE;
-        result.put("hasValidCoords", hasValidCoords);
+        // =============== GEOFENCE ===============
+        GeofenceIndex.Match[] geofences = geofenceIndex.query(location.getLatitude(), location.getLongitude());
         
-        return result;
+        return LocationSample.fromLocation(location, clientName, sourceCode, satellites, isFromMock,
+            impliedSpeedMps, trustScore, warningFlags, status, REFRESH_TYPE_NORMAL, geofences);
     }
     
     @Override
     public void onProviderEnabled(@NonNull String provider) {
+        // Provider vừa bật lại: đăng ký lại theo profile hiện tại
+        int mode = scheduleMode;
+        if (updatesActive && mode != SCHEDULE_PASSIVE && mode >= 0) {
+            scheduleMode = -1;
+            applyScheduleMode(mode, "providerEnabled");
+        }
         if (listener != null) {
             listener.onProviderChanged(provider, true);
         }
@@ -260,4 +597,24 @@ public class SecureLocationClient implements LocationListener {
             listener.onProviderChanged(provider, false);
         }
     }
+    
+    /**
+     * Chuyển tiếp callback của từng provider về client (chạy trên pipeline thread)
+     */
+    private class ProviderListener implements LocationListener {
+        @Override
+        public void onLocationChanged(@NonNull Location location) {
+            SecureLocationClient.this.onLocationChanged(location);
+        }
+        
+        @Override
+        public void onProviderEnabled(@NonNull String provider) {
+            SecureLocationClient.this.onProviderEnabled(provider);
+        }
+        
+        @Override
+        public void onProviderDisabled(@NonNull String provider) {
+            SecureLocationClient.this.onProviderDisabled(provider);
+        }
+    }
 }
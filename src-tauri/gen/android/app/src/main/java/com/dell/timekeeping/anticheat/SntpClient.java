@@ -0,0 +1,297 @@
+package com.dell.timekeeping.anticheat;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SNTP client (RFC 4330) gửi nhiều mẫu UDP song song qua NIO
+ * Mỗi server nhận samplesPerServer request cùng lúc trên một Selector; mẫu có
+ * round-trip delay nhỏ nhất được chọn (ít bị ảnh hưởng bởi hàng đợi mạng nhất).
+ * Thời gian cục bộ đo bằng System.nanoTime nên không phụ thuộc giờ hệ thống.
+ * Gọi query() trên background thread (có DNS và chờ mạng).
+ */
+public class SntpClient {
+
+    private static final String TAG = "SntpClient";
+
+    public static final String[] DEFAULT_SERVERS = {"time.google.com", "time.cloudflare.com", "pool.ntp.org"};
+    public static final int NTP_PORT = 123;
+    public static final int DEFAULT_SAMPLES_PER_SERVER = 2;
+    public static final int DEFAULT_TIMEOUT_MS = 3000;
+
+    private static final int PACKET_SIZE = 48;
+    private static final int OFFSET_ROOT_DELAY = 4;
+    private static final int OFFSET_ROOT_DISPERSION = 8;
+    private static final int OFFSET_ORIGINATE = 24;
+    private static final int OFFSET_RECEIVE = 32;
+    private static final int OFFSET_TRANSMIT = 40;
+    private static final int MODE_CLIENT = 3;
+    private static final int MODE_SERVER = 4;
+    private static final int VERSION = 3;
+    // Giây từ 1900-01-01 tới 1970-01-01
+    private static final long NTP_EPOCH_OFFSET_S = 2208988800L;
+
+    /**
+     * Kết quả của mẫu tốt nhất (immutable)
+     */
+    public static final class Result {
+        public final String server;
+        // Giờ mạng (ms) tại thời điểm monoNanos
+        public final long networkTimeMs;
+        public final long monoNanos;
+        public final long offsetMs;        // giờ mạng - giờ hệ thống
+        public final long delayMs;         // round-trip trừ thời gian xử lý của server
+        public final long uncertaintyMs;   // delay/2 + root delay/2 + root dispersion
+        public final int validSamples;
+        public final int sentSamples;
+
+        Result(String server, long networkTimeMs, long monoNanos, long offsetMs, long delayMs,
+               long uncertaintyMs, int validSamples, int sentSamples) {
+            this.server = server;
+            this.networkTimeMs = networkTimeMs;
+            this.monoNanos = monoNanos;
+            this.offsetMs = offsetMs;
+            this.delayMs = delayMs;
+            this.uncertaintyMs = uncertaintyMs;
+            this.validSamples = validSamples;
+            this.sentSamples = sentSamples;
+        }
+
+        /**
+         * Giờ mạng tại thời điểm gọi, suy ra bằng đồng hồ đơn điệu
+         */
+        public long networkTimeNow() {
+            return networkTimeMs + (System.nanoTime() - monoNanos) / 1_000_000L;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("server", server);
+            map.put("networkTime", networkTimeNow());
+            map.put("offsetMs", offsetMs);
+            map.put("delayMs", delayMs);
+            map.put("uncertaintyMs", uncertaintyMs);
+            map.put("validSamples", validSamples);
+            map.put("sentSamples", sentSamples);
+            return map;
+        }
+    }
+
+    // Trạng thái của một request đang chờ
+    private static final class Sample {
+        final String server;
+        final DatagramChannel channel;
+        final byte[] originate = new byte[8];
+        long sentNanos;
+        long sentWallMs;
+
+        Sample(String server, DatagramChannel channel) {
+            this.server = server;
+            this.channel = channel;
+        }
+    }
+
+    private final String[] servers;
+    private final int port;
+    private final int samplesPerServer;
+    private final int timeoutMs;
+    private final SecureRandom random = new SecureRandom();
+
+    public SntpClient() {
+        this(DEFAULT_SERVERS, NTP_PORT, DEFAULT_SAMPLES_PER_SERVER, DEFAULT_TIMEOUT_MS);
+    }
+
+    public SntpClient(String[] servers, int port, int samplesPerServer, int timeoutMs) {
+        if (servers == null || servers.length == 0) {
+            throw new IllegalArgumentException("servers must not be empty");
+        }
+        this.servers = servers.clone();
+        this.port = port;
+        this.samplesPerServer = Math.max(1, samplesPerServer);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Gửi toàn bộ mẫu cùng lúc và chờ tới timeout hoặc khi tất cả đã trả lời
+     * @return mẫu có delay nhỏ nhất, null nếu không có mẫu hợp lệ
+     */
+    public Result query() {
+        List<Sample> samples = new ArrayList<>();
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+            for (String server : servers) {
+                InetAddress address;
+                try {
+                    address = InetAddress.getByName(server);
+                } catch (UnknownHostException e) {
+                    Log.w(TAG, "Cannot resolve " + server);
+                    continue;
+                }
+                for (int i = 0; i < samplesPerServer; i++) {
+                    DatagramChannel channel = DatagramChannel.open();
+                    Sample sample = new Sample(server, channel);
+                    samples.add(sample);
+                    channel.configureBlocking(false);
+                    channel.connect(new InetSocketAddress(address, port));
+                    channel.register(selector, SelectionKey.OP_READ, sample);
+                    send(sample);
+                }
+            }
+            if (samples.isEmpty()) {
+                return null;
+            }
+            return collect(selector, samples);
+        } catch (IOException e) {
+            Log.w(TAG, "SNTP query failed: " + e.getMessage());
+            return null;
+        } finally {
+            for (Sample sample : samples) {
+                try {
+                    sample.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void send(Sample sample) throws IOException {
+        byte[] packet = new byte[PACKET_SIZE];
+        packet[0] = (byte) ((VERSION << 3) | MODE_CLIENT);
+        // Transmit timestamp ngẫu nhiên làm nonce; server trả lại ở originate
+        random.nextBytes(sample.originate);
+        System.arraycopy(sample.originate, 0, packet, OFFSET_TRANSMIT, 8);
+        sample.sentWallMs = System.currentTimeMillis();
+        sample.sentNanos = System.nanoTime();
+        sample.channel.write(ByteBuffer.wrap(packet));
+    }
+
+    private Result collect(Selector selector, List<Sample> samples) throws IOException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        ByteBuffer buffer = ByteBuffer.allocate(PACKET_SIZE * 2);
+        int pending = samples.size();
+        int valid = 0;
+        Result best = null;
+
+        while (pending > 0) {
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0) {
+                break;
+            }
+            if (selector.select(remainingMs) == 0) {
+                continue;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Sample sample = (Sample) key.attachment();
+                buffer.clear();
+                int read;
+                try {
+                    read = sample.channel.read(buffer);
+                } catch (IOException e) {
+                    // ICMP port unreachable, v.v.
+                    read = -1;
+                }
+                long receivedNanos = System.nanoTime();
+                key.cancel();
+                pending--;
+                if (read < PACKET_SIZE) {
+                    continue;
+                }
+                Result result = parse(sample, buffer.array(), receivedNanos);
+                if (result == null) {
+                    continue;
+                }
+                valid++;
+                if (best == null || result.delayMs < best.delayMs) {
+                    best = result;
+                }
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        return new Result(best.server, best.networkTimeMs, best.monoNanos, best.offsetMs, best.delayMs,
+            best.uncertaintyMs, valid, samples.size());
+    }
+
+    /**
+     * Kiểm tra và tính offset/delay cho một phản hồi
+     */
+    private static Result parse(Sample sample, byte[] packet, long receivedNanos) {
+        int leap = (packet[0] >> 6) & 0x3;
+        int mode = packet[0] & 0x7;
+        int stratum = packet[1] & 0xff;
+        if (leap == 3 || mode != MODE_SERVER || stratum == 0 || stratum > 15) {
+            return null;
+        }
+        for (int i = 0; i < 8; i++) {
+            if (packet[OFFSET_ORIGINATE + i] != sample.originate[i]) {
+                return null;    // không phải phản hồi cho request này
+            }
+        }
+        long t2 = readTimestamp(packet, OFFSET_RECEIVE);
+        long t3 = readTimestamp(packet, OFFSET_TRANSMIT);
+        if (t2 <= 0 || t3 <= 0 || t3 < t2) {
+            return null;
+        }
+
+        // Dùng nanoTime cho t1/t4 để giờ hệ thống bị chỉnh giữa chừng không ảnh hưởng
+        long roundTripMs = (receivedNanos - sample.sentNanos) / 1_000_000L;
+        long delayMs = Math.max(0, roundTripMs - (t3 - t2));
+        long t1 = sample.sentWallMs;
+        long t4 = t1 + roundTripMs;
+        long offsetMs = ((t2 - t1) + (t3 - t4)) / 2;
+        long networkTimeMs = t3 + delayMs / 2;
+
+        long rootDelayMs = readFixed16(packet, OFFSET_ROOT_DELAY);
+        long rootDispersionMs = readFixed16(packet, OFFSET_ROOT_DISPERSION);
+        long uncertaintyMs = delayMs / 2 + rootDelayMs / 2 + rootDispersionMs + 1;
+
+        return new Result(sample.server, networkTimeMs, receivedNanos, offsetMs, delayMs,
+            uncertaintyMs, 1, 1);
+    }
+
+    // NTP 32.32 -> ms Unix
+    private static long readTimestamp(byte[] packet, int offset) {
+        long seconds = readUnsigned32(packet, offset);
+        long fraction = readUnsigned32(packet, offset + 4);
+        if (seconds == 0 && fraction == 0) {
+            return 0;
+        }
+        return (seconds - NTP_EPOCH_OFFSET_S) * 1000L + (fraction * 1000L >>> 32);
+    }
+
+    // NTP 16.16 (giây) -> ms
+    private static long readFixed16(byte[] packet, int offset) {
+        return (readUnsigned32(packet, offset) * 1000L) >>> 16;
+    }
+
+    private static long readUnsigned32(byte[] packet, int offset) {
+        return ((long) (packet[offset] & 0xff) << 24) | ((packet[offset + 1] & 0xff) << 16)
+            | ((packet[offset + 2] & 0xff) << 8) | (packet[offset + 3] & 0xff);
+    }
+}
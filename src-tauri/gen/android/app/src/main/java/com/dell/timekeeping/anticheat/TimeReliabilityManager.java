@@ -1,8 +1,6 @@
 package com.dell.timekeeping.anticheat;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.os.Build;
 import android.os.SystemClock;
 import android.util.Log;
 
@@ -16,21 +14,29 @@ import java.util.Map;
 public class TimeReliabilityManager {
     
     private static final String TAG = "TimeReliability";
-    private static final String PREF_NAME = "time_reliability";
-    private static final String KEY_RELIABILITY_VALUE = "reliability_value";
-    private static final String KEY_LAST_BOOT_ID = "last_boot_id";
-    private static final String KEY_LAST_BOOT_COUNT = "last_boot_count";
-    private static final String KEY_LAST_LEGAL_TIME = "last_legal_time";
-    private static final String KEY_NETWORK_REAL_TIME = "network_real_time";
     
     // Additional keys mentioned in original but missing in constants
     // private static final String KEY_REBOOT_STATUS = "reboot_status";
     // private static final String KEY_CLEAR_STATUS = "clear_status";
     
     private Context context;
-    private SharedPreferences prefs;
+    // Lưu write-behind thay cho SharedPreferences (xem TimeStateStore)
+    private final TimeStateStore store;
+    // Nhật ký kiểm toán các lần trừ/cộng điểm
+    private final AuditJournal journal;
+    // boot_id / BOOT_COUNT / mốc boot, đọc một lần cho cả process
+    private final BootSession bootSession;
+    // AUTO_TIME / AUTO_TIME_ZONE cache qua ContentObserver
+    private final TimeSettingsMonitor timeSettings;
+    // Giờ tin cậy neo theo giờ mạng, dùng để đóng dấu chấm công
+    private final TrustedClock trustedClock;
+    // Trôi giờ hệ thống theo thời gian, học từ các lần sync (giữ qua reboot)
+    private final ClockDriftModel driftModel = new ClockDriftModel();
+    // Snapshot đã lưu gần nhất; chỉ tạo mới khi mô hình đổi để store gộp được các put giống nhau
+    private ClockDriftModel.Snapshot driftSnapshot;
     
-    // Trạng thái hiện tại
+    // Trạng thái hiện tại; thread AntiCheat-Sntp và các thread JNI cùng đọc/ghi,
+    // nên mọi method public chạm vào trạng thái đều synchronized trên this
     private int reliabilityValue = 100;
     private boolean isRebooted = false;
     private boolean isCleared = false;
@@ -42,26 +48,77 @@ public class TimeReliabilityManager {
     private int lastBootCount = 0;
     private int rebootStatus = 0;   // 0 = chưa xử lý, 1 = đã trừ điểm
     private int clearStatus = 0;    // 0 = chưa xử lý, 1 = đã trừ điểm
+    // Lần kiểm tra gần nhất thấy lệch vượt ngưỡng: không học trôi cho tới khi hết lệch
+    private boolean skewFlagged = false;
     
     // Ngưỡng cho việc đánh giá
     private static final int REBOOT_PENALTY = 15;
     private static final int CLEAR_PENALTY = 15;
-    private static final long TIME_SKEW_THRESHOLD_MS = 60000; // 60 giây
+    private static final long TIME_SKEW_THRESHOLD_MS = 60000; // 60 giây, khi chưa có mô hình trôi
+    // Ngưỡng thích ứng = SKEW_SIGMAS * sai số dự đoán + sai số anchor + SKEW_FLOOR_MS, kẹp trong [MIN, MAX]
+    private static final double SKEW_SIGMAS = 4;
+    private static final long SKEW_FLOOR_MS = 5000;
+    private static final long MIN_SKEW_THRESHOLD_MS = 15000;
+    private static final long MAX_SKEW_THRESHOLD_MS = 300000;
+    // Giờ mạng kém chính xác hơn mức này không dùng để học trôi
+    private static final long MAX_DRIFT_OBSERVATION_UNCERTAINTY_MS = 5000;
+    
+    /**
+     * Tín hiệu cho TrustRuleEngine, tái sử dụng theo thread (checkTimeCheating gọi từ nhiều JNI thread)
+     */
+    private static final class TimeSignals implements TrustRuleEngine.Signals {
+        int reliability;
+        boolean rebooted;
+        boolean cleared;
+        boolean autoTimeOff;
+        boolean autoTimeZoneOff;
+        boolean driftReady;
+        long skewMs;
+        long skewThresholdMs;
+        
+        @Override
+        public double get(int signal) {
+            switch (signal) {
+                case TrustRuleEngine.TIME_RELIABILITY: return reliability;
+                case TrustRuleEngine.TIME_REBOOTED: return rebooted ? 1 : 0;
+                case TrustRuleEngine.TIME_CLEARED: return cleared ? 1 : 0;
+                case TrustRuleEngine.TIME_REBOOTED_OR_CLEARED: return rebooted || cleared ? 1 : 0;
+                case TrustRuleEngine.TIME_AUTO_TIME_OFF: return autoTimeOff ? 1 : 0;
+                case TrustRuleEngine.TIME_AUTO_TIME_ZONE_OFF: return autoTimeZoneOff ? 1 : 0;
+                case TrustRuleEngine.TIME_AUTO_SETTING_OFF: return autoTimeOff || autoTimeZoneOff ? 1 : 0;
+                case TrustRuleEngine.TIME_DRIFT_READY: return driftReady ? 1 : 0;
+                case TrustRuleEngine.TIME_SKEW_MS: return skewMs;
+                case TrustRuleEngine.TIME_SKEW_EXCESS_MS: return skewMs - skewThresholdMs;
+                default: return 0;
+            }
+        }
+    }
+    
+    private static final ThreadLocal<TimeSignals> SIGNALS = new ThreadLocal<TimeSignals>() {
+        @Override
+        protected TimeSignals initialValue() {
+            return new TimeSignals();
+        }
+    };
     
     public TimeReliabilityManager(Context context) {
         this.context = context;
-        this.prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        loadFromPrefs();
+        this.store = TimeStateStore.getInstance(context);
+        this.journal = AuditJournal.getInstance(context);
+        this.bootSession = BootSession.get(context);
+        this.timeSettings = TimeSettingsMonitor.getInstance(context);
+        this.trustedClock = new TrustedClock(bootSession);
+        loadFromStore();
     }
     
     /**
      * Khởi tạo và kiểm tra độ tin cậy khi app start
      */
-    public Map<String, Object> initializeAndCheck() {
+    public synchronized Map<String, Object> initializeAndCheck() {
         Map<String, Object> result = new HashMap<>();
         
-        String currentBootId = getBootId();
-        int currentBootCount = getBootCount();
+        String currentBootId = bootSession.bootId;
+        int currentBootCount = bootSession.bootCount;
         long currentTime = System.currentTimeMillis();
         long elapsedRealtime = SystemClock.elapsedRealtime();
         boolean isNetworkConnected = isNetworkAvailable();
@@ -91,6 +148,7 @@ public class TimeReliabilityManager {
             if (rebootStatus == 0) {
                 reliabilityValue -= REBOOT_PENALTY;
                 rebootStatus = 1;
+                journal.append(AuditJournal.TYPE_REBOOT_PENALTY, reliabilityValue, currentBootCount, currentBootId);
                 Log.d(TAG, "Device rebooted detected. Penalty applied. Score: " + reliabilityValue);
             }
         }
@@ -101,6 +159,7 @@ public class TimeReliabilityManager {
             if (clearStatus == 0) {
                 reliabilityValue -= CLEAR_PENALTY;
                 clearStatus = 1;
+                journal.append(AuditJournal.TYPE_CLEAR_PENALTY, reliabilityValue, 0, null);
                 Log.d(TAG, "App data cleared detected. Penalty applied. Score: " + reliabilityValue);
             }
         }
@@ -111,7 +170,7 @@ public class TimeReliabilityManager {
         // Lưu trạng thái mới
         lastBootId = currentBootId;
         lastBootCount = currentBootCount;
-        saveToPrefs();
+        saveToStore();
         
         // Trả về kết quả
         result.put("reliabilityValue", reliabilityValue);
@@ -123,7 +182,7 @@ public class TimeReliabilityManager {
         result.put("bootCount", currentBootCount);
         result.put("systemTime", currentTime);
         result.put("elapsedRealtime", elapsedRealtime);
-        result.put("bootStartTime", currentTime - elapsedRealtime);
+        result.put("bootStartTime", bootSession.bootStartTime);
         result.put("lastLegalTime", lastLegalTime);
         result.put("networkRealTime", networkRealTime);
         result.put("isNetworkConnected", isNetworkConnected);
@@ -145,7 +204,7 @@ public class TimeReliabilityManager {
     }
     
     private boolean isFirstLaunchAfterClear() {
-        return !prefs.contains(KEY_RELIABILITY_VALUE);
+        return !store.hasState();
     }
     
     private boolean isNetworkAvailable() {
@@ -160,9 +219,30 @@ public class TimeReliabilityManager {
     }
     
     public Map<String, Object> updateWithRealTime(long realTime, String source) {
+        return updateWithRealTime(realTime, TrustedClock.DEFAULT_SYNC_UNCERTAINTY_MS, source);
+    }
+    
+    /**
+     * @param realTime giờ mạng tại thời điểm gọi (ms)
+     * @param uncertaintyMs sai số của realTime (vd: RTT/2 + độ phân giải của nguồn)
+     */
+    public synchronized Map<String, Object> updateWithRealTime(long realTime, long uncertaintyMs, String source) {
         Map<String, Object> result = new HashMap<>();
         
         networkRealTime = realTime;
+        // Chỉ học trôi từ offset hợp lệ: đang bị báo lệch giờ, hoặc offset vượt ngưỡng cố định,
+        // thì có thể là giờ đã bị chỉnh tay - học vào sẽ biến giờ gian lận thành "trôi bình thường"
+        long offset = System.currentTimeMillis() - realTime;
+        if (uncertaintyMs <= MAX_DRIFT_OBSERVATION_UNCERTAINTY_MS
+                && !skewFlagged
+                && Math.abs(offset) <= TIME_SKEW_THRESHOLD_MS
+                && driftModel.observe(realTime, offset) != ClockDriftModel.OBSERVE_SKIPPED) {
+            // Cả khi bị reset (snapshot() = null): không được lưu lại mô hình trước bước nhảy,
+            // nếu không lần mở app sau sẽ khôi phục đúng mô hình mà reset muốn bỏ
+            driftSnapshot = driftModel.snapshot();
+        }
+        boolean anchored = trustedClock.anchor(realTime, uncertaintyMs, source);
+        int previousValue = reliabilityValue;
         
         // Nếu trước đó đã bị reboot hoặc cleared, nhưng bây giờ có thời gian thực
         // thì phục hồi điểm
@@ -178,11 +258,14 @@ public class TimeReliabilityManager {
         }
         
         reliabilityValue = Math.min(100, reliabilityValue);
+        if (reliabilityValue != previousValue) {
+            journal.append(AuditJournal.TYPE_RELIABILITY_RECOVERY, reliabilityValue, realTime, source);
+        }
         
-        lastBootId = getBootId();
-        lastBootCount = getBootCount();
+        lastBootId = bootSession.bootId;
+        lastBootCount = bootSession.bootCount;
         
-        saveToPrefs();
+        saveToStore();
         
         result.put("reliabilityValue", reliabilityValue);
         result.put("isRebooted", isRebooted);
@@ -190,16 +273,18 @@ public class TimeReliabilityManager {
         result.put("source", source);
         result.put("networkRealTime", networkRealTime);
         result.put("lastLegalTime", lastLegalTime);
+        result.put("anchorUpdated", anchored);
+        result.put("trustedClock", trustedClock.now().toMap());
         
         return result;
     }
     
-    public Map<String, Object> checkTimeCheating() {
+    public synchronized Map<String, Object> checkTimeCheating() {
         Map<String, Object> result = new HashMap<>();
         
         long systemTime = System.currentTimeMillis();
         long elapsedRealtime = SystemClock.elapsedRealtime();
-        long bootStartTime = systemTime - elapsedRealtime;
+        long bootStartTime = bootSession.bootStartTime;
         long bootCorrectTime = bootStartTime + elapsedRealtime;
         
         int autoTime = getAutoTimeSetting();
@@ -208,32 +293,68 @@ public class TimeReliabilityManager {
         isAutoTimeOff = autoTime <= 0;
         isAutoTimeZoneOff = autoTimeZone <= 0;
         
+        // Lệch so với giờ tin cậy (đã tính thời gian trôi từ lúc sync);
+        // chưa neo trong phiên boot này thì so với giờ mạng lần cuối như cũ
         long timeSkew = 0;
-        if (networkRealTime > 0) {
+        long trustedNow = -1;
+        // Phần lệch đã trừ đi trôi dự kiến, so với ngưỡng thích ứng
+        long correctedSkew = 0;
+        long expectedDrift = 0;
+        long skewThreshold = TIME_SKEW_THRESHOLD_MS;
+        ClockDriftModel.Prediction drift = null;
+        TrustedClock.Reading trusted = trustedClock.now();
+        if (trusted.anchored) {
+            trustedNow = trusted.timeMs;
+            timeSkew = Math.abs(systemTime - trustedNow);
+            correctedSkew = timeSkew;
+            drift = driftModel.predict(trustedNow);
+            if (drift.ready) {
+                // Chỉ trừ phần trôi theo độ dốc kể từ lần neo, không trừ offset tuyệt đối đã học
+                expectedDrift = drift.driftOverMs(trusted.anchorAgeMs);
+                correctedSkew = Math.abs(systemTime - trustedNow - expectedDrift);
+                skewThreshold = adaptiveSkewThreshold(drift, trusted.uncertaintyMs);
+            }
+        } else if (networkRealTime > 0) {
             timeSkew = Math.abs(systemTime - networkRealTime);
+            correctedSkew = timeSkew;
         }
         
-        boolean scoreCondition = reliabilityValue > 90;
-        boolean rebootClearCondition = isCleared || isRebooted;
-        boolean autoTimeCondition = isAutoTimeOff || isAutoTimeZoneOff;
-        boolean skewCondition = timeSkew <= TIME_SKEW_THRESHOLD_MS;
-        
-        boolean isNotCheating = (scoreCondition || !(rebootClearCondition && autoTimeCondition)) && skewCondition;
-        boolean isCheatingTime = !isNotCheating;
+        // Verdict từ bộ luật đang dùng (mặc định: reboot/clear + tắt giờ tự động khi điểm <= 90,
+        // hoặc lệch vượt ngưỡng)
+        TimeSignals signals = SIGNALS.get();
+        signals.reliability = reliabilityValue;
+        signals.rebooted = isRebooted;
+        signals.cleared = isCleared;
+        signals.autoTimeOff = isAutoTimeOff;
+        signals.autoTimeZoneOff = isAutoTimeZoneOff;
+        signals.driftReady = drift != null && drift.ready;
+        signals.skewMs = correctedSkew;
+        signals.skewThresholdMs = skewThreshold;
+        TrustRuleEngine.RuleSet rules = TrustRuleEngine.timeRules();
+        long verdict = rules.evaluate(signals);
+        boolean isCheatingTime = TrustRuleEngine.verdict(verdict) == TrustRuleEngine.VERDICT_REJECT;
+        skewFlagged = correctedSkew > skewThreshold;
+        String decidingRule = rules.ruleId(TrustRuleEngine.decidingRule(verdict));
         
         String cheatingReason = "";
         if (isCheatingTime) {
-            if (timeSkew > TIME_SKEW_THRESHOLD_MS) {
-                cheatingReason = "Time skew exceeds threshold: " + timeSkew + "ms > " + TIME_SKEW_THRESHOLD_MS + "ms";
-            } else if (rebootClearCondition && autoTimeCondition && reliabilityValue <= 90) {
+            if ("timeSkew".equals(decidingRule)) {
+                cheatingReason = "Time skew exceeds threshold: " + correctedSkew + "ms > " + skewThreshold + "ms"
+                    + (expectedDrift != 0 ? " (expected drift " + expectedDrift + "ms)" : "");
+            } else if ("rebootWithAutoTimeOff".equals(decidingRule)) {
                 cheatingReason = "Suspicious: (rebooted=" + isRebooted + "/cleared=" + isCleared + 
                                 ") + (autoTimeOff=" + isAutoTimeOff + "/autoTimeZoneOff=" + isAutoTimeZoneOff + 
                                 ") + score=" + reliabilityValue;
+            } else {
+                cheatingReason = "Rule " + (decidingRule != null ? decidingRule : "score")
+                    + " (score=" + TrustRuleEngine.score(verdict) + ")";
             }
         }
         
         result.put("isCheatingTime", isCheatingTime);
         result.put("cheatingReason", cheatingReason);
+        result.put("trustRule", decidingRule);
+        result.put("trustRulesVersion", rules.version);
         result.put("reliabilityValue", reliabilityValue);
         result.put("systemTime", systemTime);
         result.put("elapsedRealtime", elapsedRealtime);
@@ -241,6 +362,11 @@ public class TimeReliabilityManager {
         result.put("bootCorrectTime", bootCorrectTime);
         result.put("networkRealTime", networkRealTime);
         result.put("timeSkew", timeSkew);
+        result.put("expectedDriftMs", expectedDrift);
+        result.put("driftCorrectedSkew", correctedSkew);
+        result.put("skewThresholdMs", skewThreshold);
+        result.put("driftModelReady", drift != null && drift.ready);
+        result.put("trustedTime", trustedNow);
         result.put("autoTimeSwitch", autoTime);
         result.put("autoTimeZoneSwitch", autoTimeZone);
         result.put("isAutoTimeOff", isAutoTimeOff);
@@ -255,21 +381,30 @@ public class TimeReliabilityManager {
         Log.d(TAG, "checkTimeCheating: score=" + reliabilityValue + 
               ", cleared=" + isCleared + ", rebooted=" + isRebooted +
               ", autoTimeOff=" + isAutoTimeOff + ", autoTimeZoneOff=" + isAutoTimeZoneOff +
-              ", skew=" + timeSkew + ", result=" + isCheatingTime);
+              ", skew=" + timeSkew + ", threshold=" + skewThreshold + ", result=" + isCheatingTime);
         
         return result;
     }
     
-    public Map<String, Object> getTelemetryData() {
+    /**
+     * Ngưỡng rộng ra khi mô hình kém chắc chắn (ít quan sát, ngoại suy xa lần sync cuối)
+     * và hẹp lại khi trôi ổn định, nhưng không bao giờ dưới MIN_SKEW_THRESHOLD_MS
+     */
+    private static long adaptiveSkewThreshold(ClockDriftModel.Prediction drift, long anchorUncertaintyMs) {
+        long threshold = Math.round(SKEW_SIGMAS * drift.errorMs) + Math.max(0, anchorUncertaintyMs) + SKEW_FLOOR_MS;
+        return Math.max(MIN_SKEW_THRESHOLD_MS, Math.min(MAX_SKEW_THRESHOLD_MS, threshold));
+    }
+    
+    public synchronized Map<String, Object> getTelemetryData() {
         Map<String, Object> data = new HashMap<>();
         
         long systemTime = System.currentTimeMillis();
         long elapsedRealtime = SystemClock.elapsedRealtime();
-        long bootStartTime = systemTime - elapsedRealtime;
+        long bootStartTime = bootSession.bootStartTime;
         
-        data.put("bootId", getBootId());
+        data.put("bootId", bootSession.bootId);
         data.put("lastBootId", lastBootId);
-        data.put("bootCount", getBootCount());
+        data.put("bootCount", bootSession.bootCount);
         data.put("lastBootCount", lastBootCount);
         data.put("autoTimeSwitch", getAutoTimeSetting());
         data.put("autoTimeZoneSwitch", getAutoTimeZoneSetting());
@@ -286,78 +421,50 @@ public class TimeReliabilityManager {
         
         data.put("timeZone", java.util.TimeZone.getDefault().getID());
         data.put("timeZoneOffset", java.util.TimeZone.getDefault().getRawOffset());
+        data.put("stateStore", store.getStats());
+        data.put("timeSettings", timeSettings.getStats());
+        data.put("driftModel", driftModel.getStats());
         
         return data;
     }
     
-    private String getBootId() {
-        try {
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.FileReader("/proc/sys/kernel/random/boot_id")
-            );
-            String bootId = reader.readLine();
-            reader.close();
-            return bootId != null ? bootId.trim() : "";
-        } catch (Exception e) {
-            return "";
-        }
-    }
-    
-    private int getBootCount() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            try {
-                return android.provider.Settings.Global.getInt(
-                    context.getContentResolver(),
-                    android.provider.Settings.Global.BOOT_COUNT
-                );
-            } catch (Exception e) {
-                return -1;
-            }
-        }
-        return -1;
-    }
-    
     private int getAutoTimeSetting() {
-        try {
-            return android.provider.Settings.Global.getInt(
-                context.getContentResolver(),
-                android.provider.Settings.Global.AUTO_TIME
-            );
-        } catch (Exception e) {
-            return -1;
-        }
+        return timeSettings.getAutoTime();
     }
     
     private int getAutoTimeZoneSetting() {
-        try {
-            return android.provider.Settings.Global.getInt(
-                context.getContentResolver(),
-                android.provider.Settings.Global.AUTO_TIME_ZONE
-            );
-        } catch (Exception e) {
-            return -1;
+        return timeSettings.getAutoTimeZone();
+    }
+    
+    private void loadFromStore() {
+        TimeStateStore.State state = store.get();
+        if (state == null) {
+            trustedClock.restore(null);
+            return;
         }
+        trustedClock.restore(state.anchor);
+        driftModel.restore(state.drift);
+        driftSnapshot = state.drift;
+        reliabilityValue = state.reliabilityValue;
+        lastBootId = state.lastBootId;
+        lastBootCount = state.lastBootCount;
+        lastLegalTime = state.lastLegalTime;
+        networkRealTime = state.networkRealTime;
     }
     
-    private void loadFromPrefs() {
-        reliabilityValue = prefs.getInt(KEY_RELIABILITY_VALUE, 100);
-        lastBootId = prefs.getString(KEY_LAST_BOOT_ID, "");
-        lastBootCount = prefs.getInt(KEY_LAST_BOOT_COUNT, 0);
-        lastLegalTime = prefs.getLong(KEY_LAST_LEGAL_TIME, 0);
-        networkRealTime = prefs.getLong(KEY_NETWORK_REAL_TIME, 0);
+    // Chỉ cập nhật bộ nhớ; store tự gộp và ghi xuống đĩa
+    private void saveToStore() {
+        store.put(new TimeStateStore.State(
+            reliabilityValue, lastBootId, lastBootCount, lastLegalTime, networkRealTime,
+            trustedClock.getPersistableAnchor(), driftSnapshot));
     }
     
-    private void saveToPrefs() {
-        prefs.edit()
-            .putInt(KEY_RELIABILITY_VALUE, reliabilityValue)
-            .putString(KEY_LAST_BOOT_ID, lastBootId)
-            .putInt(KEY_LAST_BOOT_COUNT, lastBootCount)
-            .putLong(KEY_LAST_LEGAL_TIME, lastLegalTime)
-            .putLong(KEY_NETWORK_REAL_TIME, networkRealTime)
-            .apply();
+    public void flushState() {
+        store.flush();
     }
     
-    public int getReliabilityValue() { return reliabilityValue; }
-    public boolean isRebooted() { return isRebooted; }
-    public boolean isCleared() { return isCleared; }
+    public TrustedClock getTrustedClock() { return trustedClock; }
+    public synchronized int getReliabilityValue() { return reliabilityValue; }
+    public synchronized boolean isRebooted() { return isRebooted; }
+    public synchronized boolean isCleared() { return isCleared; }
 }
@@ -0,0 +1,141 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache giá trị AUTO_TIME / AUTO_TIME_ZONE bằng ContentObserver
+ * Đọc trên đường nóng chỉ là đọc field volatile - không Binder IPC tới settings provider;
+ * giá trị chỉ được đọc lại khi observer báo thay đổi, và mỗi lần bật/tắt được báo ngay cho listener.
+ * Dùng chung một instance cho cả process.
+ */
+public final class TimeSettingsMonitor {
+
+    private static final String TAG = "TimeSettingsMonitor";
+
+    public interface Listener {
+        /**
+         * Gọi trên binder thread khi một setting đổi giá trị
+         * @param key Settings.Global.AUTO_TIME hoặc AUTO_TIME_ZONE
+         */
+        void onTimeSettingChanged(String key, int oldValue, int newValue);
+    }
+
+    private static TimeSettingsMonitor instance;
+
+    public static synchronized TimeSettingsMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new TimeSettingsMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final ContentResolver resolver;
+    private volatile int autoTime;
+    private volatile int autoTimeZone;
+    // false nếu không đăng ký được observer -> đọc trực tiếp mỗi lần
+    private volatile boolean observing = false;
+    private volatile Listener listener;
+
+    // Metrics
+    private volatile long changeCount = 0;
+    private volatile long directReadCount = 0;
+
+    private TimeSettingsMonitor(Context context) {
+        this.resolver = context.getContentResolver();
+        this.autoTime = readSetting(Settings.Global.AUTO_TIME);
+        this.autoTimeZone = readSetting(Settings.Global.AUTO_TIME_ZONE);
+        try {
+            resolver.registerContentObserver(Settings.Global.getUriFor(Settings.Global.AUTO_TIME), false,
+                new SettingObserver(Settings.Global.AUTO_TIME));
+            resolver.registerContentObserver(Settings.Global.getUriFor(Settings.Global.AUTO_TIME_ZONE), false,
+                new SettingObserver(Settings.Global.AUTO_TIME_ZONE));
+            observing = true;
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot observe time settings, falling back to direct reads: " + e.getMessage());
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return 1 nếu bật, 0 nếu tắt, -1 nếu không đọc được
+     */
+    public int getAutoTime() {
+        if (!observing) {
+            directReadCount++;
+            return readSetting(Settings.Global.AUTO_TIME);
+        }
+        return autoTime;
+    }
+
+    public int getAutoTimeZone() {
+        if (!observing) {
+            directReadCount++;
+            return readSetting(Settings.Global.AUTO_TIME_ZONE);
+        }
+        return autoTimeZone;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("observing", observing);
+        stats.put("changeCount", changeCount);
+        stats.put("directReadCount", directReadCount);
+        return stats;
+    }
+
+    private int readSetting(String key) {
+        try {
+            return Settings.Global.getInt(resolver, key);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private void onSettingChanged(String key) {
+        int newValue = readSetting(key);
+        int oldValue;
+        synchronized (this) {
+            if (Settings.Global.AUTO_TIME.equals(key)) {
+                oldValue = autoTime;
+                autoTime = newValue;
+            } else {
+                oldValue = autoTimeZone;
+                autoTimeZone = newValue;
+            }
+        }
+        if (oldValue == newValue) {
+            return;
+        }
+        changeCount++;
+        Log.d(TAG, key + " changed: " + oldValue + " -> " + newValue);
+        Listener l = listener;
+        if (l != null) {
+            l.onTimeSettingChanged(key, oldValue, newValue);
+        }
+    }
+
+    private final class SettingObserver extends ContentObserver {
+        private final String key;
+
+        SettingObserver(String key) {
+            // Handler null: callback chạy trên binder thread, không chiếm main thread
+            super(null);
+            this.key = key;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onSettingChanged(key);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Lưu trạng thái TimeReliabilityManager dạng write-behind, an toàn khi crash
+ * - put() chỉ cập nhật bộ nhớ; nhiều lần cập nhật liên tiếp được gộp thành một lần ghi
+ *   sau tối đa FLUSH_DELAY_MS, hoặc ngay khi gọi flush() (vd: Activity onPause)
+ * - File nhị phân nhỏ có CRC32, ghi luân phiên 2 slot A/B kèm generation:
+ *   nếu lần ghi bị đứt giữa chừng, slot còn lại vẫn hợp lệ
+ * - Lần chạy đầu chuyển dữ liệu cũ từ SharedPreferences "time_reliability" sang
+ * Dùng chung một instance cho cả process (mỗi file chỉ một writer).
+ */
+public final class TimeStateStore {
+
+    private static final String TAG = "TimeStateStore";
+
+    private static final String SLOT_A = "time_state.a";
+    private static final String SLOT_B = "time_state.b";
+    private static final int MAGIC = 0x54524C31; // "TRL1"
+    // v2: thêm anchor của TrustedClock; v3: thêm mô hình trôi giờ. Vẫn đọc được file cũ
+    private static final int VERSION = 3;
+    private static final int MAX_FILE_SIZE = 4096;
+
+    static final long FLUSH_DELAY_MS = 3000;
+
+    // SharedPreferences cũ (chỉ đọc khi migrate)
+    private static final String LEGACY_PREF_NAME = "time_reliability";
+    private static final String KEY_RELIABILITY_VALUE = "reliability_value";
+    private static final String KEY_LAST_BOOT_ID = "last_boot_id";
+    private static final String KEY_LAST_BOOT_COUNT = "last_boot_count";
+    private static final String KEY_LAST_LEGAL_TIME = "last_legal_time";
+    private static final String KEY_NETWORK_REAL_TIME = "network_real_time";
+
+    /**
+     * Trạng thái được lưu (immutable)
+     */
+    public static final class State {
+        public final int reliabilityValue;
+        public final String lastBootId;
+        public final int lastBootCount;
+        public final long lastLegalTime;
+        public final long networkRealTime;
+        // Anchor TrustedClock, null nếu chưa neo
+        public final TrustedClock.Anchor anchor;
+        // Mô hình trôi giờ, null nếu chưa có quan sát
+        public final ClockDriftModel.Snapshot drift;
+
+        public State(int reliabilityValue, String lastBootId, int lastBootCount,
+                     long lastLegalTime, long networkRealTime) {
+            this(reliabilityValue, lastBootId, lastBootCount, lastLegalTime, networkRealTime, null, null);
+        }
+
+        public State(int reliabilityValue, String lastBootId, int lastBootCount,
+                     long lastLegalTime, long networkRealTime, TrustedClock.Anchor anchor,
+                     ClockDriftModel.Snapshot drift) {
+            this.reliabilityValue = reliabilityValue;
+            this.lastBootId = lastBootId != null ? lastBootId : "";
+            this.lastBootCount = lastBootCount;
+            this.lastLegalTime = lastLegalTime;
+            this.networkRealTime = networkRealTime;
+            this.anchor = anchor;
+            this.drift = drift;
+        }
+
+        boolean sameAs(State other) {
+            return other != null
+                && reliabilityValue == other.reliabilityValue
+                && lastBootCount == other.lastBootCount
+                && lastLegalTime == other.lastLegalTime
+                && networkRealTime == other.networkRealTime
+                && lastBootId.equals(other.lastBootId)
+                && anchor == other.anchor
+                && drift == other.drift;
+        }
+    }
+
+    private static TimeStateStore instance;
+
+    public static synchronized TimeStateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new TimeStateStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Flush nếu store đã được tạo (không tạo mới chỉ để flush)
+     */
+    public static void flushIfCreated() {
+        TimeStateStore store;
+        synchronized (TimeStateStore.class) {
+            store = instance;
+        }
+        if (store != null) {
+            store.flush();
+        }
+    }
+
+    private final File slotA;
+    private final File slotB;
+    private final ScheduledExecutorService executor;
+    private final Object writeLock = new Object();
+
+    // Trạng thái trong bộ nhớ, null nếu chưa từng lưu (cài mới / đã xoá data)
+    private State current;
+    private boolean dirty = false;
+    private boolean flushScheduled = false;
+    // Generation của bản ghi mới nhất trên đĩa, slot kế tiếp sẽ ghi
+    private long generation = 0;
+    private boolean nextSlotIsA = true;
+
+    // Metrics
+    private long putCount = 0;
+    private long writeCount = 0;
+    private long writeFailureCount = 0;
+    private boolean recoveredTornWrite = false;
+    private boolean migratedFromPrefs = false;
+
+    private TimeStateStore(Context context) {
+        File dir = context.getNoBackupFilesDir();
+        this.slotA = new File(dir, SLOT_A);
+        this.slotB = new File(dir, SLOT_B);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AntiCheat-TimeState");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        load(context);
+    }
+
+    private void load(Context context) {
+        long[] genA = new long[1];
+        long[] genB = new long[1];
+        State a = readSlot(slotA, genA);
+        State b = readSlot(slotB, genB);
+
+        if (a != null && (b == null || genA[0] >= genB[0])) {
+            current = a;
+            generation = genA[0];
+            nextSlotIsA = false;
+        } else if (b != null) {
+            current = b;
+            generation = genB[0];
+            nextSlotIsA = true;
+        }
+
+        // Có file nhưng slot mới nhất hỏng -> đã phục hồi từ slot còn lại (hoặc mất cả hai)
+        boolean aCorrupt = slotA.exists() && a == null;
+        boolean bCorrupt = slotB.exists() && b == null;
+        if (aCorrupt || bCorrupt) {
+            recoveredTornWrite = true;
+            Log.w(TAG, "Torn state file detected (a=" + aCorrupt + ", b=" + bCorrupt
+                + "), using " + (current != null ? "generation " + generation : "no state"));
+        }
+
+        if (current == null) {
+            migrateFromPrefs(context);
+        }
+    }
+
+    private void migrateFromPrefs(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREF_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(KEY_RELIABILITY_VALUE)) {
+            return;
+        }
+        current = new State(
+            prefs.getInt(KEY_RELIABILITY_VALUE, 100),
+            prefs.getString(KEY_LAST_BOOT_ID, ""),
+            prefs.getInt(KEY_LAST_BOOT_COUNT, 0),
+            prefs.getLong(KEY_LAST_LEGAL_TIME, 0),
+            prefs.getLong(KEY_NETWORK_REAL_TIME, 0)
+        );
+        dirty = true;
+        // Chỉ xoá prefs cũ sau khi đã ghi file thành công
+        if (flush()) {
+            prefs.edit().clear().apply();
+            migratedFromPrefs = true;
+            Log.d(TAG, "Migrated time reliability state from SharedPreferences");
+        }
+    }
+
+    /**
+     * @return trạng thái hiện tại, null nếu chưa từng lưu
+     */
+    public synchronized State get() {
+        return current;
+    }
+
+    public synchronized boolean hasState() {
+        return current != null;
+    }
+
+    /**
+     * Cập nhật trong bộ nhớ và hẹn lịch ghi (gộp các lần gọi liên tiếp)
+     */
+    public synchronized void put(State state) {
+        putCount++;
+        if (state.sameAs(current)) {
+            return;
+        }
+        current = state;
+        dirty = true;
+        scheduleFlushLocked();
+    }
+
+    private void scheduleFlushLocked() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ghi ngay nếu có thay đổi (gọi ở lifecycle edge: onPause, trước khi tắt)
+     * @return false nếu ghi lỗi
+     */
+    public boolean flush() {
+        synchronized (writeLock) {
+            State snapshot;
+            long nextGeneration;
+            boolean toSlotA;
+            synchronized (this) {
+                flushScheduled = false;
+                if (!dirty || current == null) {
+                    return true;
+                }
+                snapshot = current;
+                dirty = false;
+                nextGeneration = generation + 1;
+                toSlotA = nextSlotIsA;
+            }
+
+            try {
+                writeSlot(toSlotA ? slotA : slotB, snapshot, nextGeneration);
+                synchronized (this) {
+                    generation = nextGeneration;
+                    nextSlotIsA = !toSlotA;
+                    writeCount++;
+                }
+                return true;
+            } catch (IOException e) {
+                Log.w(TAG, "State flush failed: " + e.getMessage());
+                synchronized (this) {
+                    writeFailureCount++;
+                    dirty = true;
+                    scheduleFlushLocked();
+                }
+                return false;
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("putCount", putCount);
+        stats.put("writeCount", writeCount);
+        stats.put("writeFailureCount", writeFailureCount);
+        stats.put("generation", generation);
+        stats.put("dirty", dirty);
+        stats.put("recoveredTornWrite", recoveredTornWrite);
+        stats.put("migratedFromPrefs", migratedFromPrefs);
+        return stats;
+    }
+
+    private static void writeSlot(File file, State state, long generation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+        out.writeInt(state.reliabilityValue);
+        out.writeInt(state.lastBootCount);
+        out.writeLong(state.lastLegalTime);
+        out.writeLong(state.networkRealTime);
+        out.writeUTF(state.lastBootId);
+        TrustedClock.Anchor anchor = state.anchor;
+        out.writeBoolean(anchor != null);
+        if (anchor != null) {
+            out.writeLong(anchor.networkTime);
+            out.writeLong(anchor.elapsedRealtime);
+            out.writeLong(anchor.uncertaintyMs);
+            out.writeUTF(anchor.bootId);
+            out.writeUTF(anchor.source);
+        }
+        ClockDriftModel.Snapshot drift = state.drift;
+        out.writeBoolean(drift != null);
+        if (drift != null) {
+            out.writeLong(drift.originTime);
+            out.writeLong(drift.originOffset);
+            out.writeLong(drift.lastObservationTime);
+            out.writeInt(drift.count);
+            out.writeDouble(drift.sumW);
+            out.writeDouble(drift.sumX);
+            out.writeDouble(drift.sumY);
+            out.writeDouble(drift.sumXX);
+            out.writeDouble(drift.sumXY);
+            out.writeDouble(drift.sumYY);
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(bytes.toByteArray());
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * @return State nếu slot hợp lệ (magic, version, CRC), null nếu thiếu/hỏng
+     */
+    private static State readSlot(File file, long[] generationOut) {
+        if (!file.exists() || file.length() < 12 || file.length() > MAX_FILE_SIZE) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = fis.read(data, read, data.length - read);
+                    if (n < 0) return null;
+                    read += n;
+                }
+            } finally {
+                fis.close();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 4);
+            int stored = ((data[data.length - 4] & 0xff) << 24) | ((data[data.length - 3] & 0xff) << 16)
+                | ((data[data.length - 2] & 0xff) << 8) | (data[data.length - 1] & 0xff);
+            if (stored != (int) crc.getValue()) {
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                return null;
+            }
+            generationOut[0] = in.readLong();
+            int reliabilityValue = in.readInt();
+            int lastBootCount = in.readInt();
+            long lastLegalTime = in.readLong();
+            long networkRealTime = in.readLong();
+            String lastBootId = in.readUTF();
+            TrustedClock.Anchor anchor = null;
+            if (version >= 2 && in.readBoolean()) {
+                anchor = new TrustedClock.Anchor(in.readLong(), in.readLong(), in.readLong(),
+                    in.readUTF(), in.readUTF());
+            }
+            ClockDriftModel.Snapshot drift = null;
+            if (version >= 3 && in.readBoolean()) {
+                drift = new ClockDriftModel.Snapshot(in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                    in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble());
+            }
+            return new State(reliabilityValue, lastBootId, lastBootCount, lastLegalTime, networkRealTime,
+                anchor, drift);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.dell.timekeeping.anticheat;
+
+/**
+ * Đánh giá tính hợp lý của quỹ đạo - phát hiện dịch chuyển tức thời / tốc độ bất khả thi
+ * Mỗi fix được so với trạng thái trước đó trong O(1) thời gian và bộ nhớ:
+ *  - Bộ lọc Kalman đơn giản (phương sai đẳng hướng theo mét) làm mượt vị trí
+ *  - Tốc độ ngụ ý và gia tốc so với ngưỡng vật lý và tốc độ thiết bị báo
+ *  - Nhảy vị trí khi đổi giữa GPS và network provider
+ * Không thread-safe: chỉ gọi từ location pipeline thread.
+ */
+public class TrajectoryEngine {
+
+    private static final double EARTH_RADIUS_M = 6371008.8;
+
+    // Ngưỡng vật lý
+    private static final double MAX_PLAUSIBLE_SPEED_MPS = 70.0;   // ~250 km/h
+    private static final double TELEPORT_SPEED_MPS = 300.0;       // ~1080 km/h
+    private static final double MAX_PLAUSIBLE_ACCEL_MPS2 = 12.0;
+    private static final double SPEED_MISMATCH_MIN_MPS = 10.0;
+    private static final double PROVIDER_JUMP_FACTOR = 3.0;
+    private static final long PROVIDER_JUMP_WINDOW_NANOS = 30_000_000_000L; // 30 giây
+
+    // Khoảng trống quá lâu thì bắt đầu lại, không phạt
+    private static final long MAX_GAP_NANOS = 5 * 60 * 1_000_000_000L;
+    // Số fix bất thường liên tiếp trước khi chấp nhận vị trí mới (đổi vị trí thật sau khi mất tín hiệu)
+    private static final int MAX_CONSECUTIVE_REJECTS = 3;
+
+    // Nhiễu quá trình của bộ lọc (m/s)
+    private static final double PROCESS_NOISE_MPS = 3.0;
+    private static final float MIN_ACCURACY_M = 1f;
+
+    // Điểm trừ
+    public static final int PENALTY_TELEPORT = 60;
+    public static final int PENALTY_IMPOSSIBLE_SPEED = 40;
+    public static final int PENALTY_IMPOSSIBLE_ACCELERATION = 20;
+    public static final int PENALTY_SPEED_MISMATCH = 15;
+    public static final int PENALTY_PROVIDER_JUMP = 25;
+
+    // Trạng thái trước đó
+    private boolean hasState = false;
+    private double filteredLat;
+    private double filteredLng;
+    private double variance;        // m²
+    private long lastNanos;
+    private double lastSpeedMps;
+    private boolean lastIsGps;
+    private float lastAccuracy;
+    private int consecutiveRejects;
+
+    // Kết quả của lần evaluate gần nhất
+    private int lastWarningFlags;
+    private float lastImpliedSpeedMps = Float.NaN;
+
+    /**
+     * Đánh giá một fix mới.
+     *
+     * @param elapsedNanos thời điểm fix theo elapsedRealtimeNanos (không phụ thuộc giờ hệ thống)
+     * @return tổng điểm trừ cho fix này
+     */
+    public int evaluate(double lat, double lng, float accuracy, boolean hasSpeed, float speedMps,
+                        boolean isGps, long elapsedNanos) {
+        lastWarningFlags = 0;
+        lastImpliedSpeedMps = Float.NaN;
+        float acc = Math.max(MIN_ACCURACY_M, accuracy);
+
+        if (!hasState || elapsedNanos - lastNanos > MAX_GAP_NANOS) {
+            reset(lat, lng, acc, hasSpeed ? speedMps : 0, isGps, elapsedNanos);
+            return 0;
+        }
+        if (elapsedNanos <= lastNanos) {
+            // Fix đến trễ (cũ hơn trạng thái hiện tại) - bỏ qua
+            return 0;
+        }
+
+        double dt = (elapsedNanos - lastNanos) / 1e9;
+
+        // Predict
+        double predictedVariance = variance + dt * PROCESS_NOISE_MPS * PROCESS_NOISE_MPS;
+
+        // Khoảng cách tới vị trí đã lọc, trừ đi phần sai số của cả hai
+        double distance = distanceMeters(filteredLat, filteredLng, lat, lng);
+        double uncertainty = Math.sqrt(predictedVariance) + acc;
+        double effectiveDistance = Math.max(0, distance - uncertainty);
+        double impliedSpeed = effectiveDistance / dt;
+        lastImpliedSpeedMps = (float) impliedSpeed;
+
+        int penalty = 0;
+        int flags = 0;
+
+        if (impliedSpeed > TELEPORT_SPEED_MPS) {
+            penalty += PENALTY_TELEPORT;
+            flags |= LocationSample.WARN_TELEPORT;
+        } else if (impliedSpeed > MAX_PLAUSIBLE_SPEED_MPS) {
+            penalty += PENALTY_IMPOSSIBLE_SPEED;
+            flags |= LocationSample.WARN_IMPOSSIBLE_SPEED;
+        } else if ((impliedSpeed - lastSpeedMps) / dt > MAX_PLAUSIBLE_ACCEL_MPS2) {
+            penalty += PENALTY_IMPOSSIBLE_ACCELERATION;
+            flags |= LocationSample.WARN_IMPOSSIBLE_ACCELERATION;
+        }
+
+        // Thiết bị báo đứng yên/chậm nhưng vị trí nhảy xa (hoặc ngược lại)
+        if (hasSpeed && Math.abs(impliedSpeed - speedMps) > Math.max(SPEED_MISMATCH_MIN_MPS, 2 * speedMps)) {
+            penalty += PENALTY_SPEED_MISMATCH;
+            flags |= LocationSample.WARN_SPEED_MISMATCH;
+        }
+
+        // Nhảy giữa GPS và network: hai nguồn phải chồng lấn vùng sai số
+        if (isGps != lastIsGps && elapsedNanos - lastNanos < PROVIDER_JUMP_WINDOW_NANOS
+                && distance > PROVIDER_JUMP_FACTOR * (acc + lastAccuracy)) {
+            penalty += PENALTY_PROVIDER_JUMP;
+            flags |= LocationSample.WARN_PROVIDER_JUMP;
+        }
+
+        boolean implausible = (flags & (LocationSample.WARN_TELEPORT | LocationSample.WARN_IMPOSSIBLE_SPEED)) != 0;
+        if (implausible) {
+            // Không đưa fix bất thường vào bộ lọc: giữ nguyên phương sai và mốc thời gian của fix
+            // được chấp nhận cuối, để lần predict sau phủ trọn khoảng dt đúng một lần
+            if (++consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+                reset(lat, lng, acc, hasSpeed ? speedMps : 0, isGps, elapsedNanos);
+            }
+        } else {
+            // Update
+            double gain = predictedVariance / (predictedVariance + (double) acc * acc);
+            filteredLat += gain * (lat - filteredLat);
+            filteredLng += gain * (lng - filteredLng);
+            variance = (1 - gain) * predictedVariance;
+            lastNanos = elapsedNanos;
+            lastSpeedMps = impliedSpeed;
+            lastIsGps = isGps;
+            lastAccuracy = acc;
+            consecutiveRejects = 0;
+        }
+
+        lastWarningFlags = flags;
+        return penalty;
+    }
+
+    public void reset() {
+        hasState = false;
+        consecutiveRejects = 0;
+    }
+
+    private void reset(double lat, double lng, float acc, double speedMps, boolean isGps, long elapsedNanos) {
+        hasState = true;
+        filteredLat = lat;
+        filteredLng = lng;
+        variance = (double) acc * acc;
+        lastNanos = elapsedNanos;
+        lastSpeedMps = speedMps;
+        lastIsGps = isGps;
+        lastAccuracy = acc;
+        consecutiveRejects = 0;
+    }
+
+    public int getLastWarningFlags() {
+        return lastWarningFlags;
+    }
+
+    public float getLastImpliedSpeedMps() {
+        return lastImpliedSpeedMps;
+    }
+
+    public double getFilteredLatitude() {
+        return filteredLat;
+    }
+
+    public double getFilteredLongitude() {
+        return filteredLng;
+    }
+
+    /**
+     * Khoảng cách xấp xỉ equirectangular - đủ chính xác cho các bước vài km, không cấp phát
+     */
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double x = Math.toRadians(lng2 - lng1) * Math.cos((phi1 + phi2) / 2);
+        double y = phi2 - phi1;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_M;
+    }
+}
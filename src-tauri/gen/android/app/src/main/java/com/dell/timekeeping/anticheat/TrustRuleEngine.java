@@ -0,0 +1,503 @@
+package com.dell.timekeeping.anticheat;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Luật chấm điểm tin cậy cho vị trí và thời gian, nạp được từ config server
+ * Mỗi luật: các điều kiện AND trên tín hiệu (signal op value) + trọng số cộng vào điểm,
+ * cờ cảnh báo, verdict tối thiểu và tuỳ chọn terminal (khớp là dừng, verdict đã quyết).
+ * Khi nạp, luật được biên dịch thành các mảng phẳng sắp theo chi phí tín hiệu tăng dần;
+ * evaluate() chỉ duyệt mảng primitive và trả kết quả gói trong một long, không cấp phát.
+ * Bộ luật đang dùng là snapshot immutable, đổi nguyên khối qua AtomicReference.
+ */
+public final class TrustRuleEngine {
+
+    private static final String TAG = "TrustRuleEngine";
+
+    public static final int DOMAIN_LOCATION = 0;
+    public static final int DOMAIN_TIME = 1;
+
+    public static final int VERDICT_PASS = 0;
+    public static final int VERDICT_SUSPICIOUS = 1;
+    public static final int VERDICT_REJECT = 2;
+    private static final String[] VERDICT_NAMES = {"pass", "suspicious", "reject"};
+
+    // =============== TÍN HIỆU VỊ TRÍ ===============
+    public static final int LOC_MOCK_PROVIDER = 0;
+    public static final int LOC_GPS_PROVIDER = 1;
+    public static final int LOC_SATELLITES = 2;
+    public static final int LOC_ALTITUDE_MISSING = 3;
+    public static final int LOC_ACCURACY_M = 4;
+    public static final int LOC_IMPLIED_SPEED_MPS = 5;
+    public static final int LOC_TELEPORT = 6;
+    public static final int LOC_IMPOSSIBLE_SPEED = 7;
+    public static final int LOC_IMPOSSIBLE_ACCELERATION = 8;
+    public static final int LOC_SPEED_MISMATCH = 9;
+    public static final int LOC_PROVIDER_JUMP = 10;
+
+    private static final String[] LOCATION_SIGNALS = {
+        "mockProvider", "gpsProvider", "satellites", "altitudeMissing", "accuracyM", "impliedSpeedMps",
+        "teleport", "impossibleSpeed", "impossibleAcceleration", "speedMismatch", "providerJump"
+    };
+    // Chi phí tương đối để lấy tín hiệu: trường có sẵn < tra Bundle < kết quả bộ lọc quỹ đạo
+    private static final int[] LOCATION_SIGNAL_COSTS = {1, 1, 2, 1, 1, 3, 3, 3, 3, 3, 3};
+
+    // =============== TÍN HIỆU THỜI GIAN ===============
+    public static final int TIME_RELIABILITY = 0;
+    public static final int TIME_REBOOTED = 1;
+    public static final int TIME_CLEARED = 2;
+    public static final int TIME_REBOOTED_OR_CLEARED = 3;
+    public static final int TIME_AUTO_TIME_OFF = 4;
+    public static final int TIME_AUTO_TIME_ZONE_OFF = 5;
+    public static final int TIME_AUTO_SETTING_OFF = 6;
+    public static final int TIME_DRIFT_READY = 7;
+    public static final int TIME_SKEW_MS = 8;
+    // Phần lệch (đã trừ trôi) vượt quá ngưỡng hiện hành (60 giây hoặc ngưỡng thích ứng)
+    public static final int TIME_SKEW_EXCESS_MS = 9;
+
+    private static final String[] TIME_SIGNALS = {
+        "reliability", "rebooted", "cleared", "rebootedOrCleared", "autoTimeOff", "autoTimeZoneOff",
+        "autoSettingOff", "driftReady", "skewMs", "skewExcessMs"
+    };
+    // Trạng thái trong bộ nhớ < đọc Settings < tính từ đồng hồ tin cậy + mô hình trôi
+    private static final int[] TIME_SIGNAL_COSTS = {1, 1, 1, 1, 2, 2, 2, 3, 4, 4};
+
+    private static final int OP_GT = 0;
+    private static final int OP_GE = 1;
+    private static final int OP_LT = 2;
+    private static final int OP_LE = 3;
+    private static final int OP_EQ = 4;
+    private static final int OP_NE = 5;
+    private static final String[] OP_NAMES = {"gt", "ge", "lt", "le", "eq", "ne"};
+
+    // Kết quả gói trong long: [0,16) điểm (có dấu) | [16,48) cờ | [48,50) verdict | [50,64) luật quyết định + 1
+    private static final int SCORE_BITS = 16;
+    private static final int FLAGS_SHIFT = 16;
+    private static final int VERDICT_SHIFT = 48;
+    private static final int RULE_SHIFT = 50;
+    private static final int MAX_RULES = (1 << (64 - RULE_SHIFT)) - 2;
+    private static final int MIN_SCORE = -(1 << (SCORE_BITS - 1));
+    private static final int MAX_SCORE = (1 << (SCORE_BITS - 1)) - 1;
+
+    /**
+     * Nguồn tín hiệu cho một lần đánh giá. evaluate() chỉ hỏi những tín hiệu mà luật cần,
+     * theo thứ tự rẻ trước; boolean trả về 1/0.
+     */
+    public interface Signals {
+        double get(int signal);
+    }
+
+    /**
+     * Bộ luật đã biên dịch (immutable). Luật i dùng các điều kiện [condEnd[i-1], condEnd[i]).
+     */
+    public static final class RuleSet {
+        public final int domain;
+        public final String version;
+        final int baseScore;
+        final int suspiciousBelow;
+        final int rejectAtOrBelow;
+
+        final String[] ruleIds;
+        final int[] condEnd;
+        final int[] condSignal;
+        final int[] condOp;
+        final double[] condValue;
+        final int[] weight;
+        final int[] flags;
+        final int[] minVerdict;
+        final boolean[] terminal;
+
+        private RuleSet(int domain, String version, int baseScore, int suspiciousBelow, int rejectAtOrBelow,
+                        String[] ruleIds, int[] condEnd, int[] condSignal, int[] condOp, double[] condValue,
+                        int[] weight, int[] flags, int[] minVerdict, boolean[] terminal) {
+            this.domain = domain;
+            this.version = version;
+            this.baseScore = baseScore;
+            this.suspiciousBelow = suspiciousBelow;
+            this.rejectAtOrBelow = rejectAtOrBelow;
+            this.ruleIds = ruleIds;
+            this.condEnd = condEnd;
+            this.condSignal = condSignal;
+            this.condOp = condOp;
+            this.condValue = condValue;
+            this.weight = weight;
+            this.flags = flags;
+            this.minVerdict = minVerdict;
+            this.terminal = terminal;
+        }
+
+        public int size() {
+            return ruleIds.length;
+        }
+
+        /**
+         * Đánh giá toàn bộ luật theo thứ tự đã biên dịch, dừng ở luật terminal đầu tiên khớp
+         * @return kết quả gói, đọc bằng score()/flags()/verdict()/decidingRule()
+         */
+        public long evaluate(Signals signals) {
+            int score = baseScore;
+            int warningFlags = 0;
+            int verdict = VERDICT_PASS;
+            int decidingRule = -1;
+            int cond = 0;
+            for (int rule = 0; rule < condEnd.length; rule++) {
+                int end = condEnd[rule];
+                boolean matched = true;
+                for (; cond < end; cond++) {
+                    if (!test(condOp[cond], signals.get(condSignal[cond]), condValue[cond])) {
+                        matched = false;
+                        break;
+                    }
+                }
+                cond = end;
+                if (!matched) {
+                    continue;
+                }
+                score += weight[rule];
+                warningFlags |= flags[rule];
+                if (minVerdict[rule] > verdict) {
+                    verdict = minVerdict[rule];
+                    decidingRule = rule;
+                }
+                if (terminal[rule]) {
+                    decidingRule = rule;
+                    break;
+                }
+            }
+            int byScore = score <= rejectAtOrBelow ? VERDICT_REJECT
+                : score < suspiciousBelow ? VERDICT_SUSPICIOUS : VERDICT_PASS;
+            if (byScore > verdict) {
+                verdict = byScore;
+                decidingRule = -1;
+            }
+            return pack(score, warningFlags, verdict, decidingRule);
+        }
+
+        // Id của luật, null nếu verdict do ngưỡng điểm quyết định
+        public String ruleId(int index) {
+            return index >= 0 && index < ruleIds.length ? ruleIds[index] : null;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("version", version);
+            map.put("ruleCount", ruleIds.length);
+            map.put("conditionCount", condSignal.length);
+            map.put("baseScore", baseScore);
+            map.put("suspiciousBelow", suspiciousBelow);
+            map.put("rejectAtOrBelow", rejectAtOrBelow);
+            // Thứ tự đánh giá sau khi biên dịch
+            map.put("order", Arrays.asList(ruleIds));
+            return map;
+        }
+    }
+
+    private static boolean test(int op, double signal, double value) {
+        switch (op) {
+            case OP_GT: return signal > value;
+            case OP_GE: return signal >= value;
+            case OP_LT: return signal < value;
+            case OP_LE: return signal <= value;
+            case OP_EQ: return signal == value;
+            default: return signal != value;
+        }
+    }
+
+    static long pack(int score, int warningFlags, int verdict, int decidingRule) {
+        int clamped = Math.max(MIN_SCORE, Math.min(MAX_SCORE, score));
+        return (clamped & 0xFFFFL)
+            | ((warningFlags & 0xFFFFFFFFL) << FLAGS_SHIFT)
+            | ((long) verdict << VERDICT_SHIFT)
+            | ((long) (decidingRule + 1) << RULE_SHIFT);
+    }
+
+    public static int score(long result) {
+        return (short) result;
+    }
+
+    public static int flags(long result) {
+        return (int) (result >>> FLAGS_SHIFT);
+    }
+
+    public static int verdict(long result) {
+        return (int) (result >>> VERDICT_SHIFT) & 0x3;
+    }
+
+    // Chỉ số luật (theo thứ tự biên dịch) đã quyết định verdict, -1 nếu do ngưỡng điểm
+    public static int decidingRule(long result) {
+        return (int) (result >>> RULE_SHIFT) - 1;
+    }
+
+    // =============== BIÊN DỊCH ===============
+
+    // Một luật trước khi biên dịch (chỉ dùng lúc nạp)
+    private static final class RuleSpec {
+        final String id;
+        final int[] signals;
+        final int[] ops;
+        final double[] values;
+        final int weight;
+        final int flags;
+        final int minVerdict;
+        final boolean terminal;
+        int cost;
+
+        RuleSpec(String id, int[] signals, int[] ops, double[] values,
+                 int weight, int flags, int minVerdict, boolean terminal) {
+            this.id = id;
+            this.signals = signals;
+            this.ops = ops;
+            this.values = values;
+            this.weight = weight;
+            this.flags = flags;
+            this.minVerdict = minVerdict;
+            this.terminal = terminal;
+        }
+    }
+
+    private static RuleSpec rule(String id, int signal, int op, double value, int weight, int flags) {
+        return new RuleSpec(id, new int[]{signal}, new int[]{op}, new double[]{value},
+            weight, flags, VERDICT_PASS, false);
+    }
+
+    private static int[] costsOf(int domain) {
+        return domain == DOMAIN_LOCATION ? LOCATION_SIGNAL_COSTS : TIME_SIGNAL_COSTS;
+    }
+
+    private static String[] signalsOf(int domain) {
+        return domain == DOMAIN_LOCATION ? LOCATION_SIGNALS : TIME_SIGNALS;
+    }
+
+    private static RuleSet compile(int domain, String version, int baseScore, int suspiciousBelow,
+                                   int rejectAtOrBelow, List<RuleSpec> specs) {
+        int[] costs = costsOf(domain);
+        int conditionCount = 0;
+        for (RuleSpec spec : specs) {
+            spec.cost = 0;
+            for (int signal : spec.signals) {
+                spec.cost += costs[signal];
+            }
+            conditionCount += spec.signals.length;
+        }
+        // Sắp ổn định: cùng chi phí thì giữ thứ tự trong config
+        List<RuleSpec> ordered = new ArrayList<>(specs);
+        Collections.sort(ordered, new Comparator<RuleSpec>() {
+            @Override
+            public int compare(RuleSpec a, RuleSpec b) {
+                return a.cost < b.cost ? -1 : (a.cost == b.cost ? 0 : 1);
+            }
+        });
+
+        int n = ordered.size();
+        String[] ruleIds = new String[n];
+        int[] condEnd = new int[n];
+        int[] condSignal = new int[conditionCount];
+        int[] condOp = new int[conditionCount];
+        double[] condValue = new double[conditionCount];
+        int[] weight = new int[n];
+        int[] flags = new int[n];
+        int[] minVerdict = new int[n];
+        boolean[] terminal = new boolean[n];
+
+        int cond = 0;
+        for (int i = 0; i < n; i++) {
+            RuleSpec spec = ordered.get(i);
+            // Trong một luật, điều kiện rẻ nhất kiểm tra trước để AND ngắt sớm
+            Integer[] order = new Integer[spec.signals.length];
+            for (int c = 0; c < order.length; c++) {
+                order[c] = c;
+            }
+            final RuleSpec current = spec;
+            final int[] signalCosts = costs;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int ca = signalCosts[current.signals[a]];
+                    int cb = signalCosts[current.signals[b]];
+                    return ca < cb ? -1 : (ca == cb ? 0 : 1);
+                }
+            });
+            for (int c : order) {
+                condSignal[cond] = spec.signals[c];
+                condOp[cond] = spec.ops[c];
+                condValue[cond] = spec.values[c];
+                cond++;
+            }
+            condEnd[i] = cond;
+            ruleIds[i] = spec.id;
+            weight[i] = spec.weight;
+            flags[i] = spec.flags;
+            minVerdict[i] = spec.minVerdict;
+            terminal[i] = spec.terminal;
+        }
+        return new RuleSet(domain, version, baseScore, suspiciousBelow, rejectAtOrBelow,
+            ruleIds, condEnd, condSignal, condOp, condValue, weight, flags, minVerdict, terminal);
+    }
+
+    /**
+     * Biên dịch một domain từ JSON:
+     * {"baseScore":100,"suspiciousBelow":50,"rejectAtOrBelow":0,
+     *  "rules":[{"id","when":[{"signal","op":"gt|ge|lt|le|eq|ne","value"}],
+     *            "weight","flags","verdict":"pass|suspicious|reject","terminal"}]}
+     */
+    static RuleSet fromJson(int domain, String version, JSONObject config) throws JSONException {
+        String[] signalNames = signalsOf(domain);
+        JSONArray rules = config.getJSONArray("rules");
+        if (rules.length() > MAX_RULES) {
+            throw new JSONException("Too many rules: " + rules.length());
+        }
+        List<RuleSpec> specs = new ArrayList<>(rules.length());
+        for (int i = 0; i < rules.length(); i++) {
+            JSONObject item = rules.getJSONObject(i);
+            String id = item.optString("id", "rule" + i);
+            JSONArray when = item.optJSONArray("when");
+            int count = when != null ? when.length() : 0;
+            int[] signals = new int[count];
+            int[] ops = new int[count];
+            double[] values = new double[count];
+            for (int c = 0; c < count; c++) {
+                JSONObject condition = when.getJSONObject(c);
+                signals[c] = indexOf(signalNames, condition.getString("signal"), "signal", id);
+                ops[c] = indexOf(OP_NAMES, condition.optString("op", "eq"), "op", id);
+                values[c] = condition.getDouble("value");
+            }
+            int verdict = item.has("verdict")
+                ? indexOf(VERDICT_NAMES, item.getString("verdict"), "verdict", id) : VERDICT_PASS;
+            specs.add(new RuleSpec(id, signals, ops, values, item.optInt("weight", 0), item.optInt("flags", 0),
+                verdict, item.optBoolean("terminal", false)));
+        }
+        return compile(domain, version, config.optInt("baseScore", 100), config.optInt("suspiciousBelow", 50),
+            config.optInt("rejectAtOrBelow", 0), specs);
+    }
+
+    private static int indexOf(String[] names, String name, String kind, String ruleId) throws JSONException {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new JSONException("Unknown " + kind + " '" + name + "' in rule " + ruleId);
+    }
+
+    // =============== BỘ LUẬT MẶC ĐỊNH (giữ nguyên hành vi cũ) ===============
+
+    static RuleSet defaultLocationRules() {
+        List<RuleSpec> specs = new ArrayList<>();
+        // Mock provider: FAKE ngay, không cần xét tiếp
+        specs.add(new RuleSpec("mockProvider", new int[]{LOC_MOCK_PROVIDER}, new int[]{OP_EQ}, new double[]{1},
+            -100, LocationSample.WARN_MOCK_PROVIDER, VERDICT_REJECT, true));
+        specs.add(new RuleSpec("gpsNoSatellites", new int[]{LOC_GPS_PROVIDER, LOC_SATELLITES},
+            new int[]{OP_EQ, OP_EQ}, new double[]{1, 0},
+            -50, LocationSample.WARN_GPS_NO_SATELLITES, VERDICT_PASS, false));
+        specs.add(new RuleSpec("lowSatellites", new int[]{LOC_SATELLITES, LOC_SATELLITES},
+            new int[]{OP_GT, OP_LT}, new double[]{0, 4},
+            -20, LocationSample.WARN_LOW_SATELLITES, VERDICT_PASS, false));
+        specs.add(rule("noAltitude", LOC_ALTITUDE_MISSING, OP_EQ, 1, -5, LocationSample.WARN_NO_ALTITUDE));
+        specs.add(rule("teleport", LOC_TELEPORT, OP_EQ, 1,
+            -TrajectoryEngine.PENALTY_TELEPORT, LocationSample.WARN_TELEPORT));
+        specs.add(rule("impossibleSpeed", LOC_IMPOSSIBLE_SPEED, OP_EQ, 1,
+            -TrajectoryEngine.PENALTY_IMPOSSIBLE_SPEED, LocationSample.WARN_IMPOSSIBLE_SPEED));
+        specs.add(rule("impossibleAcceleration", LOC_IMPOSSIBLE_ACCELERATION, OP_EQ, 1,
+            -TrajectoryEngine.PENALTY_IMPOSSIBLE_ACCELERATION, LocationSample.WARN_IMPOSSIBLE_ACCELERATION));
+        specs.add(rule("speedMismatch", LOC_SPEED_MISMATCH, OP_EQ, 1,
+            -TrajectoryEngine.PENALTY_SPEED_MISMATCH, LocationSample.WARN_SPEED_MISMATCH));
+        specs.add(rule("providerJump", LOC_PROVIDER_JUMP, OP_EQ, 1,
+            -TrajectoryEngine.PENALTY_PROVIDER_JUMP, LocationSample.WARN_PROVIDER_JUMP));
+        return compile(DOMAIN_LOCATION, "default", 100, 50, 0, specs);
+    }
+
+    static RuleSet defaultTimeRules() {
+        List<RuleSpec> specs = new ArrayList<>();
+        // Cùng chi phí với luật reboot nên giữ thứ tự này: lệch giờ được báo trước như trước đây
+        specs.add(new RuleSpec("timeSkew", new int[]{TIME_SKEW_EXCESS_MS}, new int[]{OP_GT}, new double[]{0},
+            -100, 0, VERDICT_REJECT, true));
+        // Reboot/xoá dữ liệu + tắt giờ tự động, điểm tin cậy không cao
+        specs.add(new RuleSpec("rebootWithAutoTimeOff",
+            new int[]{TIME_REBOOTED_OR_CLEARED, TIME_AUTO_SETTING_OFF, TIME_RELIABILITY},
+            new int[]{OP_EQ, OP_EQ, OP_LE}, new double[]{1, 1, 90},
+            -100, 0, VERDICT_REJECT, true));
+        return compile(DOMAIN_TIME, "default", 100, 50, 0, specs);
+    }
+
+    // =============== BỘ LUẬT ĐANG DÙNG ===============
+
+    private static final class Active {
+        final RuleSet location;
+        final RuleSet time;
+
+        Active(RuleSet location, RuleSet time) {
+            this.location = location;
+            this.time = time;
+        }
+    }
+
+    private static final Active DEFAULTS = new Active(defaultLocationRules(), defaultTimeRules());
+
+    private static final AtomicReference<Active> ACTIVE = new AtomicReference<>(DEFAULTS);
+    // Bộ luật nạp từ server gần nhất; chỉ có hiệu lực khi remote config bật
+    private static Active remote;
+    private static boolean remoteEnabled = true;
+
+    public static RuleSet locationRules() {
+        return ACTIVE.get().location;
+    }
+
+    public static RuleSet timeRules() {
+        return ACTIVE.get().time;
+    }
+
+    /**
+     * Nạp bộ luật từ config server: {"version","location":{...},"time":{...}}
+     * Domain nào không có trong config thì giữ luật mặc định. Lỗi ở bất kỳ luật nào
+     * thì cả config bị bỏ, bộ luật đang dùng không đổi.
+     * @return số luật đã nạp
+     */
+    public static synchronized int load(String json) throws JSONException {
+        JSONObject config = new JSONObject(json);
+        String version = config.optString("version", "remote");
+        JSONObject location = config.optJSONObject("location");
+        JSONObject time = config.optJSONObject("time");
+        Active loaded = new Active(
+            location != null ? fromJson(DOMAIN_LOCATION, version, location) : DEFAULTS.location,
+            time != null ? fromJson(DOMAIN_TIME, version, time) : DEFAULTS.time);
+        remote = loaded;
+        if (remoteEnabled) {
+            ACTIVE.set(loaded);
+        }
+        Log.d(TAG, "Rules loaded: version=" + version + ", location=" + loaded.location.size()
+            + ", time=" + loaded.time.size() + ", active=" + remoteEnabled);
+        return loaded.location.size() + loaded.time.size();
+    }
+
+    // Tắt remote config thì quay về luật mặc định; bật lại dùng bộ luật đã nạp (nếu có)
+    public static synchronized void setRemoteEnabled(boolean enabled) {
+        remoteEnabled = enabled;
+        ACTIVE.set(enabled && remote != null ? remote : DEFAULTS);
+    }
+
+    public static synchronized void reset() {
+        remote = null;
+        ACTIVE.set(DEFAULTS);
+    }
+
+    public static Map<String, Object> getStats() {
+        Active active = ACTIVE.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("location", active.location.toMap());
+        stats.put("time", active.time.toMap());
+        stats.put("remote", active != DEFAULTS);
+        return stats;
+    }
+}
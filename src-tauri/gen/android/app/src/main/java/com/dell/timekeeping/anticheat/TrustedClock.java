@@ -0,0 +1,170 @@
+package com.dell.timekeeping.anticheat;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Đồng hồ tin cậy neo theo cặp (giờ mạng, elapsedRealtime)
+ * now = giờ mạng lúc neo + thời gian đơn điệu đã trôi qua kể từ lúc neo:
+ * O(1), không gọi mạng, không bị ảnh hưởng khi người dùng chỉnh giờ hệ thống.
+ * Sai số = sai số lúc neo + trôi tần số (DRIFT_PPM) theo thời gian kể từ lúc neo.
+ * Anchor chỉ hợp lệ trong cùng một phiên boot (elapsedRealtime reset khi reboot).
+ */
+public final class TrustedClock {
+
+    // Trôi tối đa của đồng hồ đơn điệu (thạch anh + deep sleep), phần triệu
+    private static final long DRIFT_PPM = 100;
+    public static final long DEFAULT_SYNC_UNCERTAINTY_MS = 1000;
+
+    public static final String LOST_NONE = "";
+    public static final String LOST_NEVER_SYNCED = "neverSynced";
+    public static final String LOST_REBOOT = "reboot";
+
+    /**
+     * Anchor đã neo (immutable)
+     */
+    public static final class Anchor {
+        public final long networkTime;
+        public final long elapsedRealtime;
+        public final long uncertaintyMs;
+        public final String bootId;
+        public final String source;
+
+        Anchor(long networkTime, long elapsedRealtime, long uncertaintyMs, String bootId, String source) {
+            this.networkTime = networkTime;
+            this.elapsedRealtime = elapsedRealtime;
+            this.uncertaintyMs = uncertaintyMs;
+            this.bootId = bootId != null ? bootId : "";
+            this.source = source != null ? source : "";
+        }
+    }
+
+    /**
+     * Một lần đọc đồng hồ
+     */
+    public static final class Reading {
+        public final boolean anchored;
+        // Giờ tin cậy (ms), bằng giờ hệ thống nếu chưa neo
+        public final long timeMs;
+        public final long uncertaintyMs;
+        public final long anchorAgeMs;
+        public final long systemTime;
+        public final String source;
+        public final String lostReason;
+
+        Reading(boolean anchored, long timeMs, long uncertaintyMs, long anchorAgeMs,
+                long systemTime, String source, String lostReason) {
+            this.anchored = anchored;
+            this.timeMs = timeMs;
+            this.uncertaintyMs = uncertaintyMs;
+            this.anchorAgeMs = anchorAgeMs;
+            this.systemTime = systemTime;
+            this.source = source;
+            this.lostReason = lostReason;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("anchored", anchored);
+            map.put("trustedTime", timeMs);
+            map.put("uncertaintyMs", uncertaintyMs);
+            map.put("anchorAgeMs", anchorAgeMs);
+            map.put("systemTime", systemTime);
+            map.put("systemOffsetMs", anchored ? systemTime - timeMs : 0);
+            map.put("source", source);
+            map.put("anchorLost", !anchored);
+            map.put("lostReason", lostReason);
+            return map;
+        }
+    }
+
+    private final String currentBootId;
+    private volatile Anchor anchor;
+    // Anchor của phiên boot trước - vẫn lưu lại để các lần mở app sau còn báo được LOST_REBOOT
+    private volatile Anchor staleAnchor;
+    private volatile String lostReason = LOST_NEVER_SYNCED;
+
+    public TrustedClock(BootSession bootSession) {
+        this.currentBootId = bootSession.bootId;
+    }
+
+    /**
+     * Khôi phục anchor đã lưu; bỏ nếu thuộc phiên boot khác
+     */
+    public void restore(Anchor saved) {
+        if (saved == null || saved.networkTime <= 0) {
+            lostReason = LOST_NEVER_SYNCED;
+            return;
+        }
+        boolean sameBoot = !currentBootId.isEmpty() && currentBootId.equals(saved.bootId)
+            && saved.elapsedRealtime <= SystemClock.elapsedRealtime();
+        if (sameBoot) {
+            anchor = saved;
+            lostReason = LOST_NONE;
+        } else {
+            staleAnchor = saved;
+            lostReason = LOST_REBOOT;
+        }
+    }
+
+    /**
+     * Neo theo giờ mạng vừa nhận. Anchor cũ được giữ nếu sai số hiện tại của nó vẫn nhỏ hơn.
+     * @return true nếu anchor được thay
+     */
+    public synchronized boolean anchor(long networkTime, long uncertaintyMs, String source) {
+        long elapsed = SystemClock.elapsedRealtime();
+        long uncertainty = Math.max(0, uncertaintyMs);
+        Anchor current = anchor;
+        if (current != null && projectedUncertainty(current, elapsed) < uncertainty) {
+            return false;
+        }
+        anchor = new Anchor(networkTime, elapsed, uncertainty, currentBootId, source);
+        lostReason = LOST_NONE;
+        return true;
+    }
+
+    public Anchor getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * Anchor cần lưu: anchor hiện tại, hoặc anchor cũ đã mất hiệu lực nếu chưa neo lại
+     */
+    public Anchor getPersistableAnchor() {
+        Anchor a = anchor;
+        return a != null ? a : staleAnchor;
+    }
+
+    public boolean isAnchored() {
+        return anchor != null;
+    }
+
+    /**
+     * Giờ tin cậy (ms), -1 nếu chưa neo. Không cấp phát.
+     */
+    public long currentTimeMillis() {
+        Anchor a = anchor;
+        if (a == null) {
+            return -1;
+        }
+        return a.networkTime + (SystemClock.elapsedRealtime() - a.elapsedRealtime);
+    }
+
+    public Reading now() {
+        long systemTime = System.currentTimeMillis();
+        Anchor a = anchor;
+        if (a == null) {
+            return new Reading(false, systemTime, -1, -1, systemTime, "system", lostReason);
+        }
+        long elapsed = SystemClock.elapsedRealtime();
+        long age = elapsed - a.elapsedRealtime;
+        return new Reading(true, a.networkTime + age, projectedUncertainty(a, elapsed), age,
+            systemTime, a.source, LOST_NONE);
+    }
+
+    private static long projectedUncertainty(Anchor a, long elapsedNow) {
+        return a.uncertaintyMs + (elapsedNow - a.elapsedRealtime) * DRIFT_PPM / 1_000_000L;
+    }
+}
@@ -0,0 +1,302 @@
+package com.dell.timekeeping.anticheat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upload batch của PunchQueue qua HttpServer localhost
+ */
+public class PunchQueueTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long WAIT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+    private volatile Responder responder;
+
+    private static final class Request {
+        final String contentEncoding;
+        final String idempotencyKey;
+        final String authorization;
+        final String body;
+
+        Request(String contentEncoding, String idempotencyKey, String authorization, String body) {
+            this.contentEncoding = contentEncoding;
+            this.idempotencyKey = idempotencyKey;
+            this.authorization = authorization;
+            this.body = body;
+        }
+    }
+
+    private interface Responder {
+        // Trả {status, body}
+        String[] respond(Request request);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/punches", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                if ("gzip".equals(encoding)) {
+                    in = new GZIPInputStream(in);
+                }
+                Request request = new Request(encoding,
+                    exchange.getRequestHeaders().getFirst("Idempotency-Key"),
+                    exchange.getRequestHeaders().getFirst("Authorization"),
+                    new String(readAll(in), UTF8));
+                requests.add(request);
+                String[] response = responder.respond(request);
+                byte[] body = response[1].getBytes(UTF8);
+                exchange.sendResponseHeaders(Integer.parseInt(response[0]), body.length > 0 ? body.length : -1);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/punches";
+        responder = status(200);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void uploadsGzipBatchWithIdempotencyKey() throws Exception {
+        PunchQueue queue = newQueue();
+        PunchQueue.Punch first = queue.enqueue("IN", 1000L, true, "{\"photoId\":\"p1\"}", null);
+        PunchQueue.Punch second = queue.enqueue("OUT", 2000L, false, null, null);
+
+        queue.configure(url, "token-1");
+        awaitPending(queue, 0);
+
+        assertEquals(1, requests.size());
+        Request request = requests.get(0);
+        assertEquals("gzip", request.contentEncoding);
+        assertEquals(first.idempotencyKey + ":" + second.idempotencyKey, request.idempotencyKey);
+        assertEquals("Bearer token-1", request.authorization);
+        assertTrue(request.body.startsWith("{\"punches\":["));
+        assertTrue(request.body.contains(first.idempotencyKey));
+        assertTrue(request.body.contains(second.idempotencyKey));
+        assertTrue(request.body.contains("\"photoId\":\"p1\""));
+        assertEquals(2L, queue.getStats().get("uploadedCount"));
+    }
+
+    @Test
+    public void serverErrorBacksOffAndKeepsPunches() throws Exception {
+        PunchQueue queue = newQueue();
+        queue.enqueue("IN", 1000L, true, null, null);
+        responder = status(503);
+
+        queue.configure(url, null);
+        awaitStat(queue, "consecutiveFailures", 1);
+        Thread.sleep(300);
+
+        // Không retry ngay: backoff tối thiểu vài giây
+        assertEquals(1, requests.size());
+        assertEquals(1L, queue.getPendingCount());
+        assertEquals(503, queue.getStats().get("lastHttpStatus"));
+
+        responder = status(200);
+        queue.requestFlush();
+        awaitPending(queue, 0);
+        assertEquals(2, requests.size());
+        assertEquals(0L, queue.getStats().get("rejectedCount"));
+    }
+
+    @Test
+    public void batchLevelClientErrorKeepsPunches() throws Exception {
+        PunchQueue queue = newQueue();
+        queue.enqueue("IN", 1000L, true, null, null);
+        queue.enqueue("OUT", 2000L, true, null, null);
+        responder = status(404);
+
+        queue.configure(url, null);
+        awaitStat(queue, "consecutiveFailures", 1);
+        Thread.sleep(300);
+
+        // Sai endpoint: không chia nhỏ batch và không bỏ punch nào
+        assertEquals(1, requests.size());
+        assertEquals(2L, queue.getPendingCount());
+        assertEquals(0L, queue.getStats().get("rejectedCount"));
+    }
+
+    @Test
+    public void unprocessableWithoutKeyKeepsPunches() throws Exception {
+        PunchQueue queue = newQueue();
+        queue.enqueue("IN", 1000L, true, null, null);
+        responder = new Responder() {
+            @Override
+            public String[] respond(Request request) {
+                return new String[] {"422", "{\"error\":\"schema\"}"};
+            }
+        };
+
+        queue.configure(url, null);
+        awaitStat(queue, "consecutiveFailures", 1);
+
+        assertEquals(1L, queue.getPendingCount());
+        assertEquals(0L, queue.getStats().get("rejectedCount"));
+    }
+
+    @Test
+    public void unprocessableNamingKeyDropsOnlyThatPunch() throws Exception {
+        PunchQueue queue = newQueue();
+        PunchQueue.Punch first = queue.enqueue("IN", 1000L, true, null, null);
+        final PunchQueue.Punch bad = queue.enqueue("IN", 2000L, true, null, null);
+        PunchQueue.Punch last = queue.enqueue("OUT", 3000L, true, null, null);
+        responder = new Responder() {
+            @Override
+            public String[] respond(Request request) {
+                if (request.body.contains(bad.idempotencyKey)) {
+                    return new String[] {"422", "{\"rejected\":[\"" + bad.idempotencyKey + "\"]}"};
+                }
+                return new String[] {"200", ""};
+            }
+        };
+
+        queue.configure(url, null);
+        awaitPending(queue, 0);
+
+        Map<String, Object> stats = queue.getStats();
+        assertEquals(1L, stats.get("rejectedCount"));
+        assertEquals(2L, stats.get("uploadedCount"));
+        assertTrue(acceptedContains(first.idempotencyKey));
+        assertTrue(acceptedContains(last.idempotencyKey));
+        assertFalse(acceptedContains(bad.idempotencyKey));
+    }
+
+    @Test
+    public void conflictAcksOnlySingleRecordBatch() throws Exception {
+        PunchQueue queue = newQueue();
+        final PunchQueue.Punch duplicate = queue.enqueue("IN", 1000L, true, null, null);
+        PunchQueue.Punch fresh = queue.enqueue("OUT", 2000L, true, null, null);
+        // Server đã có duplicate từ lần gửi trước và trả 409 cho mọi batch chứa nó
+        responder = new Responder() {
+            @Override
+            public String[] respond(Request request) {
+                return request.body.contains(duplicate.idempotencyKey)
+                    ? new String[] {"409", ""} : new String[] {"200", ""};
+            }
+        };
+
+        queue.configure(url, null);
+        awaitPending(queue, 0);
+
+        assertTrue(acceptedContains(fresh.idempotencyKey));
+        Map<String, Object> stats = queue.getStats();
+        assertEquals(0L, stats.get("rejectedCount"));
+        assertEquals(2L, stats.get("uploadedCount"));
+    }
+
+    @Test
+    public void stopsAtCorruptRecordInsteadOfDecodingIt() throws Exception {
+        File dir = folder.newFolder();
+        PunchQueue queue = new PunchQueue(null, dir);
+        PunchQueue.Punch first = queue.enqueue("IN", 1000L, true, null, null);
+        PunchQueue.Punch second = queue.enqueue("OUT", 2000L, true, null, null);
+        // Hỏng byte cuối của record thứ hai (CRC không còn khớp)
+        RandomAccessFile log = new RandomAccessFile(new File(dir, "queue.log"), "rw");
+        try {
+            log.seek(log.length() - 1);
+            int last = log.read();
+            log.seek(log.length() - 1);
+            log.write(last ^ 0xff);
+        } finally {
+            log.close();
+        }
+
+        queue.configure(url, null);
+        awaitPending(queue, 1);
+        Thread.sleep(200);
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).body.contains(first.idempotencyKey));
+        assertFalse(requests.get(0).body.contains(second.idempotencyKey));
+        assertTrue(String.valueOf(queue.getStats().get("lastError")).startsWith("read:"));
+    }
+
+    private PunchQueue newQueue() throws IOException {
+        return new PunchQueue(null, folder.newFolder());
+    }
+
+    private boolean acceptedContains(String key) {
+        for (Request request : requests) {
+            String[] response = responder.respond(request);
+            if (response[0].startsWith("2") && request.body.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Responder status(final int status) {
+        return new Responder() {
+            @Override
+            public String[] respond(Request request) {
+                return new String[] {String.valueOf(status), ""};
+            }
+        };
+    }
+
+    private static void awaitPending(PunchQueue queue, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + WAIT_MS * 1000000L;
+        while (queue.getPendingCount() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, queue.getPendingCount());
+    }
+
+    private static void awaitStat(PunchQueue queue, String key, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + WAIT_MS * 1000000L;
+        while (!Integer.valueOf(expected).equals(queue.getStats().get(key)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, queue.getStats().get(key));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,177 @@
+package com.dell.timekeeping.anticheat;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Đường kiểm tra root không được fork/exec process (su, getprop, mount...).
+ * - Chạy thật getVerdict()/refresh() dưới một SecurityManager ghi lại mọi checkExec
+ *   (bắt cả process sống rất ngắn, ở bất kỳ thread nào, kể cả trong callee)
+ * - Quét constant pool của class đã biên dịch, gồm cả inner/anonymous class,
+ *   nên bắt được cả lời gọi trực tiếp lẫn tên class truyền cho reflection.
+ */
+public class RootDetectorTest {
+
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    // Tên class/method dẫn tới việc tạo process con
+    private static final String[] FORBIDDEN = {
+        "java/lang/ProcessBuilder",
+        "java.lang.ProcessBuilder",
+        "java/lang/Process",
+        "java.lang.Process",
+        "java/lang/Runtime",
+        "java.lang.Runtime",
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ghi lại lệnh exec và chặn luôn (không để process thật chạy); mọi quyền khác đều cho phép
+     */
+    private static final class ExecRecorder extends SecurityManager {
+        final List<String> commands = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void checkExec(String cmd) {
+            commands.add(cmd);
+            throw new SecurityException("exec blocked by test: " + cmd);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+    }
+
+    private static ExecRecorder install() {
+        ExecRecorder recorder = new ExecRecorder();
+        try {
+            System.setSecurityManager(recorder);
+        } catch (UnsupportedOperationException e) {
+            // JDK 18+ cần -Djava.security.manager=allow (đã đặt trong build.gradle.kts); JDK 24+ đã bỏ hẳn
+            Assume.assumeNoException("SecurityManager not supported by this JVM", e);
+        }
+        return recorder;
+    }
+
+    @Test
+    public void recorderCatchesProcessSpawn() throws IOException {
+        ExecRecorder recorder = install();
+        try {
+            new ProcessBuilder("su", "-c", "id").start();
+            fail("exec was not intercepted");
+        } catch (SecurityException expected) {
+        } finally {
+            System.setSecurityManager(null);
+        }
+        assertEquals(1, recorder.commands.size());
+    }
+
+    @Test
+    public void verdictPathsDoNotSpawnProcesses() throws Exception {
+        File dir = folder.newFolder();
+        ExecRecorder recorder = install();
+        try {
+            // Lần đầu: quét đồng bộ; lần hai: verdict trong cache
+            RootDetector detector = new RootDetector(new IntegrityScanner("test-boot", dir), 0);
+            RootDetector.Verdict first = detector.getVerdict();
+            assertNotNull(first.report);
+            // TTL = 0: getVerdict trả verdict cũ và làm mới ở background
+            Thread.sleep(5);
+            detector.getVerdict();
+            long deadline = System.nanoTime() + 5000000000L;
+            while (detector.getCachedVerdict() == first && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotSame(first, detector.getCachedVerdict());
+            // Quét lại bắt buộc, và một detector mới đọc verdict đã nhớ trên đĩa
+            detector.refresh();
+            new RootDetector(new IntegrityScanner("test-boot", dir), RootDetector.DEFAULT_TTL_MS).getVerdict();
+        } finally {
+            System.setSecurityManager(null);
+        }
+        assertEquals("spawned: " + recorder.commands, 0, recorder.commands.size());
+    }
+
+    @Test
+    public void hotPathClassesDoNotSpawnProcesses() throws IOException {
+        List<File> classFiles = new ArrayList<>();
+        classFiles.addAll(classFilesOf(RootDetector.class));
+        classFiles.addAll(classFilesOf(IntegrityScanner.class));
+        classFiles.addAll(classFilesOf(BootSession.class));
+        assertTrue("inner classes not found", classFiles.size() > 2);
+
+        for (File file : classFiles) {
+            String constants = new String(readAll(new FileInputStream(file)), LATIN1);
+            for (String forbidden : FORBIDDEN) {
+                assertFalse(file.getName() + " references " + forbidden, references(constants, forbidden));
+            }
+        }
+    }
+
+    // Khớp đúng một entry CONSTANT_Utf8 (độ dài 2 byte + tên) hoặc descriptor Lname;
+    // để RuntimeException, ProcessHandle... không bị tính nhầm
+    private static boolean references(String constants, String name) {
+        String entry = "" + (char) (name.length() >> 8) + (char) (name.length() & 0xff) + name;
+        return constants.contains(entry) || constants.contains("L" + name + ";");
+    }
+
+    // File .class của top-level class và mọi class lồng trong nó (Outer$...)
+    private static List<File> classFilesOf(Class<?> type) {
+        URL url = type.getResource(type.getSimpleName() + ".class");
+        assertEquals("file", url.getProtocol());
+        File dir = new File(url.getPath()).getParentFile();
+        List<File> files = new ArrayList<>();
+        File[] all = dir.listFiles();
+        if (all != null) {
+            for (File file : all) {
+                String name = file.getName();
+                if (name.equals(type.getSimpleName() + ".class")
+                        || (name.startsWith(type.getSimpleName() + "$") && name.endsWith(".class"))) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
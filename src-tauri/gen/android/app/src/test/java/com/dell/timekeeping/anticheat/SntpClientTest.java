@@ -0,0 +1,144 @@
+package com.dell.timekeeping.anticheat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SntpClient với một SNTP server giả trên localhost
+ */
+public class SntpClientTest {
+
+    private static final long NTP_EPOCH_OFFSET_S = 2208988800L;
+    // Server giả chạy nhanh hơn giờ hệ thống 5 giây
+    private static final long SERVER_OFFSET_MS = 5000;
+    // Thời gian xử lý giữa t2 và t3 (server ngủ đúng khoảng này)
+    private static final long SERVER_HOLD_MS = 40;
+
+    private enum Mode { REPLY, WRONG_NONCE, SILENT }
+
+    private DatagramSocket socket;
+    private Thread serverThread;
+    private volatile Mode mode = Mode.REPLY;
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "FakeSntpServer");
+        serverThread.setDaemon(true);
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        socket.close();
+        serverThread.join(1000);
+    }
+
+    @Test
+    public void computesOffsetAndDelayFromServerTimestamps() {
+        SntpClient client = new SntpClient(new String[] {"127.0.0.1"}, socket.getLocalPort(), 2, 2000);
+
+        long before = System.currentTimeMillis();
+        SntpClient.Result result = client.query();
+        long after = System.currentTimeMillis();
+
+        assertNotNull(result);
+        assertEquals(2, result.sentSamples);
+        assertEquals(2, result.validSamples);
+        assertEquals("127.0.0.1", result.server);
+        // offset = ((t2 - t1) + (t3 - t4)) / 2, sai số chỉ do phần round-trip ngoài thời gian xử lý
+        assertTrue("offset " + result.offsetMs, Math.abs(result.offsetMs - SERVER_OFFSET_MS) <= 50);
+        // delay không tính thời gian server giữ gói (t3 - t2)
+        assertTrue("delay " + result.delayMs, result.delayMs >= 0 && result.delayMs < SERVER_HOLD_MS);
+        assertTrue(result.networkTimeMs >= before + SERVER_OFFSET_MS - 50);
+        assertTrue(result.networkTimeMs <= after + SERVER_OFFSET_MS + 50);
+        assertTrue(result.uncertaintyMs >= result.delayMs / 2);
+    }
+
+    @Test
+    public void rejectsReplyWithWrongOriginateNonce() {
+        mode = Mode.WRONG_NONCE;
+        SntpClient client = new SntpClient(new String[] {"127.0.0.1"}, socket.getLocalPort(), 2, 1000);
+
+        assertNull(client.query());
+        assertEquals(2, received.get());
+    }
+
+    @Test
+    public void returnsNullAfterTimeoutWhenServerIsSilent() {
+        mode = Mode.SILENT;
+        int timeoutMs = 300;
+        SntpClient client = new SntpClient(new String[] {"127.0.0.1"}, socket.getLocalPort(), 1, timeoutMs);
+
+        long started = System.nanoTime();
+        SntpClient.Result result = client.query();
+        long elapsedMs = (System.nanoTime() - started) / 1000000L;
+
+        assertNull(result);
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= timeoutMs - 20);
+        assertTrue("elapsed " + elapsedMs, elapsedMs < timeoutMs + 1000);
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[48];
+        while (!socket.isClosed()) {
+            DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(request);
+            } catch (IOException e) {
+                return;
+            }
+            received.incrementAndGet();
+            if (mode == Mode.SILENT) {
+                continue;
+            }
+            byte[] reply = new byte[48];
+            reply[0] = (byte) ((3 << 3) | 4);   // LI=0, VN=3, mode=server
+            reply[1] = 1;                        // stratum
+            System.arraycopy(buffer, 40, reply, 24, 8);
+            if (mode == Mode.WRONG_NONCE) {
+                reply[31] ^= 0x01;
+            }
+            writeTimestamp(reply, 32, System.currentTimeMillis() + SERVER_OFFSET_MS);
+            try {
+                Thread.sleep(SERVER_HOLD_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            writeTimestamp(reply, 40, System.currentTimeMillis() + SERVER_OFFSET_MS);
+            try {
+                socket.send(new DatagramPacket(reply, reply.length, request.getSocketAddress()));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // ms Unix -> NTP 32.32
+    private static void writeTimestamp(byte[] packet, int offset, long unixMs) {
+        long seconds = unixMs / 1000L + NTP_EPOCH_OFFSET_S;
+        long fraction = ((unixMs % 1000L) << 32) / 1000L;
+        for (int i = 0; i < 4; i++) {
+            packet[offset + i] = (byte) (seconds >>> (24 - 8 * i));
+            packet[offset + 4 + i] = (byte) (fraction >>> (24 - 8 * i));
+        }
+    }
+}
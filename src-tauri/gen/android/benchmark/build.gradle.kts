@@ -0,0 +1,78 @@
+// JMH cho các hot path của package anticheat, chạy trên JVM thường (không cần Android SDK).
+// Source của app được biên dịch cùng stand-in tối giản cho android.* (src/standin/java).
+//
+//   ../gradlew -p benchmark jmh                          chạy tất cả (thrpt + sample + gc profiler)
+//   ../gradlew -p benchmark jmh -Pjmh.includes=Plugin    chỉ benchmark khớp regex
+//   ../gradlew -p benchmark jmhSaveBaseline [-Pbaseline=main]
+//   ../gradlew -p benchmark jmhCompare [-Pbaseline=main] [-Pthreshold=10]
+//
+// Baseline chỉ so sánh được trên cùng một máy; lưu lại sau mỗi thay đổi đã được chấp nhận.
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+repositories {
+    mavenCentral()
+}
+
+sourceSets {
+    main {
+        java {
+            srcDir("src/standin/java")
+            srcDir("../app/src/main/java")
+            include("android/**", "androidx/**", "com/dell/timekeeping/anticheat/**")
+        }
+    }
+}
+
+dependencies {
+    // Android có sẵn org.json; trên JVM dùng bản gốc cùng API
+    implementation("org.json:json:20240303")
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+    // App build với Java 8 (minSdk 24)
+    options.release.set(8)
+    options.compilerArgs.add("-Xlint:-options")
+}
+
+val jmhResultsFile = layout.buildDirectory.file("results/jmh/results.json")
+val baselineName = providers.gradleProperty("baseline").orElse("main")
+val baselineFile = layout.projectDirectory.file(baselineName.map { "baselines/$it.json" })
+
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    fork.set(1)
+    // gc: gc.alloc.rate.norm = byte cấp phát mỗi op
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResultsFile)
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+}
+
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Copies the last JMH results to baselines/<baseline>.json"
+    from(jmhResultsFile)
+    into(layout.projectDirectory.dir("baselines"))
+    rename { "${baselineName.get()}.json" }
+}
+
+tasks.register<JavaExec>("jmhCompare") {
+    group = "benchmark"
+    description = "Fails if the last JMH results regressed against baselines/<baseline>.json"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.dell.timekeeping.anticheat.BaselineComparator")
+    args(
+        baselineFile.get().asFile.absolutePath,
+        jmhResultsFile.get().asFile.absolutePath,
+        providers.gradleProperty("threshold").getOrElse("10")
+    )
+}
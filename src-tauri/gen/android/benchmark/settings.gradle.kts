@@ -0,0 +1,2 @@
+// Standalone build: chạy trên JVM thường, không cần Android SDK/AGP
+rootProject.name = "anticheat-benchmark"
@@ -0,0 +1,125 @@
+package com.dell.timekeeping.anticheat;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * So sánh kết quả JMH (JSON) với baseline đã lưu, thoát với mã 1 nếu có regression
+ * Regression: throughput giảm, sample time (trung bình hoặc p99) tăng, hoặc
+ * gc.alloc.rate.norm (byte/op) tăng quá thresholdPercent.
+ *
+ * Cách dùng: BaselineComparator baseline.json results.json [thresholdPercent]
+ */
+public final class BaselineComparator {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+    private static final String P99 = "99.0";
+    // Dưới mức này chênh lệch allocation là nhiễu (vd: 0 -> 8 byte/op)
+    private static final double ALLOC_SLACK_BYTES = 16;
+
+    private BaselineComparator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.json> <results.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, JSONObject> baseline = load(args[0]);
+        Map<String, JSONObject> current = load(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format(Locale.ROOT, "%-72s %14s %14s %9s", "benchmark", "baseline", "current", "change"));
+        for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+            JSONObject base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.println(String.format(Locale.ROOT, "%-72s %14s", entry.getKey(), "(new)"));
+                continue;
+            }
+            JSONObject now = entry.getValue();
+            boolean higherIsBetter = "thrpt".equals(now.getString("mode"));
+            JSONObject basePrimary = base.getJSONObject("primaryMetric");
+            JSONObject nowPrimary = now.getJSONObject("primaryMetric");
+
+            regressions += report(entry.getKey(), basePrimary.getDouble("score"), nowPrimary.getDouble("score"),
+                nowPrimary.getString("scoreUnit"), higherIsBetter, threshold, 0);
+
+            JSONObject basePercentiles = basePrimary.optJSONObject("scorePercentiles");
+            JSONObject nowPercentiles = nowPrimary.optJSONObject("scorePercentiles");
+            if (!higherIsBetter && basePercentiles != null && nowPercentiles != null
+                    && basePercentiles.has(P99) && nowPercentiles.has(P99)) {
+                regressions += report(entry.getKey() + " p99", basePercentiles.getDouble(P99),
+                    nowPercentiles.getDouble(P99), nowPrimary.getString("scoreUnit"), false, threshold, 0);
+            }
+
+            JSONObject baseAlloc = secondary(base, ALLOC_METRIC);
+            JSONObject nowAlloc = secondary(now, ALLOC_METRIC);
+            if (baseAlloc != null && nowAlloc != null) {
+                regressions += report(entry.getKey() + " alloc", baseAlloc.getDouble("score"),
+                    nowAlloc.getDouble("score"), "B/op", false, threshold, ALLOC_SLACK_BYTES);
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println(String.format(Locale.ROOT, "%-72s %14s", key, "(missing)"));
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) above " + threshold + "%");
+            System.exit(1);
+        }
+        System.out.println("No regression above " + threshold + "%");
+    }
+
+    /**
+     * @return 1 nếu là regression
+     */
+    private static int report(String name, double base, double now, String unit, boolean higherIsBetter,
+                              double thresholdPercent, double slack) {
+        double changePercent = base != 0 ? (now - base) / base * 100 : 0;
+        double worse = higherIsBetter ? -changePercent : changePercent;
+        boolean regression = worse > thresholdPercent && Math.abs(now - base) > slack;
+        System.out.println(String.format(Locale.ROOT, "%-72s %14.3f %14.3f %+8.1f%% %s%s",
+            name, base, now, changePercent, unit, regression ? "  REGRESSION" : ""));
+        return regression ? 1 : 0;
+    }
+
+    private static JSONObject secondary(JSONObject result, String metric) {
+        JSONObject secondary = result.optJSONObject("secondaryMetrics");
+        return secondary != null ? secondary.optJSONObject(metric) : null;
+    }
+
+    // Khoá: benchmark + mode + params, giữ thứ tự trong file
+    private static Map<String, JSONObject> load(String path) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        JSONArray results = new JSONArray(json);
+        Map<String, JSONObject> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            String benchmark = result.getString("benchmark");
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+            key.append(" [").append(result.getString("mode")).append(']');
+            JSONObject params = result.optJSONObject("params");
+            if (params != null) {
+                Iterator<String> names = params.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    key.append(' ').append(name).append('=').append(params.get(name));
+                }
+            }
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+}
@@ -0,0 +1,126 @@
+package com.dell.timekeeping.anticheat;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.LocationManager;
+import android.net.ConnectivityManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Context cho benchmark: thư mục tạm riêng mỗi fork, service là các stand-in
+ * Các singleton (TimeStateStore, AuditJournal, PunchQueue...) sống theo JVM,
+ * JMH fork JVM mới cho mỗi benchmark nên mỗi lần chạy bắt đầu từ trạng thái sạch.
+ */
+final class BenchContext extends Context {
+
+    private static BenchContext instance;
+
+    private final File rootDir;
+    private final File filesDir;
+    private final File noBackupFilesDir;
+    private final LocationManager locationManager = new LocationManager();
+    private final ConnectivityManager connectivityManager = new ConnectivityManager(true);
+    private final ContentResolver contentResolver = new ContentResolver();
+    private final ConcurrentHashMap<String, SharedPreferences> preferences = new ConcurrentHashMap<>();
+
+    static synchronized BenchContext getInstance() {
+        if (instance == null) {
+            instance = new BenchContext();
+        }
+        return instance;
+    }
+
+    private BenchContext() {
+        try {
+            rootDir = Files.createTempDirectory("anticheat-bench").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create benchmark data dir", e);
+        }
+        filesDir = new File(rootDir, "files");
+        noBackupFilesDir = new File(rootDir, "no_backup");
+        filesDir.mkdirs();
+        noBackupFilesDir.mkdirs();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deleteRecursively(rootDir.toPath());
+            }
+        }, "bench-cleanup"));
+    }
+
+    LocationManager getLocationManager() {
+        return locationManager;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        if (LOCATION_SERVICE.equals(name)) {
+            return locationManager;
+        }
+        if (CONNECTIVITY_SERVICE.equals(name)) {
+            return connectivityManager;
+        }
+        return null;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new InMemorySharedPreferences();
+            SharedPreferences existing = preferences.putIfAbsent(name, prefs);
+            if (existing != null) {
+                prefs = existing;
+            }
+        }
+        return prefs;
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return contentResolver;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getNoBackupFilesDir() {
+        return noBackupFilesDir;
+    }
+
+    private static void deleteRecursively(Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Dữ liệu đầu vào dùng chung cho các benchmark
+ */
+final class Fixtures {
+
+    // Khu văn phòng quanh Hà Nội
+    static final double BASE_LAT = 21.0285;
+    static final double BASE_LNG = 105.8542;
+    // ~1.1 m mỗi bước, tương đương đi bộ với fix 1 Hz
+    private static final double WALK_STEP_DEG = 0.00001;
+
+    private Fixtures() {
+    }
+
+    /**
+     * siteCount site, 3/4 hình tròn, 1/4 đa giác, rải trên ô ~20 km quanh BASE
+     */
+    static String geofenceJson(int siteCount) {
+        JSONArray sites = new JSONArray();
+        for (int i = 0; i < siteCount; i++) {
+            double lat = BASE_LAT + ((i * 37) % 101 - 50) * 0.002;
+            double lng = BASE_LNG + ((i * 53) % 103 - 51) * 0.002;
+            JSONObject site = new JSONObject();
+            site.put("id", "site-" + i);
+            site.put("name", "Site " + i);
+            if (i % 4 == 3) {
+                site.put("type", "polygon");
+                JSONArray points = new JSONArray();
+                points.put(new JSONArray().put(lat - 0.001).put(lng - 0.001));
+                points.put(new JSONArray().put(lat - 0.001).put(lng + 0.0012));
+                points.put(new JSONArray().put(lat + 0.0008).put(lng + 0.0012));
+                points.put(new JSONArray().put(lat + 0.001).put(lng));
+                points.put(new JSONArray().put(lat + 0.0008).put(lng - 0.001));
+                site.put("points", points);
+            } else {
+                site.put("type", "circle");
+                site.put("latitude", lat);
+                site.put("longitude", lng);
+                site.put("radius", 150);
+            }
+            sites.put(site);
+        }
+        // Luôn có một site chứa BASE để query trả về kết quả
+        JSONObject office = new JSONObject();
+        office.put("id", "office");
+        office.put("name", "Office");
+        office.put("type", "circle");
+        office.put("latitude", BASE_LAT);
+        office.put("longitude", BASE_LNG);
+        office.put("radius", 300);
+        sites.put(office);
+        return sites.toString();
+    }
+
+    static Location gpsFix(double lat, double lng) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setAltitude(14.5);
+        location.setAccuracy(6f);
+        location.setSpeed(1.2f);
+        location.setBearing(90f);
+        location.setTime(System.currentTimeMillis());
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        Bundle extras = new Bundle();
+        extras.putInt("satellites", 11);
+        location.setExtras(extras);
+        return location;
+    }
+
+    /**
+     * Fix thứ step trên quãng đi bộ qua lại quanh BASE, cách nhau 1 s theo thời gian của fix
+     * (không theo đồng hồ thật, nếu không TrajectoryEngine thấy tốc độ hàng km/s)
+     */
+    static void advanceWalk(Location location, long startWallMs, long startElapsedNanos, long step) {
+        // Đi 200 bước rồi quay lại để luôn ở gần văn phòng
+        long phase = step % 400;
+        long offset = phase < 200 ? phase : 400 - phase;
+        location.setLatitude(BASE_LAT + offset * WALK_STEP_DEG);
+        location.setLongitude(BASE_LNG + offset * WALK_STEP_DEG * 0.5);
+        location.setTime(startWallMs + step * 1000L);
+        location.setElapsedRealtimeNanos(startElapsedNanos + step * 1_000_000_000L);
+    }
+}
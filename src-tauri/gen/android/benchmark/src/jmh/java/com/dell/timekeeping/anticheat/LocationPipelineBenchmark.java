@@ -0,0 +1,103 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đường xử lý một fix GPS: processAndValidateLocation (mock, vệ tinh, quỹ đạo, geofence),
+ * ghi lịch sử, và serialize LocationSample ra JSON cho JNI.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationPipelineBenchmark {
+
+    // Số site geofence của tenant
+    @Param({"0", "200"})
+    public int geofenceSites;
+
+    private SecureLocationClient client;
+    // Listener dựng Map cho mỗi fix như trước khi có LocationSample
+    private SecureLocationClient mapClient;
+    private Map<String, Object> lastMap;
+    private GeofenceIndex geofenceIndex;
+    private Location fix;
+    private long startWallMs;
+    private long startElapsedNanos;
+    private long step;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        client = new SecureLocationClient(BenchContext.getInstance(), null);
+        geofenceIndex = geofenceSites > 0
+            ? GeofenceIndex.fromJson(Fixtures.geofenceJson(geofenceSites)) : GeofenceIndex.EMPTY;
+        client.setGeofenceIndex(geofenceIndex);
+        mapClient = new SecureLocationClient(BenchContext.getInstance(),
+            new SecureLocationClient.LocationUpdateListener() {
+                @Override
+                public void onLocationUpdate(LocationSample sample) {
+                    lastMap = sample.toMap();
+                }
+
+                @Override
+                public void onProviderChanged(String provider, boolean enabled) {
+                }
+            });
+        mapClient.setGeofenceIndex(geofenceIndex);
+        fix = Fixtures.gpsFix(Fixtures.BASE_LAT, Fixtures.BASE_LNG);
+        startWallMs = System.currentTimeMillis();
+        startElapsedNanos = SystemClock.elapsedRealtimeNanos();
+        step = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.shutdown();
+        mapClient.shutdown();
+    }
+
+    /**
+     * onLocationChanged = processAndValidateLocation + lịch sử + cập nhật lịch GPS
+     */
+    @Benchmark
+    public void processFix() {
+        Fixtures.advanceWalk(fix, startWallMs, startElapsedNanos, step++);
+        client.onLocationChanged(fix);
+    }
+
+    /**
+     * LocationSample mới (toJson cache theo instance) rồi serialize như getSecureLocationJson
+     */
+    @Benchmark
+    public String sampleToJson() {
+        Fixtures.advanceWalk(fix, startWallMs, startElapsedNanos, step++);
+        GeofenceIndex.Match[] geofences = geofenceIndex.query(fix.getLatitude(), fix.getLongitude());
+        LocationSample sample = LocationSample.fromLocation(fix, "native", 2, 11, false, 1.1f, 95, 0,
+            SecureLocationClient.STATUS_VALID, SecureLocationClient.REFRESH_TYPE_NORMAL, geofences);
+        return sample.toJson();
+    }
+
+    /**
+     * Đường trước LocationSample, để so sánh với processFix: mỗi fix dựng một HashMap đủ key
+     * (cache + listener nhận Map). So gc.alloc.rate.norm của hai benchmark này.
+     */
+    @Benchmark
+    public void processFixMapPath() {
+        Fixtures.advanceWalk(fix, startWallMs, startElapsedNanos, step++);
+        mapClient.onLocationChanged(fix);
+    }
+}
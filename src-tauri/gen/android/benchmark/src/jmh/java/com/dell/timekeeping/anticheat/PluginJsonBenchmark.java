@@ -0,0 +1,88 @@
+package com.dell.timekeeping.anticheat;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các hàm *Json mà Rust gọi qua JNI, trên plugin đã initialize() đầy đủ
+ * (TimeStateStore, AuditJournal, PunchQueue ghi vào thư mục tạm của BenchContext).
+ * initialize() còn chạy root check và một lần SNTP nền như trên máy thật; cả hai
+ * xong trong warmup nên không lẫn vào số đo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PluginJsonBenchmark {
+
+    private static final int GEOFENCE_SITES = 200;
+
+    private AntiCheatPlugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchContext context = BenchContext.getInstance();
+        LocationManager locationManager = context.getLocationManager();
+        locationManager.setLastKnownLocation(LocationManager.GPS_PROVIDER,
+            Fixtures.gpsFix(Fixtures.BASE_LAT, Fixtures.BASE_LNG));
+        Location networkFix = Fixtures.gpsFix(Fixtures.BASE_LAT + 0.0002, Fixtures.BASE_LNG);
+        networkFix.setProvider(LocationManager.NETWORK_PROVIDER);
+        networkFix.setAccuracy(25f);
+        locationManager.setLastKnownLocation(LocationManager.NETWORK_PROVIDER, networkFix);
+
+        plugin = AntiCheatPlugin.getInstance(context);
+        plugin.initialize();
+        plugin.loadGeofences(Fixtures.geofenceJson(GEOFENCE_SITES));
+        plugin.updateWithRealTimeJson(System.currentTimeMillis(), 40, "benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plugin.stopLocationUpdates();
+        AntiCheatPlugin.flushPendingState();
+    }
+
+    /**
+     * Không có fix mới giữa hai lần gọi: đi đường cache của kết quả gộp
+     */
+    @Benchmark
+    public String getSecureLocationJson() {
+        return plugin.getSecureLocationJson();
+    }
+
+    @Benchmark
+    public String checkTimeReliabilityJson() {
+        return plugin.checkTimeReliabilityJson();
+    }
+
+    @Benchmark
+    public String getTelemetryDataJson() {
+        return plugin.getTelemetryDataJson();
+    }
+
+    @Benchmark
+    public String checkRootStatusJson() {
+        return plugin.checkRootStatusJson();
+    }
+
+    @Benchmark
+    public String getSecuritySnapshotJson() {
+        return plugin.getSecuritySnapshotJson(AntiCheatPlugin.SNAPSHOT_ALL);
+    }
+
+    @Benchmark
+    public String getMetricsJson() {
+        return plugin.getMetricsJson();
+    }
+}
@@ -0,0 +1,48 @@
+package com.dell.timekeeping.anticheat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chấm điểm thời gian: checkTimeCheating (trusted clock, drift, reboot, auto time)
+ * và gom telemetry. Trusted clock được anchor trước nên đi đúng nhánh có giờ mạng.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimeReliabilityBenchmark {
+
+    private TimeReliabilityManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new TimeReliabilityManager(BenchContext.getInstance());
+        manager.initializeAndCheck();
+        manager.updateWithRealTime(System.currentTimeMillis(), 40, "benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.flushState();
+    }
+
+    @Benchmark
+    public Map<String, Object> checkTimeCheating() {
+        return manager.checkTimeCheating();
+    }
+
+    @Benchmark
+    public Map<String, Object> getTelemetryData() {
+        return manager.getTelemetryData();
+    }
+}
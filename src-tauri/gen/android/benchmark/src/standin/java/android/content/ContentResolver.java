@@ -0,0 +1,16 @@
+package android.content;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+
+/**
+ * Stand-in: không có thay đổi setting nào được phát trong lúc benchmark
+ */
+public class ContentResolver {
+
+    public void registerContentObserver(Uri uri, boolean notifyForDescendants, ContentObserver observer) {
+    }
+
+    public void unregisterContentObserver(ContentObserver observer) {
+    }
+}
@@ -0,0 +1,25 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Stand-in: chỉ các service mà package anticheat dùng
+ */
+public abstract class Context {
+
+    public static final String LOCATION_SERVICE = "location";
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract Context getApplicationContext();
+
+    public abstract Object getSystemService(String name);
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract ContentResolver getContentResolver();
+
+    public abstract File getFilesDir();
+
+    public abstract File getNoBackupFilesDir();
+}
@@ -0,0 +1,174 @@
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * Stand-in: giữ đủ các trường mà pipeline anticheat đọc
+ */
+public class Location {
+
+    private static final double EARTH_RADIUS_M = 6371008.8;
+
+    private String provider;
+    private long time;
+    private long elapsedRealtimeNanos;
+    private double latitude;
+    private double longitude;
+    private boolean hasAltitude;
+    private double altitude;
+    private boolean hasSpeed;
+    private float speed;
+    private boolean hasBearing;
+    private float bearing;
+    private boolean hasAccuracy;
+    private float accuracy;
+    private boolean mock;
+    private Bundle extras;
+
+    public Location(String provider) {
+        this.provider = provider;
+    }
+
+    public Location(Location l) {
+        this.provider = l.provider;
+        this.time = l.time;
+        this.elapsedRealtimeNanos = l.elapsedRealtimeNanos;
+        this.latitude = l.latitude;
+        this.longitude = l.longitude;
+        this.hasAltitude = l.hasAltitude;
+        this.altitude = l.altitude;
+        this.hasSpeed = l.hasSpeed;
+        this.speed = l.speed;
+        this.hasBearing = l.hasBearing;
+        this.bearing = l.bearing;
+        this.hasAccuracy = l.hasAccuracy;
+        this.accuracy = l.accuracy;
+        this.mock = l.mock;
+        this.extras = l.extras;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    public void setElapsedRealtimeNanos(long elapsedRealtimeNanos) {
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public boolean hasAltitude() {
+        return hasAltitude;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        this.hasAltitude = true;
+    }
+
+    public boolean hasSpeed() {
+        return hasSpeed;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        this.hasSpeed = true;
+    }
+
+    public boolean hasBearing() {
+        return hasBearing;
+    }
+
+    public float getBearing() {
+        return bearing;
+    }
+
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        this.hasBearing = true;
+    }
+
+    public boolean hasAccuracy() {
+        return hasAccuracy;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        this.hasAccuracy = true;
+    }
+
+    public boolean isFromMockProvider() {
+        return mock;
+    }
+
+    public void setIsFromMockProvider(boolean mock) {
+        this.mock = mock;
+    }
+
+    public Bundle getExtras() {
+        return extras;
+    }
+
+    public void setExtras(Bundle extras) {
+        this.extras = extras;
+    }
+
+    public float distanceTo(Location dest) {
+        float[] results = new float[1];
+        distanceBetween(latitude, longitude, dest.latitude, dest.longitude, results);
+        return results[0];
+    }
+
+    // Haversine - đủ chính xác cho benchmark (Android dùng Vincenty)
+    public static void distanceBetween(double startLatitude, double startLongitude,
+                                       double endLatitude, double endLongitude, float[] results) {
+        double dLat = Math.toRadians(endLatitude - startLatitude);
+        double dLng = Math.toRadians(endLongitude - startLongitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(endLatitude))
+            * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        results[0] = (float) (2 * EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(a))));
+    }
+}
@@ -0,0 +1,17 @@
+package android.location;
+
+import android.os.Bundle;
+
+public interface LocationListener {
+
+    void onLocationChanged(Location location);
+
+    default void onProviderEnabled(String provider) {
+    }
+
+    default void onProviderDisabled(String provider) {
+    }
+
+    default void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+}
@@ -0,0 +1,49 @@
+package android.location;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in: provider luôn bật, last known location do benchmark đặt trước
+ */
+public class LocationManager {
+
+    public static final String GPS_PROVIDER = "gps";
+    public static final String NETWORK_PROVIDER = "network";
+    public static final String PASSIVE_PROVIDER = "passive";
+    public static final String FUSED_PROVIDER = "fused";
+
+    private final Map<String, Location> lastKnown = new ConcurrentHashMap<>();
+
+    public void setLastKnownLocation(String provider, Location location) {
+        if (location == null) {
+            lastKnown.remove(provider);
+        } else {
+            lastKnown.put(provider, location);
+        }
+    }
+
+    public Location getLastKnownLocation(String provider) {
+        return lastKnown.get(provider);
+    }
+
+    public boolean isProviderEnabled(String provider) {
+        return true;
+    }
+
+    public List<String> getAllProviders() {
+        return new ArrayList<>(Arrays.asList(GPS_PROVIDER, NETWORK_PROVIDER, PASSIVE_PROVIDER, FUSED_PROVIDER));
+    }
+
+    public void requestLocationUpdates(String provider, long minTimeMs, float minDistanceM,
+                                       LocationListener listener, Looper looper) {
+    }
+
+    public void removeUpdates(LocationListener listener) {
+    }
+}
@@ -0,0 +1,32 @@
+package android.net;
+
+/**
+ * Stand-in: trạng thái mạng cố định, callback không bao giờ được gọi
+ */
+public class ConnectivityManager {
+
+    private final NetworkInfo activeNetwork;
+
+    public ConnectivityManager(boolean connected) {
+        this.activeNetwork = new NetworkInfo(connected);
+    }
+
+    public NetworkInfo getActiveNetworkInfo() {
+        return activeNetwork;
+    }
+
+    public void registerDefaultNetworkCallback(NetworkCallback networkCallback) {
+    }
+
+    public void unregisterNetworkCallback(NetworkCallback networkCallback) {
+    }
+
+    public static class NetworkCallback {
+
+        public void onAvailable(Network network) {
+        }
+
+        public void onLost(Network network) {
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package android.os;
+
+/**
+ * Stand-in: thông tin một máy Android 14 cố định
+ */
+public class Build {
+
+    public static final String MODEL = "Benchmark";
+    public static final String MANUFACTURER = "JVM";
+    public static final String BRAND = "generic";
+    public static final String DEVICE = "generic";
+    public static final String PRODUCT = "benchmark";
+    public static final String FINGERPRINT = "generic/benchmark/generic:14/UP1A/1:user/release-keys";
+    public static final String TAGS = "release-keys";
+    public static final String TYPE = "user";
+    public static final String HARDWARE = "jvm";
+
+    public static class VERSION {
+        public static final int SDK_INT = 34;
+        public static final String RELEASE = "14";
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int N = 24;
+        public static final int O = 26;
+        public static final int P = 28;
+        public static final int Q = 29;
+        public static final int R = 30;
+        public static final int S = 31;
+    }
+}
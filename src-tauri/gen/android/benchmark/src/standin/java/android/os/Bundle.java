@@ -0,0 +1,21 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in: chỉ các kiểu mà anticheat đọc từ Location extras
+ */
+public class Bundle {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    public void putInt(String key, int value) {
+        values.put(key, value);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+}
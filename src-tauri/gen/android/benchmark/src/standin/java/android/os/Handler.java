@@ -0,0 +1,51 @@
+package android.os;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in: post/postDelayed chạy trên executor của Looper
+ */
+public class Handler {
+
+    private final Looper looper;
+    private final Map<Runnable, ScheduledFuture<?>> delayed = new ConcurrentHashMap<>();
+
+    public Handler(Looper looper) {
+        this.looper = looper != null ? looper : Looper.getMainLooper();
+    }
+
+    public Looper getLooper() {
+        return looper;
+    }
+
+    public boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public boolean postDelayed(final Runnable r, long delayMillis) {
+        try {
+            ScheduledFuture<?> future = looper.executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    delayed.remove(r);
+                    r.run();
+                }
+            }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+            delayed.put(r, future);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public void removeCallbacks(Runnable r) {
+        ScheduledFuture<?> future = delayed.remove(r);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
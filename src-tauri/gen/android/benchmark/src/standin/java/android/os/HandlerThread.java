@@ -0,0 +1,32 @@
+package android.os;
+
+/**
+ * Stand-in: Looper có thread riêng nên HandlerThread chỉ giữ Looper
+ */
+public class HandlerThread extends Thread {
+
+    private final Looper looper;
+
+    public HandlerThread(String name) {
+        super(name);
+        this.looper = new Looper(name);
+    }
+
+    public HandlerThread(String name, int priority) {
+        this(name);
+    }
+
+    @Override
+    public synchronized void start() {
+        // Thread của Looper được tạo khi có task đầu tiên
+    }
+
+    public Looper getLooper() {
+        return looper;
+    }
+
+    public boolean quitSafely() {
+        looper.quit();
+        return true;
+    }
+}
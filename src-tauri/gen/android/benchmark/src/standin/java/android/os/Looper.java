@@ -0,0 +1,57 @@
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stand-in: mỗi Looper là một executor một thread
+ */
+public class Looper {
+
+    private static final ThreadLocal<Looper> CURRENT = new ThreadLocal<>();
+    private static final Looper MAIN = new Looper("main");
+
+    final ScheduledExecutorService executor;
+    private volatile Thread thread;
+
+    Looper(String name) {
+        final String threadName = name;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Runnable task = r;
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        CURRENT.set(Looper.this);
+                        task.run();
+                    }
+                }, threadName);
+                t.setDaemon(true);
+                thread = t;
+                return t;
+            }
+        });
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return CURRENT.get();
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public boolean isCurrentThread() {
+        return CURRENT.get() == this;
+    }
+
+    void quit() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Stand-in: độ ưu tiên thread không có ý nghĩa trên JVM
+ */
+public class Process {
+
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static void setThreadPriority(int priority) {
+    }
+}
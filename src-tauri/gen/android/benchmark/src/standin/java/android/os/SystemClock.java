@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * Stand-in: đồng hồ đơn điệu của JVM, coi như máy đã boot được BOOT_UPTIME_MS
+ */
+public final class SystemClock {
+
+    private static final long BOOT_UPTIME_MS = 6 * 3600 * 1000L;
+    private static final long ORIGIN_NANOS = System.nanoTime() - BOOT_UPTIME_MS * 1_000_000L;
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return (System.nanoTime() - ORIGIN_NANOS) / 1_000_000L;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime() - ORIGIN_NANOS;
+    }
+
+    public static long uptimeMillis() {
+        return elapsedRealtime();
+    }
+}
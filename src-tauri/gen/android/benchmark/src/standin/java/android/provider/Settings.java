@@ -0,0 +1,56 @@
+package android.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in: Settings.Global là một map trong bộ nhớ, mặc định giờ/múi giờ tự động đang bật
+ */
+public final class Settings {
+
+    public static class SettingNotFoundException extends Exception {
+        public SettingNotFoundException(String msg) {
+            super(msg);
+        }
+    }
+
+    public static final class Global {
+
+        public static final String AUTO_TIME = "auto_time";
+        public static final String AUTO_TIME_ZONE = "auto_time_zone";
+        public static final String BOOT_COUNT = "boot_count";
+
+        private static final Map<String, Integer> VALUES = new ConcurrentHashMap<>();
+
+        static {
+            VALUES.put(AUTO_TIME, 1);
+            VALUES.put(AUTO_TIME_ZONE, 1);
+            VALUES.put(BOOT_COUNT, 42);
+        }
+
+        public static int getInt(ContentResolver cr, String name) throws SettingNotFoundException {
+            Integer value = VALUES.get(name);
+            if (value == null) {
+                throw new SettingNotFoundException(name);
+            }
+            return value;
+        }
+
+        public static int getInt(ContentResolver cr, String name, int def) {
+            Integer value = VALUES.get(name);
+            return value != null ? value : def;
+        }
+
+        public static boolean putInt(ContentResolver cr, String name, int value) {
+            VALUES.put(name, value);
+            return true;
+        }
+
+        public static Uri getUriFor(String name) {
+            return Uri.parse("content://settings/global/" + name);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package android.system;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Stand-in: stat(2) qua thuộc tính "unix:*" của JDK trên Linux
+ */
+public final class Os {
+
+    private Os() {
+    }
+
+    public static StructStat stat(String path) throws ErrnoException {
+        Path p = Paths.get(path);
+        try {
+            int mode = (Integer) Files.getAttribute(p, "unix:mode");
+            long size = (Long) Files.getAttribute(p, "unix:size");
+            long mtimeMs = Files.getLastModifiedTime(p).toMillis();
+            return new StructStat(mode, size, mtimeMs / 1000);
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            throw new ErrnoException("stat", OsConstants.ENOENT);
+        }
+    }
+
+    public static String getenv(String name) {
+        return System.getenv(name);
+    }
+}
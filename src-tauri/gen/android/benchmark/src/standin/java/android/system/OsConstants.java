@@ -0,0 +1,19 @@
+package android.system;
+
+public final class OsConstants {
+
+    public static final int ENOENT = 2;
+    public static final int S_IFMT = 0170000;
+    public static final int S_IFREG = 0100000;
+    public static final int S_ISUID = 04000;
+    public static final int S_IXUSR = 0100;
+    public static final int S_IXGRP = 010;
+    public static final int S_IXOTH = 01;
+
+    private OsConstants() {
+    }
+
+    public static boolean S_ISREG(int mode) {
+        return (mode & S_IFMT) == S_IFREG;
+    }
+}
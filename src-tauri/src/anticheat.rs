@@ -3,43 +3,138 @@ use serde_json::Value;
 
 #[cfg(target_os = "android")]
 use jni::objects::JValue;
+#[cfg(target_os = "android")]
+use crate::plugin_bridge::{self, JsonMethod};
+#[cfg(target_os = "android")]
+use crate::location_stream::LocationStreamView;
+#[cfg(target_os = "android")]
+use std::sync::OnceLock;
+#[cfg(target_os = "android")]
+use std::sync::atomic::{AtomicBool, Ordering};
+
+// Shared location ring; the global ref keeps the Java direct buffer alive
+#[cfg(target_os = "android")]
+static LOCATION_STREAM: OnceLock<(jni::objects::GlobalRef, LocationStreamView)> = OnceLock::new();
+
+// One pump thread per process drains the Java event channel into Tauri events
+#[cfg(target_os = "android")]
+static EVENT_PUMP_STARTED: AtomicBool = AtomicBool::new(false);
+
+// How long a single pollEventsJson call blocks on the Java side
+#[cfg(target_os = "android")]
+const EVENT_POLL_TIMEOUT_MS: i64 = 30_000;
+
+// Tauri event name prefix; the Java topic is appended (location, provider, timeAnomaly)
+#[cfg(target_os = "android")]
+const EVENT_PREFIX: &str = "anticheat://";
+
+// Floor for anchors supplied by the frontend (TrustedClock.DEFAULT_SYNC_UNCERTAINTY_MS): only a
+// locally measured SNTP round trip may claim a tighter bound and outrank later SNTP anchors
+const MIN_EXTERNAL_UNCERTAINTY_MS: i64 = 1000;
 
 #[command]
 pub fn init_anticheat<R: Runtime>(_app: AppHandle<R>) -> Result<(), String> {
     #[cfg(target_os = "android")]
     {
-        let ctx = ndk_context::android_context();
-        let vm = unsafe { jni::JavaVM::from_raw(ctx.vm() as *mut _) }.map_err(|e| e.to_string())?;
-        let mut env = vm.attach_current_thread().map_err(|e| e.to_string())?;
-        
-        let context_obj = unsafe { jni::objects::JObject::from_raw(ctx.context() as *mut _) };
-        
-        let cls = env.find_class("com/dell/timekeeping/anticheat/AntiCheatPlugin").map_err(|e| e.to_string())?;
-        
-        // getInstance
-        let instance = env.call_static_method(
-            cls, 
-            "getInstance", 
-            "(Landroid/content/Context;)Lcom/dell/timekeeping/anticheat/AntiCheatPlugin;", 
-            &[JValue::Object(&context_obj)]
-        ).map_err(|e| e.to_string())?;
-        
-        let instance_obj = instance.l().map_err(|e| e.to_string())?;
-        
+        // Resolves and caches the plugin class, instance and method IDs on first use
+        let bridge = plugin_bridge::get()?;
+        let mut env = bridge.env()?;
+        let instance_obj = bridge.instance();
+
         // initialize
-        env.call_method(&instance_obj, "initialize", "()V", &[]).map_err(|e| e.to_string())?;
+        env.call_method(instance_obj, "initialize", "()V", &[])
+            .map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
         
         // startLocationUpdates
-        env.call_method(&instance_obj, "startLocationUpdates", "()V", &[]).map_err(|e| e.to_string())?;
+        env.call_method(instance_obj, "startLocationUpdates", "()V", &[])
+            .map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
+
+        // Resolve the binary location stream once; later reads need no JNI call
+        if LOCATION_STREAM.get().is_none() {
+            let buf_obj = env.call_method(instance_obj, "getLocationStreamBuffer", "()Ljava/nio/ByteBuffer;", &[])
+                .and_then(|v| v.l())
+                .map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
+            let global = env.new_global_ref(&buf_obj).map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
+            let byte_buf = jni::objects::JByteBuffer::from(buf_obj);
+            let addr = env.get_direct_buffer_address(&byte_buf).map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
+            let len = env.get_direct_buffer_capacity(&byte_buf).map_err(|e| plugin_bridge::clear_exception(&mut env, e))?;
+            let view = unsafe { LocationStreamView::from_raw(addr as *const u8, len) }?;
+            let _ = LOCATION_STREAM.set((global, view));
+            // This thread stays attached, so drop the local ref explicitly
+            let _ = env.delete_local_ref(byte_buf);
+        }
+
+        // Push location/provider/time-anomaly events instead of having the UI poll
+        if !EVENT_PUMP_STARTED.swap(true, Ordering::SeqCst) {
+            let app = _app.clone();
+            let spawned = std::thread::Builder::new()
+                .name("anticheat-events".into())
+                .spawn(move || run_event_pump(app));
+            if let Err(e) = spawned {
+                EVENT_PUMP_STARTED.store(false, Ordering::SeqCst);
+                return Err(e.to_string());
+            }
+        }
     }
     Ok(())
 }
 
+#[cfg(target_os = "android")]
+fn run_event_pump<R: Runtime>(app: AppHandle<R>) {
+    use tauri::Emitter;
+
+    let bridge = match plugin_bridge::get() {
+        Ok(bridge) => bridge,
+        Err(_) => {
+            EVENT_PUMP_STARTED.store(false, Ordering::SeqCst);
+            return;
+        }
+    };
+    // The thread lives for the whole process, so attach once instead of per call
+    let mut env = match bridge.env() {
+        Ok(env) => env,
+        Err(_) => {
+            EVENT_PUMP_STARTED.store(false, Ordering::SeqCst);
+            return;
+        }
+    };
+
+    loop {
+        let batch = poll_events(bridge, &mut env);
+        let events = match batch {
+            Ok(Some(events)) => events,
+            Ok(None) => continue,
+            Err(_) => {
+                // The bridge already cleared the Java exception; back off before retrying
+                std::thread::sleep(std::time::Duration::from_secs(1));
+                continue;
+            }
+        };
+
+        if let Value::Array(items) = events {
+            for mut item in items {
+                let topic = item.get("topic").and_then(Value::as_str).unwrap_or("unknown").to_string();
+                let payload = item.get_mut("payload").map(Value::take).unwrap_or(Value::Null);
+                let _ = app.emit(&format!("{}{}", EVENT_PREFIX, topic), payload);
+            }
+        }
+    }
+}
+
+#[cfg(target_os = "android")]
+fn poll_events(bridge: &plugin_bridge::PluginBridge, env: &mut jni::JNIEnv) -> Result<Option<Value>, String> {
+    let json = bridge.call_string(env, JsonMethod::PollEvents, &[JValue::Long(EVENT_POLL_TIMEOUT_MS)])?;
+    match json {
+        Some(json) => bridge.parse_json(JsonMethod::PollEvents, &json).map(Some),
+        None => Ok(None),
+    }
+}
+
 #[command]
 pub fn get_secure_location<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
     #[cfg(target_os = "android")]
     {
-        let val = call_json_method("getSecureLocationJson")?;
+        let val = call_json_method(JsonMethod::GetSecureLocation)?;
         return Ok(val);
     }
     #[cfg(not(target_os = "android"))]
@@ -50,7 +145,7 @@ pub fn get_secure_location<R: Runtime>(_app: AppHandle<R>) -> Result<Value, Stri
 pub fn check_time_reliability<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
     #[cfg(target_os = "android")]
     {
-        let val = call_json_method("checkTimeReliabilityJson")?;
+        let val = call_json_method(JsonMethod::CheckTimeReliability)?;
         return Ok(val);
     }
     #[cfg(not(target_os = "android"))]
@@ -58,41 +153,329 @@ pub fn check_time_reliability<R: Runtime>(_app: AppHandle<R>) -> Result<Value, S
 }
 
 #[command]
-pub fn check_root_status<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
+pub fn check_root_status<R: Runtime>(_app: AppHandle<R>, force_refresh: Option<bool>) -> Result<Value, String> {
     #[cfg(target_os = "android")]
     {
-        let val = call_json_method("checkRootStatusJson")?;
+        // Cached verdict by default; force_refresh re-runs the checks synchronously
+        let method = if force_refresh.unwrap_or(false) { JsonMethod::RefreshRootStatus } else { JsonMethod::CheckRootStatus };
+        let val = call_json_method(method)?;
         return Ok(val);
     }
     #[cfg(not(target_os = "android"))]
-    Ok(serde_json::json!({ "isRooted": false }))
+    {
+        let _ = force_refresh;
+        Ok(serde_json::json!({ "isRooted": false }))
+    }
 }
 
-#[cfg(target_os = "android")]
-fn call_json_method(method_name: &str) -> Result<Value, String> {
-    let ctx = ndk_context::android_context();
-    let vm = unsafe { jni::JavaVM::from_raw(ctx.vm() as *mut _) }.map_err(|e| e.to_string())?;
-    let mut env = vm.attach_current_thread().map_err(|e| e.to_string())?;
-
-    let context_obj = unsafe { jni::objects::JObject::from_raw(ctx.context() as *mut _) };
-    let cls = env.find_class("com/dell/timekeeping/anticheat/AntiCheatPlugin").map_err(|e| e.to_string())?;
-    
-    let instance = env.call_static_method(
-        cls, 
-        "getInstance", 
-        "(Landroid/content/Context;)Lcom/dell/timekeeping/anticheat/AntiCheatPlugin;", 
-        &[JValue::Object(&context_obj)]
-    ).map_err(|e| e.to_string())?;
-    
-    let instance_obj = instance.l().map_err(|e| e.to_string())?;
-
-    let json_jstr = env.call_method(instance_obj, method_name, "()Ljava/lang/String;", &[])
-        .map_err(|e| e.to_string())?
-        .l()
+#[command]
+pub fn get_security_snapshot<R: Runtime>(_app: AppHandle<R>, fields: Option<i32>) -> Result<Value, String> {
+    // fields: SNAPSHOT_* mask on the Java side (1=location, 2=time, 4=device, 8=telemetry); None = all
+    let mask = fields.unwrap_or(0);
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_args(JsonMethod::GetSecuritySnapshot, &[JValue::Int(mask)])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = mask;
+        Ok(serde_json::json!({
+            "location": { "status": "simulated", "latitude": 0.0, "longitude": 0.0 },
+            "time": { "isCheatingTime": false, "reliabilityValue": 100 },
+            "device": { "isRooted": false },
+            "telemetry": {}
+        }))
+    }
+}
+
+#[command]
+pub fn read_location_stream<R: Runtime>(
+    _app: AppHandle<R>,
+    after_seq: Option<u64>,
+    max: Option<usize>,
+) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        let (_, view) = LOCATION_STREAM.get().ok_or("location stream not initialized")?;
+        let batch = view.read_since(after_seq.unwrap_or(0), max.unwrap_or(usize::MAX));
+        return serde_json::to_value(batch).map_err(|e| e.to_string());
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (after_seq, max);
+        Ok(serde_json::json!({ "latestSeq": 0, "records": [] }))
+    }
+}
+
+#[command]
+pub fn get_location_history<R: Runtime>(
+    _app: AppHandle<R>,
+    max_samples: Option<i32>,
+    since_time: Option<i64>,
+) -> Result<Value, String> {
+    let max_samples = max_samples.unwrap_or(i32::MAX);
+    let since_time = since_time.unwrap_or(0);
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_args(
+            JsonMethod::GetLocationHistory,
+            &[JValue::Int(max_samples), JValue::Long(since_time)],
+        )?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (max_samples, since_time);
+        Ok(serde_json::json!([]))
+    }
+}
+
+#[command]
+pub fn load_geofences<R: Runtime>(_app: AppHandle<R>, sites: Value) -> Result<Value, String> {
+    // sites: array of {id, name, type: "circle"|"polygon", latitude, longitude, radius, points}
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_strs(JsonMethod::LoadGeofences, &[sites.to_string().as_str()])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    Ok(serde_json::json!({ "loaded": sites.as_array().map(|a| a.len()).unwrap_or(0) }))
+}
+
+#[command]
+pub fn load_trust_rules<R: Runtime>(_app: AppHandle<R>, rules: Value) -> Result<Value, String> {
+    // rules: {version, location: {baseScore, suspiciousBelow, rejectAtOrBelow, rules: [...]}, time: {...}}
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_strs(JsonMethod::LoadTrustRules, &[rules.to_string().as_str()])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = rules;
+        Ok(serde_json::json!({ "loaded": 0 }))
+    }
+}
+
+#[command]
+pub fn get_trusted_time<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method(JsonMethod::GetTrustedTime)?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let now = std::time::SystemTime::now()
+            .duration_since(std::time::UNIX_EPOCH)
+            .map(|d| d.as_millis() as i64)
+            .unwrap_or(0);
+        Ok(serde_json::json!({ "anchored": false, "trustedTime": now, "lostReason": "neverSynced" }))
+    }
+}
+
+#[command]
+pub fn anchor_trusted_time<R: Runtime>(
+    _app: AppHandle<R>,
+    network_time: i64,
+    uncertainty_ms: Option<i64>,
+    source: Option<String>,
+) -> Result<Value, String> {
+    let uncertainty_ms = uncertainty_ms
+        .unwrap_or(MIN_EXTERNAL_UNCERTAINTY_MS)
+        .max(MIN_EXTERNAL_UNCERTAINTY_MS);
+    let source = source.unwrap_or_else(|| "frontend".to_string());
+    #[cfg(target_os = "android")]
+    {
+        let val = plugin_bridge::get()?.call_json_with_strs(
+            JsonMethod::UpdateWithRealTime,
+            &[JValue::Long(network_time), JValue::Long(uncertainty_ms)],
+            &[source.as_str()],
+        )?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (network_time, uncertainty_ms, source);
+        Ok(serde_json::json!({ "anchorUpdated": false }))
+    }
+}
+
+// Queries several SNTP servers in parallel on the Java side and anchors the trusted clock
+// with the lowest-delay sample. Blocks for up to a few seconds, so it runs off the main thread.
+#[command]
+pub async fn sync_network_time<R: Runtime>(
+    _app: AppHandle<R>,
+    servers: Option<Vec<String>>,
+) -> Result<Value, String> {
+    let servers = servers.unwrap_or_default().join(",");
+    #[cfg(target_os = "android")]
+    {
+        return tauri::async_runtime::spawn_blocking(move || {
+            call_json_method_with_strs(JsonMethod::SyncNetworkTime, &[servers.as_str()])
+        })
+        .await
         .map_err(|e| e.to_string())?;
-        
-    let json_str: String = env.get_string(&json_jstr.into()).map_err(|e| e.to_string())?.into();
-    
-    let val: Value = serde_json::from_str(&json_str).unwrap_or(serde_json::json!({}));
-    Ok(val)
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = servers;
+        Ok(serde_json::json!({ "success": false, "error": "SNTP sync is only available on Android" }))
+    }
+}
+
+#[command]
+pub fn read_audit_log<R: Runtime>(
+    _app: AppHandle<R>,
+    after_seq: Option<i64>,
+    max: Option<i32>,
+) -> Result<Value, String> {
+    let after_seq = after_seq.unwrap_or(0);
+    let max = max.unwrap_or(256);
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_args(
+            JsonMethod::ReadAuditLog,
+            &[JValue::Long(after_seq), JValue::Int(max)],
+        )?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (after_seq, max);
+        Ok(serde_json::json!({ "records": [], "lastSeq": 0, "headHash": "", "brokenAtSeq": -1 }))
+    }
+}
+
+#[command]
+pub fn ack_audit_log<R: Runtime>(_app: AppHandle<R>, seq: i64) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_args(JsonMethod::AckAuditLog, &[JValue::Long(seq)])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = seq;
+        Ok(serde_json::json!({ "available": false }))
+    }
+}
+
+#[command]
+pub fn request_location_burst<R: Runtime>(
+    _app: AppHandle<R>,
+    duration_ms: Option<i64>,
+) -> Result<Value, String> {
+    // 0 lets the Java side pick its default burst window
+    let duration_ms = duration_ms.unwrap_or(0);
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_args(JsonMethod::RequestLocationBurst, &[JValue::Long(duration_ms)])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = duration_ms;
+        Ok(serde_json::json!({ "accepted": false }))
+    }
+}
+
+// Captures the security snapshot and fsyncs the punch to the native queue, so keep it
+// off the main thread. The upload itself happens later on the queue's own thread.
+#[command]
+pub async fn enqueue_punch<R: Runtime>(
+    _app: AppHandle<R>,
+    punch_type: String,
+    payload: Option<Value>,
+) -> Result<Value, String> {
+    let payload = payload.map(|p| p.to_string()).unwrap_or_default();
+    #[cfg(target_os = "android")]
+    {
+        return tauri::async_runtime::spawn_blocking(move || {
+            call_json_method_with_strs(JsonMethod::EnqueuePunch, &[punch_type.as_str(), payload.as_str()])
+        })
+        .await
+        .map_err(|e| e.to_string())?;
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (punch_type, payload);
+        Ok(serde_json::json!({ "success": false, "error": "Punch queue is only available on Android" }))
+    }
+}
+
+#[command]
+pub fn configure_punch_upload<R: Runtime>(
+    _app: AppHandle<R>,
+    url: Option<String>,
+    token: Option<String>,
+) -> Result<Value, String> {
+    let url = url.unwrap_or_default();
+    let token = token.unwrap_or_default();
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method_with_strs(JsonMethod::ConfigurePunchUpload, &[url.as_str(), token.as_str()])?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        let _ = (url, token);
+        Ok(serde_json::json!({ "configured": false }))
+    }
+}
+
+#[command]
+pub fn flush_punch_queue<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method(JsonMethod::FlushPunchQueue)?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        Ok(serde_json::json!({ "pendingCount": 0 }))
+    }
+}
+
+// Per-operation latency histograms (p50/p90/p99 + raw buckets) and location fix cadence
+#[command]
+pub fn get_metrics<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        let val = call_json_method(JsonMethod::GetMetrics)?;
+        return Ok(val);
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        Ok(serde_json::json!({ "operations": {}, "location": {}, "device": {} }))
+    }
+}
+
+#[command]
+pub fn get_bridge_stats<R: Runtime>(_app: AppHandle<R>) -> Result<Value, String> {
+    #[cfg(target_os = "android")]
+    {
+        return Ok(plugin_bridge::get()?.stats());
+    }
+    #[cfg(not(target_os = "android"))]
+    {
+        Ok(serde_json::json!({ "callCount": 0, "lookupsAvoided": 0 }))
+    }
+}
+
+#[cfg(target_os = "android")]
+fn call_json_method(method: JsonMethod) -> Result<Value, String> {
+    plugin_bridge::get()?.call_json(method, &[])
+}
+
+#[cfg(target_os = "android")]
+fn call_json_method_with_args(method: JsonMethod, args: &[JValue]) -> Result<Value, String> {
+    plugin_bridge::get()?.call_json(method, args)
+}
+
+// Calls a `(String, String, ...) -> String` method with each argument as a Java string
+#[cfg(target_os = "android")]
+fn call_json_method_with_strs(method: JsonMethod, args: &[&str]) -> Result<Value, String> {
+    plugin_bridge::get()?.call_json_with_strs(method, &[], args)
 }
@@ -1,5 +1,9 @@
 // Learn more about Tauri commands at https://tauri.app/develop/calling-rust/
 mod anticheat;
+#[cfg(target_os = "android")]
+mod location_stream;
+#[cfg(target_os = "android")]
+mod plugin_bridge;
 
 #[tauri::command]
 fn greet(name: &str) -> String {
@@ -18,7 +22,23 @@ pub fn run() {
             anticheat::init_anticheat,
             anticheat::get_secure_location,
             anticheat::check_time_reliability,
-            anticheat::check_root_status
+            anticheat::check_root_status,
+            anticheat::get_security_snapshot,
+            anticheat::read_location_stream,
+            anticheat::get_location_history,
+            anticheat::load_geofences,
+            anticheat::load_trust_rules,
+            anticheat::request_location_burst,
+            anticheat::read_audit_log,
+            anticheat::ack_audit_log,
+            anticheat::get_trusted_time,
+            anticheat::anchor_trusted_time,
+            anticheat::sync_network_time,
+            anticheat::enqueue_punch,
+            anticheat::configure_punch_upload,
+            anticheat::flush_punch_queue,
+            anticheat::get_bridge_stats,
+            anticheat::get_metrics
         ])
         .run(tauri::generate_context!())
         .expect("error while running tauri application");
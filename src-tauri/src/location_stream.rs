@@ -0,0 +1,164 @@
+// Reader for the binary location ring written by
+// com.dell.timekeeping.anticheat.LocationStreamBuffer.
+//
+// The Java side owns a direct ByteBuffer; we resolve its address once and then
+// read records in place without any JNI call or JSON parsing per fix.
+// See LocationStreamBuffer.java for the exact layout.
+
+use serde::Serialize;
+use std::sync::atomic::{fence, Ordering};
+
+pub const MAGIC: u32 = 0x4C4F_4331;
+pub const VERSION: u32 = 1;
+pub const HEADER_SIZE: usize = 64;
+pub const RECORD_SIZE: usize = 64;
+
+const OFF_WRITE_SEQ: usize = 16;
+const MAX_READ_RETRIES: usize = 4;
+
+// Subset of LocationStreamBuffer.FLAG_* used on this side; raw flags are passed through.
+pub const FLAG_MOCK: i32 = 1;
+pub const FLAG_PROVIDER_GPS: i32 = 1 << 4;
+pub const FLAG_PROVIDER_NETWORK: i32 = 1 << 5;
+
+#[derive(Debug, Clone, Serialize)]
+#[serde(rename_all = "camelCase")]
+pub struct LocationRecord {
+    pub seq: u64,
+    pub latitude: f64,
+    pub longitude: f64,
+    pub accuracy: f32,
+    pub speed_mps: f32,
+    pub satellites: i32,
+    pub trust_score: i32,
+    pub status: i32,
+    pub flags: i32,
+    pub gps_time: i64,
+    pub system_time: i64,
+    pub is_from_mock_provider: bool,
+    pub provider: &'static str,
+}
+
+#[derive(Debug, Serialize)]
+#[serde(rename_all = "camelCase")]
+pub struct StreamBatch {
+    pub latest_seq: u64,
+    pub records: Vec<LocationRecord>,
+}
+
+/// View over the shared ring. `base` must stay valid for the life of the
+/// process; on Android this is guaranteed by a JNI global ref to the buffer.
+pub struct LocationStreamView {
+    base: *const u8,
+    capacity: usize,
+}
+
+unsafe impl Send for LocationStreamView {}
+unsafe impl Sync for LocationStreamView {}
+
+impl LocationStreamView {
+    /// # Safety
+    /// `base` must point to at least `len` readable bytes that outlive the view.
+    pub unsafe fn from_raw(base: *const u8, len: usize) -> Result<Self, String> {
+        if base.is_null() || len < HEADER_SIZE {
+            return Err("location stream buffer is not available".into());
+        }
+        let magic = read_u32(base, 0);
+        let version = read_u32(base, 4);
+        let capacity = read_u32(base, 8) as usize;
+        let record_size = read_u32(base, 12) as usize;
+        if magic != MAGIC || version != VERSION || record_size != RECORD_SIZE {
+            return Err(format!("unexpected location stream header: magic={magic:#x} version={version}"));
+        }
+        if len < HEADER_SIZE + capacity * RECORD_SIZE {
+            return Err("location stream buffer is truncated".into());
+        }
+        Ok(Self { base, capacity })
+    }
+
+    pub fn latest_seq(&self) -> u64 {
+        let seq = unsafe { read_i64_volatile(self.base, OFF_WRITE_SEQ) };
+        fence(Ordering::Acquire);
+        seq.max(0) as u64
+    }
+
+    /// Returns committed records with seq > `after_seq`, oldest first, at most `max`.
+    pub fn read_since(&self, after_seq: u64, max: usize) -> StreamBatch {
+        let latest = self.latest_seq();
+        let oldest = latest.saturating_sub(self.capacity as u64) + 1;
+        let mut start = after_seq.saturating_add(1).max(oldest);
+        if latest >= start && (latest - start + 1) as usize > max {
+            start = latest + 1 - max as u64;
+        }
+
+        let mut records = Vec::with_capacity(latest.saturating_sub(start - 1).min(max as u64) as usize);
+        let mut seq = start;
+        while seq <= latest {
+            if let Some(record) = self.read_record(seq) {
+                records.push(record);
+            }
+            seq += 1;
+        }
+        StreamBatch { latest_seq: latest, records }
+    }
+
+    fn read_record(&self, seq: u64) -> Option<LocationRecord> {
+        let offset = HEADER_SIZE + ((seq - 1) as usize % self.capacity) * RECORD_SIZE;
+        for _ in 0..MAX_READ_RETRIES {
+            let before = unsafe { read_i64_volatile(self.base, offset) };
+            fence(Ordering::Acquire);
+            if before != seq as i64 {
+                // Slot has already been (or is being) overwritten by a newer fix
+                return None;
+            }
+
+            let mut raw = [0u8; RECORD_SIZE];
+            unsafe { std::ptr::copy_nonoverlapping(self.base.add(offset), raw.as_mut_ptr(), RECORD_SIZE) };
+            fence(Ordering::Acquire);
+
+            let after = unsafe { read_i64_volatile(self.base, offset) };
+            if after == before {
+                return Some(decode(seq, &raw));
+            }
+        }
+        None
+    }
+}
+
+fn decode(seq: u64, raw: &[u8; RECORD_SIZE]) -> LocationRecord {
+    let flags = i32_at(raw, 44);
+    let provider = if flags & FLAG_PROVIDER_GPS != 0 {
+        "gps"
+    } else if flags & FLAG_PROVIDER_NETWORK != 0 {
+        "network"
+    } else {
+        "unknown"
+    };
+    LocationRecord {
+        seq,
+        latitude: f64::from_ne_bytes(raw[8..16].try_into().unwrap()),
+        longitude: f64::from_ne_bytes(raw[16..24].try_into().unwrap()),
+        accuracy: f32::from_ne_bytes(raw[24..28].try_into().unwrap()),
+        speed_mps: f32::from_ne_bytes(raw[28..32].try_into().unwrap()),
+        satellites: i32_at(raw, 32),
+        trust_score: i32_at(raw, 36),
+        status: i32_at(raw, 40),
+        flags,
+        gps_time: i64::from_ne_bytes(raw[48..56].try_into().unwrap()),
+        system_time: i64::from_ne_bytes(raw[56..64].try_into().unwrap()),
+        is_from_mock_provider: flags & FLAG_MOCK != 0,
+        provider,
+    }
+}
+
+fn i32_at(raw: &[u8], offset: usize) -> i32 {
+    i32::from_ne_bytes(raw[offset..offset + 4].try_into().unwrap())
+}
+
+unsafe fn read_u32(base: *const u8, offset: usize) -> u32 {
+    u32::from_ne_bytes(std::ptr::read_volatile(base.add(offset) as *const [u8; 4]))
+}
+
+unsafe fn read_i64_volatile(base: *const u8, offset: usize) -> i64 {
+    i64::from_ne_bytes(std::ptr::read_volatile(base.add(offset) as *const [u8; 8]))
+}
@@ -0,0 +1,252 @@
+// Cached JNI handles for com.dell.timekeeping.anticheat.AntiCheatPlugin.
+//
+// The plugin class, the singleton instance and the method ID of every `xxxJson`
+// method are resolved once and kept for the life of the process: the class and
+// instance as JNI global refs (the global class ref also keeps the method IDs
+// valid), the IDs in a table indexed by `JsonMethod`. Calling threads attach
+// permanently, so a command costs one CallObjectMethod plus the string copy.
+
+use jni::objects::{GlobalRef, JClass, JMethodID, JObject, JString, JValue};
+use jni::signature::ReturnType;
+use jni::sys::jvalue;
+use jni::{JNIEnv, JavaVM};
+use serde_json::Value;
+use std::sync::atomic::{AtomicU64, Ordering};
+use std::sync::{Mutex, OnceLock};
+use std::time::Instant;
+
+const PLUGIN_CLASS: &str = "com.dell.timekeeping.anticheat.AntiCheatPlugin";
+const GET_INSTANCE_SIG: &str = "(Landroid/content/Context;)Lcom/dell/timekeeping/anticheat/AntiCheatPlugin;";
+
+// Per call the old path did a class lookup, a getInstance call and a method ID lookup
+const LOOKUPS_PER_CALL: u64 = 3;
+
+macro_rules! json_methods {
+    ($($variant:ident => ($name:literal, $sig:literal),)*) => {
+        // Java methods returning a JSON string (or null), in table order
+        #[derive(Clone, Copy, Debug)]
+        pub enum JsonMethod {
+            $($variant,)*
+        }
+
+        const JSON_METHODS: &[(&str, &str)] = &[$(($name, $sig),)*];
+    };
+}
+
+json_methods! {
+    GetSecureLocation => ("getSecureLocationJson", "()Ljava/lang/String;"),
+    CheckTimeReliability => ("checkTimeReliabilityJson", "()Ljava/lang/String;"),
+    CheckRootStatus => ("checkRootStatusJson", "()Ljava/lang/String;"),
+    RefreshRootStatus => ("refreshRootStatusJson", "()Ljava/lang/String;"),
+    GetSecuritySnapshot => ("getSecuritySnapshotJson", "(I)Ljava/lang/String;"),
+    GetLocationHistory => ("getLocationHistoryJson", "(IJ)Ljava/lang/String;"),
+    LoadGeofences => ("loadGeofencesJson", "(Ljava/lang/String;)Ljava/lang/String;"),
+    GetTrustedTime => ("getTrustedTimeJson", "()Ljava/lang/String;"),
+    UpdateWithRealTime => ("updateWithRealTimeJson", "(JJLjava/lang/String;)Ljava/lang/String;"),
+    SyncNetworkTime => ("syncNetworkTimeJson", "(Ljava/lang/String;)Ljava/lang/String;"),
+    ReadAuditLog => ("readAuditLogJson", "(JI)Ljava/lang/String;"),
+    AckAuditLog => ("ackAuditLogJson", "(J)Ljava/lang/String;"),
+    RequestLocationBurst => ("requestLocationBurstJson", "(J)Ljava/lang/String;"),
+    EnqueuePunch => ("enqueuePunchJson", "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;"),
+    ConfigurePunchUpload => ("configurePunchUploadJson", "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;"),
+    FlushPunchQueue => ("flushPunchQueueJson", "()Ljava/lang/String;"),
+    PollEvents => ("pollEventsJson", "(J)Ljava/lang/String;"),
+    GetMetrics => ("getMetricsJson", "()Ljava/lang/String;"),
+    LoadTrustRules => ("loadTrustRulesJson", "(Ljava/lang/String;)Ljava/lang/String;"),
+}
+
+pub struct PluginBridge {
+    vm: JavaVM,
+    // Never read, but pins the class so the cached method IDs stay valid
+    _class: GlobalRef,
+    instance: GlobalRef,
+    methods: Vec<JMethodID>,
+    resolve_micros: u64,
+    call_count: AtomicU64,
+    error_count: AtomicU64,
+}
+
+static BRIDGE: OnceLock<PluginBridge> = OnceLock::new();
+static RESOLVE_LOCK: Mutex<()> = Mutex::new(());
+
+// Resolves the bridge on first use; later calls are a single atomic load
+pub fn get() -> Result<&'static PluginBridge, String> {
+    if let Some(bridge) = BRIDGE.get() {
+        return Ok(bridge);
+    }
+    let _guard = RESOLVE_LOCK.lock().map_err(|e| e.to_string())?;
+    if let Some(bridge) = BRIDGE.get() {
+        return Ok(bridge);
+    }
+    let bridge = PluginBridge::resolve()?;
+    let _ = BRIDGE.set(bridge);
+    BRIDGE.get().ok_or_else(|| "plugin bridge not initialized".to_string())
+}
+
+impl PluginBridge {
+    fn resolve() -> Result<PluginBridge, String> {
+        let started = Instant::now();
+        let ctx = ndk_context::android_context();
+        let vm = unsafe { JavaVM::from_raw(ctx.vm() as *mut _) }.map_err(|e| e.to_string())?;
+
+        let (class, instance, methods) = {
+            let mut env = vm.attach_current_thread_permanently().map_err(|e| e.to_string())?;
+            let context_obj = unsafe { JObject::from_raw(ctx.context() as *mut _) };
+
+            let cls = load_plugin_class(&mut env, &context_obj)?;
+            let instance = env
+                .call_static_method(&cls, "getInstance", GET_INSTANCE_SIG, &[JValue::Object(&context_obj)])
+                .and_then(|v| v.l())
+                .map_err(|e| clear_exception(&mut env, e))?;
+
+            let mut methods = Vec::with_capacity(JSON_METHODS.len());
+            for (name, sig) in JSON_METHODS {
+                let id = env
+                    .get_method_id(&cls, *name, *sig)
+                    .map_err(|e| format!("{}{}: {}", name, sig, clear_exception(&mut env, e)))?;
+                methods.push(id);
+            }
+
+            let class = env.new_global_ref(&cls).map_err(|e| e.to_string())?;
+            let instance = env.new_global_ref(&instance).map_err(|e| e.to_string())?;
+            (class, instance, methods)
+        };
+
+        Ok(PluginBridge {
+            vm,
+            _class: class,
+            instance,
+            methods,
+            resolve_micros: started.elapsed().as_micros() as u64,
+            call_count: AtomicU64::new(0),
+            error_count: AtomicU64::new(0),
+        })
+    }
+
+    // Attach the calling thread for good; a no-op GetEnv when it is already attached
+    pub fn env(&self) -> Result<JNIEnv<'_>, String> {
+        self.vm.attach_current_thread_permanently().map_err(|e| e.to_string())
+    }
+
+    pub fn instance(&self) -> &JObject<'static> {
+        self.instance.as_obj()
+    }
+
+    pub fn call_json(&self, method: JsonMethod, args: &[JValue]) -> Result<Value, String> {
+        self.call_json_with_strs(method, args, &[])
+    }
+
+    // Calls a method whose Java parameters are `args` followed by one String per `strs` entry
+    pub fn call_json_with_strs(&self, method: JsonMethod, args: &[JValue], strs: &[&str]) -> Result<Value, String> {
+        let mut env = self.env()?;
+        match self.call_string_with_strs(&mut env, method, args, strs)? {
+            Some(json) => self.parse_json(method, &json),
+            None => Err(format!("{} returned null", JSON_METHODS[method as usize].0)),
+        }
+    }
+
+    // Malformed output from the Java side is an error, not an empty object
+    pub fn parse_json(&self, method: JsonMethod, json: &str) -> Result<Value, String> {
+        serde_json::from_str(json).map_err(|e| {
+            self.error_count.fetch_add(1, Ordering::Relaxed);
+            format!("{}: invalid JSON: {}", JSON_METHODS[method as usize].0, e)
+        })
+    }
+
+    // Raw call on an env the caller already holds (the event pump keeps one for its lifetime)
+    pub fn call_string(&self, env: &mut JNIEnv, method: JsonMethod, args: &[JValue]) -> Result<Option<String>, String> {
+        self.call_string_with_strs(env, method, args, &[])
+    }
+
+    fn call_string_with_strs(
+        &self,
+        env: &mut JNIEnv,
+        method: JsonMethod,
+        args: &[JValue],
+        strs: &[&str],
+    ) -> Result<Option<String>, String> {
+        let mut jstrings: Vec<JString> = Vec::with_capacity(strs.len());
+        for s in strs {
+            match env.new_string(s) {
+                Ok(js) => jstrings.push(js),
+                Err(e) => {
+                    let err = clear_exception(env, e);
+                    for js in jstrings {
+                        let _ = env.delete_local_ref(js);
+                    }
+                    return Err(err);
+                }
+            }
+        }
+
+        let mut raw: Vec<jvalue> = Vec::with_capacity(args.len() + jstrings.len());
+        raw.extend(args.iter().map(|v| v.as_jni()));
+        raw.extend(jstrings.iter().map(|js| JValue::Object(js).as_jni()));
+
+        // SAFETY: the method ID was resolved against the plugin class with the signature in
+        // JSON_METHODS, and callers pass arguments matching that signature.
+        let result = unsafe {
+            env.call_method_unchecked(self.instance.as_obj(), self.methods[method as usize], ReturnType::Object, &raw)
+        }
+        .and_then(|v| v.l());
+
+        // Threads stay attached, so local refs must be freed explicitly
+        for js in jstrings {
+            let _ = env.delete_local_ref(js);
+        }
+
+        let obj = match result {
+            Ok(obj) => obj,
+            Err(e) => {
+                self.error_count.fetch_add(1, Ordering::Relaxed);
+                return Err(clear_exception(env, e));
+            }
+        };
+        self.call_count.fetch_add(1, Ordering::Relaxed);
+        if obj.is_null() {
+            return Ok(None);
+        }
+
+        let jstr = JString::from(obj);
+        let text = match env.get_string(&jstr) {
+            Ok(s) => Ok(String::from(s)),
+            Err(e) => Err(clear_exception(env, e)),
+        };
+        let _ = env.delete_local_ref(jstr);
+        text.map(Some)
+    }
+
+    pub fn stats(&self) -> Value {
+        let calls = self.call_count.load(Ordering::Relaxed);
+        serde_json::json!({
+            "callCount": calls,
+            "errorCount": self.error_count.load(Ordering::Relaxed),
+            "lookupsAvoided": calls * LOOKUPS_PER_CALL,
+            "cachedMethodCount": self.methods.len(),
+            "resolveMicros": self.resolve_micros,
+        })
+    }
+}
+
+// Threads stay attached, so a pending Java exception must be cleared before the next JNI call
+pub fn clear_exception(env: &mut JNIEnv, err: jni::errors::Error) -> String {
+    if env.exception_check().unwrap_or(false) {
+        let _ = env.exception_clear();
+    }
+    err.to_string()
+}
+
+// FindClass on a thread attached from native code (e.g. a blocking worker) only sees the
+// system class loader, so resolve the plugin through the app's class loader instead.
+fn load_plugin_class<'local>(env: &mut JNIEnv<'local>, context_obj: &JObject) -> Result<JClass<'local>, String> {
+    let loader = env
+        .call_method(context_obj, "getClassLoader", "()Ljava/lang/ClassLoader;", &[])
+        .and_then(|v| v.l())
+        .map_err(|e| clear_exception(env, e))?;
+    let name = env.new_string(PLUGIN_CLASS).map_err(|e| clear_exception(env, e))?;
+    let cls = env
+        .call_method(&loader, "loadClass", "(Ljava/lang/String;)Ljava/lang/Class;", &[JValue::Object(&name)])
+        .and_then(|v| v.l())
+        .map_err(|e| clear_exception(env, e))?;
+    Ok(cls.into())
+}
@@ -83,6 +83,9 @@ export function PreCheckModal({
 
     if (!isMountedRef.current) return;
 
+    // Get fresh GPS fixes while the checks run
+    void AnticheatService.requestLocationBurst();
+
     try {
       // Run checks and min-wait time in parallel
       const minDelayPromise = new Promise((resolve) =>
@@ -1,10 +1,34 @@
 import { invoke } from "@tauri-apps/api/core";
+import { listen, type UnlistenFn } from "@tauri-apps/api/event";
 import { platform } from "@tauri-apps/plugin-os";
 import {
   checkPermissions,
   requestPermissions,
 } from "@tauri-apps/plugin-geolocation";
 
+export interface GeofenceMatch {
+  siteId: string;
+  name: string;
+  inside: boolean;
+  distance: number; // meters to the site edge, 0 when inside
+}
+
+export type GeofenceSite =
+  | {
+      id: string;
+      name?: string;
+      type?: "circle";
+      latitude: number;
+      longitude: number;
+      radius: number;
+    }
+  | {
+      id: string;
+      name?: string;
+      type: "polygon";
+      points: [number, number][]; // [lat, lng]
+    };
+
 export interface LocationInfo {
   latitude: number;
   longitude: number;
@@ -18,6 +42,8 @@ export interface LocationInfo {
   trustScore: number;
   satellites: number;
   warnings: string;
+  geofences?: GeofenceMatch[];
+  insideGeofence?: boolean;
 
   // Status codes
   status: number; // 0=VALID, 1=SUSPICIOUS, 2=FAKE
@@ -36,14 +62,258 @@ export interface TimeReliabilityInfo {
   autoTimeZoneEnabled: boolean;
 }
 
+export interface IntegrityProbe {
+  name: "paths" | "mounts" | "props" | "selinux";
+  status: "clean" | "detected" | "unavailable" | "timeout" | "error";
+  reason: string;
+  durationUs: number;
+}
+
+export interface IntegrityReport {
+  bootId: string;
+  isRooted: boolean;
+  rootMethod: string;
+  complete: boolean; // false when a probe timed out or failed
+  probes: IntegrityProbe[];
+  scannedAt: number;
+  durationMs: number;
+  memoized: boolean; // reused from an earlier scan in this boot session
+}
+
 export interface SecurityInfo {
   isRooted: boolean;
   rootMethod?: string;
+  integrity?: IntegrityReport;
   deviceModel?: string;
   manufacturer?: string;
   isEmulator?: boolean;
 }
 
+/**
+ * Field mask for get_security_snapshot (mirrors AntiCheatPlugin.SNAPSHOT_*)
+ */
+export const SnapshotField = {
+  LOCATION: 1,
+  TIME: 1 << 1,
+  DEVICE: 1 << 2,
+  TELEMETRY: 1 << 3,
+  ALL: 0xf,
+} as const;
+
+export interface SecuritySnapshot {
+  systemTime?: number;
+  elapsedRealtime?: number;
+  fieldMask?: number;
+  location?: LocationInfo;
+  time?: TimeReliabilityInfo;
+  device?: SecurityInfo;
+  telemetry?: Record<string, unknown>;
+}
+
+export interface LocationStreamRecord {
+  seq: number;
+  latitude: number;
+  longitude: number;
+  accuracy: number;
+  speedMps: number;
+  satellites: number;
+  trustScore: number;
+  status: number;
+  flags: number;
+  gpsTime: number;
+  systemTime: number;
+  isFromMockProvider: boolean;
+  provider: string;
+}
+
+export interface LocationStreamBatch {
+  latestSeq: number;
+  records: LocationStreamRecord[];
+}
+
+export interface LocationHistoryEntry {
+  latitude: number;
+  longitude: number;
+  accuracy: number;
+  speedMps: number;
+  gpsTime: number;
+  trustScore: number;
+  status: number;
+}
+
+export interface ProviderChangeEvent {
+  provider: string;
+  enabled: boolean;
+}
+
+// Either a reportTimeAnomaly payload or a full TimeReliabilityInfo that failed the check
+export type TimeAnomalyEvent = Record<string, unknown>;
+
+export interface AuditLogEntry {
+  seq: number;
+  wallTime: number;
+  elapsedRealtime: number;
+  type: number; // 1 reboot penalty, 2 clear penalty, 3 recovery, 4 time anomaly, 5 time cheating
+  value: number; // reliability value after the event
+  arg: number;
+  detail: string;
+  hash: string; // SHA-256 chain hash, hex
+}
+
+export interface AuditLogBatch {
+  records: AuditLogEntry[];
+  lastSeq: number;
+  headHash: string;
+  brokenAtSeq: number; // -1 when the hash chain verifies
+}
+
+export interface TrustedTime {
+  anchored: boolean;
+  trustedTime: number; // ms since epoch; system time when not anchored
+  uncertaintyMs: number; // -1 when not anchored
+  anchorAgeMs: number;
+  systemTime: number;
+  systemOffsetMs: number; // system clock minus trusted time
+  source: string;
+  anchorLost: boolean;
+  lostReason: "" | "neverSynced" | "reboot";
+}
+
+export interface SntpSyncResult {
+  success: boolean;
+  error?: string;
+  sntp?: {
+    server: string;
+    networkTime: number;
+    offsetMs: number; // network time minus system time
+    delayMs: number;
+    uncertaintyMs: number;
+    validSamples: number;
+    sentSamples: number;
+  };
+}
+
+export interface PunchQueueStats {
+  pendingCount: number;
+  enqueuedCount: number;
+  uploadedCount: number;
+  rejectedCount: number;
+  uploadFailureCount: number;
+  consecutiveFailures: number;
+  retryInMs: number;
+  configured: boolean;
+  authPaused: boolean;
+  lastHttpStatus: number;
+  lastError: string;
+}
+
+export interface EnqueuedPunch {
+  success: boolean;
+  error?: string;
+  idempotencyKey?: string;
+  capturedAt?: number; // trusted time when trustedTime is true, system time otherwise
+  trustedTime?: boolean;
+  pendingCount?: number;
+}
+
+export interface BridgeStats {
+  callCount: number;
+  errorCount: number;
+  lookupsAvoided: number; // class + getInstance + method ID lookups skipped by the cache
+  cachedMethodCount: number;
+  resolveMicros: number;
+}
+
+export interface LatencyStats {
+  count: number;
+  meanUs: number;
+  maxUs: number;
+  p50Us: number;
+  p90Us: number;
+  p99Us: number;
+  buckets: [number, number][]; // [lower bound in µs, count], non-empty buckets only
+  errorCount?: number;
+}
+
+export interface AnticheatMetrics {
+  // initialize, checkRootStatus, checkTimeReliability, getSecureLocation, getSecuritySnapshot, processFix
+  operations: Record<string, LatencyStats>;
+  location: {
+    fixCount: number;
+    fixIntervalMs: number;
+    fixesPerMinute: number;
+    lastFixAgeMs: number; // -1 before the first fix
+    fixAge: LatencyStats; // fix timestamp to delivery
+  };
+  device: { model: string; manufacturer: string; sdkVersion: number };
+  elapsedRealtime: number;
+}
+
+export type TrustRuleSignal =
+  // location
+  | "mockProvider"
+  | "gpsProvider"
+  | "satellites"
+  | "altitudeMissing"
+  | "accuracyM"
+  | "impliedSpeedMps"
+  | "teleport"
+  | "impossibleSpeed"
+  | "impossibleAcceleration"
+  | "speedMismatch"
+  | "providerJump"
+  // time
+  | "reliability"
+  | "rebooted"
+  | "cleared"
+  | "rebootedOrCleared"
+  | "autoTimeOff"
+  | "autoTimeZoneOff"
+  | "autoSettingOff"
+  | "driftReady"
+  | "skewMs"
+  | "skewExcessMs";
+
+export interface TrustRule {
+  id: string;
+  // All conditions must hold; booleans are 1/0
+  when: {
+    signal: TrustRuleSignal;
+    op?: "gt" | "ge" | "lt" | "le" | "eq" | "ne";
+    value: number;
+  }[];
+  weight?: number; // added to the score when the rule matches
+  flags?: number; // warning flag bits (location domain)
+  verdict?: "pass" | "suspicious" | "reject"; // minimum verdict when matched
+  terminal?: boolean; // stop evaluating once this rule matches
+}
+
+export interface TrustRuleDomain {
+  baseScore?: number; // default 100
+  suspiciousBelow?: number; // default 50
+  rejectAtOrBelow?: number; // default 0
+  rules: TrustRule[];
+}
+
+export interface TrustRuleConfig {
+  version?: string;
+  // A missing domain keeps the built-in rules
+  location?: TrustRuleDomain;
+  time?: TrustRuleDomain;
+}
+
+const EVENT_PREFIX = "anticheat://";
+
+const subscribe = async <T>(
+  topic: string,
+  handler: (payload: T) => void,
+): Promise<UnlistenFn> => {
+  if (!AnticheatService.isAndroidNative()) {
+    return () => {};
+  }
+  return listen<T>(EVENT_PREFIX + topic, (event) => handler(event.payload));
+};
+
 export const AnticheatService = {
   /**
    * Checks if the current environment is Android native
@@ -96,6 +366,19 @@ export const AnticheatService = {
    * Get the current secure location with anti-fake GPS analysis.
    * Returns a valid mock object on non-Android platforms.
    */
+  /**
+   * Subscribe to fixes pushed by the native pipeline (native events require init_anticheat).
+   * Consecutive fixes are coalesced when the listener is slow, so only the latest is delivered.
+   */
+  onLocationUpdate: (handler: (location: LocationInfo) => void) =>
+    subscribe<LocationInfo>("location", handler),
+
+  onProviderChange: (handler: (event: ProviderChangeEvent) => void) =>
+    subscribe<ProviderChangeEvent>("provider", handler),
+
+  onTimeAnomaly: (handler: (event: TimeAnomalyEvent) => void) =>
+    subscribe<TimeAnomalyEvent>("timeAnomaly", handler),
+
   getSecureLocation: async (): Promise<LocationInfo> => {
     if (!AnticheatService.isAndroidNative()) {
       return {
@@ -117,6 +400,226 @@ export const AnticheatService = {
     return invoke("get_secure_location");
   },
 
+  /**
+   * Read fixes recorded since `afterSeq` from the native binary location ring.
+   * Pass the returned latestSeq back in to receive only new fixes.
+   */
+  readLocationStream: async (
+    afterSeq = 0,
+    max?: number,
+  ): Promise<LocationStreamBatch> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return { latestSeq: 0, records: [] };
+    }
+    return invoke("read_location_stream", { afterSeq, max });
+  },
+
+  /**
+   * Recent location history kept natively (newest first).
+   * `sinceTime` is a GPS timestamp in ms; 0 returns everything retained.
+   */
+  getLocationHistory: async (
+    maxSamples?: number,
+    sinceTime = 0,
+  ): Promise<LocationHistoryEntry[]> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return [];
+    }
+    return invoke("get_location_history", { maxSamples, sinceTime });
+  },
+
+  /**
+   * Replace the native geofence index with the tenant's check-in sites.
+   * Matching sites are then returned in every location payload.
+   */
+  loadGeofences: async (sites: GeofenceSite[]): Promise<number> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return 0;
+    }
+    const result = await invoke<{
+      loaded: number;
+      rejected?: number;
+      error?: string;
+    }>("load_geofences", { sites });
+    if (result.error) {
+      console.warn("[Anticheat] Geofence load failed:", result.error);
+    }
+    if (result.rejected) {
+      console.warn(
+        `[Anticheat] ${result.rejected} geofence site(s) too large to index`,
+      );
+    }
+    return result.loaded;
+  },
+
+  /**
+   * Replace the trust scoring rules with a server-provided set.
+   * Takes effect on the next fix / time check; an invalid config is rejected
+   * as a whole and the current rules stay active.
+   */
+  loadTrustRules: async (rules: TrustRuleConfig): Promise<number> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return 0;
+    }
+    const result = await invoke<{ loaded: number; error?: string }>(
+      "load_trust_rules",
+      { rules },
+    );
+    if (result.error) {
+      console.warn("[Anticheat] Trust rules load failed:", result.error);
+    }
+    return result.loaded;
+  },
+
+  /**
+   * Trusted "now" from the native clock anchored on network time.
+   * No network call; unaffected by manual changes to the system clock.
+   */
+  getTrustedTime: async (): Promise<TrustedTime> => {
+    if (!AnticheatService.isAndroidNative()) {
+      const now = Date.now();
+      return {
+        anchored: false,
+        trustedTime: now,
+        uncertaintyMs: -1,
+        anchorAgeMs: -1,
+        systemTime: now,
+        systemOffsetMs: 0,
+        source: "system",
+        anchorLost: true,
+        lostReason: "neverSynced",
+      };
+    }
+    return invoke<TrustedTime>("get_trusted_time");
+  },
+
+  /**
+   * Anchor the native trusted clock on a network time that is valid right now.
+   */
+  anchorTrustedTime: async (
+    networkTime: number,
+    uncertaintyMs: number,
+    source: string,
+  ): Promise<void> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return;
+    }
+    await invoke("anchor_trusted_time", {
+      networkTime: Math.round(networkTime),
+      uncertaintyMs: Math.round(uncertaintyMs),
+      source,
+    });
+  },
+
+  /**
+   * Sync the native trusted clock over SNTP (several UDP samples per server,
+   * lowest-delay sample wins). Independent of the backend time-sync endpoint.
+   */
+  syncNetworkTime: async (servers?: string[]): Promise<SntpSyncResult> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return { success: false, error: "Not supported" };
+    }
+    return await invoke<SntpSyncResult>("sync_network_time", { servers });
+  },
+
+  /**
+   * Queue a punch natively. The location/time/device snapshot is captured at
+   * call time and the punch is stored durably, then uploaded in gzip batches
+   * (with per-punch idempotency keys) once the upload endpoint is configured
+   * and the network is available.
+   */
+  enqueuePunch: async (
+    punchType: string,
+    payload?: Record<string, unknown>,
+  ): Promise<EnqueuedPunch> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return { success: false, error: "Not supported" };
+    }
+    return await invoke<EnqueuedPunch>("enqueue_punch", { punchType, payload });
+  },
+
+  /**
+   * Set the batch upload endpoint and bearer token. The token is kept in
+   * memory only, so call this again after every sign-in or token refresh.
+   */
+  configurePunchUpload: async (
+    url: string | null,
+    token: string | null,
+  ): Promise<PunchQueueStats | null> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return null;
+    }
+    return await invoke<PunchQueueStats>("configure_punch_upload", { url, token });
+  },
+
+  /**
+   * Upload queued punches now, skipping any pending backoff. Returns immediately.
+   */
+  flushPunchQueue: async (): Promise<PunchQueueStats | null> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return null;
+    }
+    return await invoke<PunchQueueStats>("flush_punch_queue");
+  },
+
+  /**
+   * Native call latency histograms and location fix cadence, to attach to telemetry.
+   */
+  getMetrics: async (): Promise<AnticheatMetrics | null> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return null;
+    }
+    return await invoke<AnticheatMetrics>("get_metrics");
+  },
+
+  /**
+   * Counters of the native JNI bridge (diagnostics only).
+   */
+  getBridgeStats: async (): Promise<BridgeStats | null> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return null;
+    }
+    return await invoke<BridgeStats>("get_bridge_stats");
+  },
+
+  /**
+   * Read audit records after `afterSeq` to attach to the next punch upload.
+   * Call ackAuditLog with the last uploaded seq once the server accepted them.
+   */
+  readAuditLog: async (afterSeq = 0, max = 256): Promise<AuditLogBatch> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return { records: [], lastSeq: 0, headHash: "", brokenAtSeq: -1 };
+    }
+    return invoke<AuditLogBatch>("read_audit_log", { afterSeq, max });
+  },
+
+  ackAuditLog: async (seq: number): Promise<void> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return;
+    }
+    await invoke("ack_audit_log", { seq });
+  },
+
+  /**
+   * Switch native location updates to high-frequency GPS while the user is
+   * checking in. Falls back to the normal profile after `durationMs`.
+   */
+  requestLocationBurst: async (durationMs?: number): Promise<boolean> => {
+    if (!AnticheatService.isAndroidNative()) {
+      return false;
+    }
+    try {
+      const result = await invoke<{ accepted: boolean }>(
+        "request_location_burst",
+        { durationMs },
+      );
+      return result.accepted;
+    } catch (e) {
+      console.warn("[Anticheat] Location burst request failed:", e);
+      return false;
+    }
+  },
+
   /**
    * Check if the device time is reliable and not manipulated.
    * Returns a valid mock object on non-Android platforms.
@@ -141,15 +644,40 @@ export const AnticheatService = {
 
   /**
    * Check if the device is rooted or compromised.
+   * Uses the verdict cached natively at init; pass forceRefresh to re-scan.
    * Returns a valid mock object on non-Android platforms.
    */
-  checkRootStatus: async (): Promise<SecurityInfo> => {
+  checkRootStatus: async (forceRefresh = false): Promise<SecurityInfo> => {
     if (!AnticheatService.isAndroidNative()) {
       return {
         isRooted: false,
       };
     }
-    return invoke("check_root_status");
+    return invoke("check_root_status", { forceRefresh });
+  },
+
+  /**
+   * Fetch location, time reliability, root status and telemetry in a single
+   * native round-trip. `fields` is a SnapshotField mask (default: all).
+   */
+  getSecuritySnapshot: async (
+    fields: number = SnapshotField.ALL,
+  ): Promise<SecuritySnapshot> => {
+    if (!AnticheatService.isAndroidNative()) {
+      const [device, location, time] = await Promise.all([
+        AnticheatService.checkRootStatus(),
+        AnticheatService.getSecureLocation(),
+        AnticheatService.checkTimeReliability(),
+      ]);
+      return {
+        systemTime: Date.now(),
+        fieldMask: fields,
+        location: fields & SnapshotField.LOCATION ? location : undefined,
+        time: fields & SnapshotField.TIME ? time : undefined,
+        device: fields & SnapshotField.DEVICE ? device : undefined,
+      };
+    }
+    return invoke("get_security_snapshot", { fields });
   },
 
   /**
@@ -169,16 +697,17 @@ export const AnticheatService = {
         setTimeout(() => reject(new Error("Timeout checking security")), 10000),
       );
 
-      const checksPromise = Promise.all([
-        AnticheatService.checkRootStatus(),
-        AnticheatService.getSecureLocation(),
-        AnticheatService.checkTimeReliability(),
-      ]);
-
-      const [rootResult, locationResult, timeResult] = (await Promise.race([
-        checksPromise,
+      // Single native call instead of three sequential JNI round-trips
+      const snapshot = (await Promise.race([
+        AnticheatService.getSecuritySnapshot(
+          SnapshotField.LOCATION | SnapshotField.TIME | SnapshotField.DEVICE,
+        ),
         timeoutPromise,
-      ])) as [SecurityInfo, LocationInfo, TimeReliabilityInfo];
+      ])) as SecuritySnapshot;
+
+      const rootResult = (snapshot.device ?? { isRooted: false }) as SecurityInfo;
+      const locationResult = (snapshot.location ?? {}) as LocationInfo;
+      const timeResult = (snapshot.time ?? {}) as TimeReliabilityInfo;
 
       // --- 1. Root Check ---
       const isRooted = rootResult.isRooted;
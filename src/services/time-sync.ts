@@ -1,3 +1,5 @@
+import { AnticheatService } from './anticheat';
+
 /**
  * Time Synchronization Service
  *
@@ -110,8 +112,10 @@ export class TimeSyncService {
 
     try {
       const clientBeforeRequest = Date.now();
+      const perfBeforeRequest = performance.now();
       const serverTime = await this.fetchServerTime();
       const clientAfterRequest = Date.now();
+      const perfAfterRequest = performance.now();
 
       // Tính RTT (Round Trip Time) và lấy thời điểm giữa
       const rtt = clientAfterRequest - clientBeforeRequest;
@@ -133,6 +137,14 @@ export class TimeSyncService {
         console.warn('[TimeSync] Failed to save to localStorage:', e);
       }
 
+      // Neo đồng hồ tin cậy native; thời gian trôi tính bằng đồng hồ đơn điệu, không dùng Date.now()
+      const perfMid = (perfBeforeRequest + perfAfterRequest) / 2;
+      AnticheatService.anchorTrustedTime(
+        serverTime + (performance.now() - perfMid),
+        rtt / 2 + 1000, // nửa RTT + độ phân giải 1 giây của nguồn
+        'time-sync',
+      ).catch((e) => console.warn('[TimeSync] Failed to anchor trusted clock:', e));
+
       console.log(`[TimeSync] ✅ Synced successfully`);
       console.log(`  - Server Time: ${new Date(serverTime).toISOString()}`);
       console.log(`  - Client Time: ${new Date(estimatedClientTime).toISOString()}`);